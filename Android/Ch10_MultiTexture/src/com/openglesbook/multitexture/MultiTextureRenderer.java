@@ -26,11 +26,11 @@ import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import com.openglesbook.common.ESShader;
+import com.openglesbook.common.ESTexture;
+import com.openglesbook.common.ESTextureCache;
 import com.openglesbook.multitexture.R;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 
@@ -50,45 +50,22 @@ public class MultiTextureRenderer implements GLSurfaceView.Renderer
         mIndices = ByteBuffer.allocateDirect(mIndicesData.length * 2)
                 .order(ByteOrder.nativeOrder()).asShortBuffer();
         mIndices.put(mIndicesData).position(0);
-    }
 
-    ///
-    //  Load texture from resource
-    //
-    private int loadTexture ( InputStream is )
-    {
-        int[] textureId = new int[1];
-        Bitmap bitmap;
-        bitmap = BitmapFactory.decodeStream(is);
-        byte[] buffer = new byte[bitmap.getWidth() * bitmap.getHeight() * 3];
-        
-        for ( int y = 0; y < bitmap.getHeight(); y++ )
-            for ( int x = 0; x < bitmap.getWidth(); x++ )
-            {
-                int pixel = bitmap.getPixel(x, y);
-                buffer[(y * bitmap.getWidth() + x) * 3 + 0] = (byte)((pixel >> 16) & 0xFF);
-                buffer[(y * bitmap.getWidth() + x) * 3 + 1] = (byte)((pixel >> 8) & 0xFF);
-                buffer[(y * bitmap.getWidth() + x) * 3 + 2] = (byte)((pixel >> 0) & 0xFF);
+        // Register the textures, they are loaded when first bound
+        mBaseMapTex = mTextures.add(new ESTextureCache.StreamSource(
+                ESTexture.FORMAT_RGB, false) {
+            protected InputStream open() {
+                return mContext.getResources().openRawResource(R.raw.basemap);
             }
-        
-        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(bitmap.getWidth() * bitmap.getHeight() * 3);
-        byteBuffer.put(buffer).position(0);
-            
-        GLES20.glGenTextures ( 1, textureId, 0 );
-        GLES20.glBindTexture ( GLES20.GL_TEXTURE_2D, textureId[0] );
-
-        GLES20.glTexImage2D ( GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGB, bitmap.getWidth(), bitmap.getHeight(), 0, 
-                              GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, byteBuffer );
-    
-        GLES20.glTexParameteri ( GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR );
-        GLES20.glTexParameteri ( GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR );
-        GLES20.glTexParameteri ( GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE );
-        GLES20.glTexParameteri ( GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE );
-        
-        return textureId[0];
+        });
+        mLightMapTex = mTextures.add(new ESTextureCache.StreamSource(
+                ESTexture.FORMAT_RGB, false) {
+            protected InputStream open() {
+                return mContext.getResources().openRawResource(R.raw.lightmap);
+            }
+        });
     }
- 
- 
+
     ///
     // Initialize the shader and program object
     //
@@ -130,9 +107,8 @@ public class MultiTextureRenderer implements GLSurfaceView.Renderer
         mBaseMapLoc = GLES20.glGetUniformLocation ( mProgramObject, "s_baseMap" );
         mLightMapLoc = GLES20.glGetUniformLocation ( mProgramObject, "s_lightMap" );
 
-        // Load the texture
-        mBaseMapTexId = loadTexture(mContext.getResources().openRawResource(R.raw.basemap));
-        mLightMapTexId = loadTexture(mContext.getResources().openRawResource(R.raw.lightmap));
+        // Textures from a previous context are gone, reload them on bind
+        mTextures.invalidate();
 
         GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
     }
@@ -148,6 +124,9 @@ public class MultiTextureRenderer implements GLSurfaceView.Renderer
         // Clear the color buffer
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
 
+        // Textures bound last frame may be evicted again
+        mTextures.beginFrame();
+
         // Use the program object
         GLES20.glUseProgram(mProgramObject);
 
@@ -169,14 +148,14 @@ public class MultiTextureRenderer implements GLSurfaceView.Renderer
 
         // Bind the base map
         GLES20.glActiveTexture ( GLES20.GL_TEXTURE0 );
-        GLES20.glBindTexture ( GLES20.GL_TEXTURE_2D, mBaseMapTexId );
+        mTextures.bind ( mBaseMapTex );
 
         // Set the base map sampler to texture unit to 0
         GLES20.glUniform1i ( mBaseMapLoc, 0 );
 
         // Bind the light map
         GLES20.glActiveTexture ( GLES20.GL_TEXTURE1 );
-        GLES20.glBindTexture ( GLES20.GL_TEXTURE_2D, mLightMapTexId );
+        mTextures.bind ( mLightMapTex );
         
         // Set the light map sampler to texture unit 1
         GLES20.glUniform1i ( mLightMapLoc, 1 );
@@ -205,9 +184,13 @@ public class MultiTextureRenderer implements GLSurfaceView.Renderer
     private int mBaseMapLoc;
     private int mLightMapLoc;
     
-    // Texture handle
-    private int mBaseMapTexId;
-    private int mLightMapTexId;
+    // Texture handles
+    private int mBaseMapTex;
+    private int mLightMapTex;
+
+    // Resident textures, limited to TEXTURE_BUDGET bytes
+    private static final long TEXTURE_BUDGET = 16 * 1024 * 1024;
+    private ESTextureCache mTextures = new ESTextureCache(TEXTURE_BUDGET);
     
     // Additional member variables
     private int mWidth;
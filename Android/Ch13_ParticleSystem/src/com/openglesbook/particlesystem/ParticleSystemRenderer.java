@@ -16,7 +16,6 @@
 
 package com.openglesbook.particlesystem;
 
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
@@ -25,12 +24,12 @@ import java.util.Random;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import com.openglesbook.common.ESProgram;
 import com.openglesbook.common.ESShader;
+import com.openglesbook.common.ESTexture;
 import com.openglesbook.particlesystem.R;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.os.SystemClock;
@@ -47,43 +46,6 @@ public class ParticleSystemRenderer implements GLSurfaceView.Renderer
         mContext = context;
     }
 
-    ///
-    //  Load texture from resource
-    //
-    private int loadTexture ( InputStream is )
-    {
-        int[] textureId = new int[1];
-        Bitmap bitmap;
-        bitmap = BitmapFactory.decodeStream(is);
-        byte[] buffer = new byte[bitmap.getWidth() * bitmap.getHeight() * 3];
-        
-        for ( int y = 0; y < bitmap.getHeight(); y++ )
-            for ( int x = 0; x < bitmap.getWidth(); x++ )
-            {
-                int pixel = bitmap.getPixel(x, y);
-                buffer[(y * bitmap.getWidth() + x) * 3 + 0] = (byte)((pixel >> 16) & 0xFF);
-                buffer[(y * bitmap.getWidth() + x) * 3 + 1] = (byte)((pixel >> 8) & 0xFF);
-                buffer[(y * bitmap.getWidth() + x) * 3 + 2] = (byte)((pixel >> 0) & 0xFF);
-            }
-        
-        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(bitmap.getWidth() * bitmap.getHeight() * 3);
-        byteBuffer.put(buffer).position(0);
-            
-        GLES20.glGenTextures ( 1, textureId, 0 );
-        GLES20.glBindTexture ( GLES20.GL_TEXTURE_2D, textureId[0] );
-
-        GLES20.glTexImage2D ( GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGB, bitmap.getWidth(), bitmap.getHeight(), 0, 
-                              GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, byteBuffer );
-    
-        GLES20.glTexParameteri ( GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR );
-        GLES20.glTexParameteri ( GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR );
-        GLES20.glTexParameteri ( GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE );
-        GLES20.glTexParameteri ( GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE );
-        
-        return textureId[0];
-    }
- 
- 
     ///
     // Initialize the shader and program object
     //
@@ -126,19 +88,26 @@ public class ParticleSystemRenderer implements GLSurfaceView.Renderer
             "  gl_FragColor.a *= v_lifetime;                      \n" +
             "}                                                    \n";
                 
-        // Load the shaders and get a linked program object
-        mProgramObject = ESShader.loadProgram(vShaderStr, fShaderStr);
+        // Load the shaders and get a linked program object, the names
+        // are checked against the active attributes and uniforms
+        mProgram = ESShader.loadProgramObject(vShaderStr, fShaderStr,
+                new String[] { "a_lifetime", "a_startPosition", "a_endPosition" },
+                new String[] { "u_time", "u_centerPosition", "u_color", "s_texture" });
+
+        // Nothing to draw if the shaders failed to build
+        if ( mProgram == null )
+            return;
 
         // Get the attribute locations
-        mLifetimeLoc = GLES20.glGetAttribLocation(mProgramObject, "a_lifetime");
-        mStartPositionLoc = GLES20.glGetAttribLocation(mProgramObject, "a_startPosition" );
-        mEndPositionLoc = GLES20.glGetAttribLocation(mProgramObject, "a_endPosition" );
+        mLifetimeLoc = mProgram.getAttribLocation ( ATTRIB_LIFETIME );
+        mStartPositionLoc = mProgram.getAttribLocation ( ATTRIB_START_POSITION );
+        mEndPositionLoc = mProgram.getAttribLocation ( ATTRIB_END_POSITION );
         
         // Get the uniform locations
-        mTimeLoc = GLES20.glGetUniformLocation ( mProgramObject, "u_time" );
-        mCenterPositionLoc = GLES20.glGetUniformLocation ( mProgramObject, "u_centerPosition" );
-        mColorLoc = GLES20.glGetUniformLocation ( mProgramObject, "u_color" );
-        mSamplerLoc = GLES20.glGetUniformLocation ( mProgramObject, "s_texture" );
+        mTimeLoc = mProgram.getUniformLocation ( UNIFORM_TIME );
+        mCenterPositionLoc = mProgram.getUniformLocation ( UNIFORM_CENTER_POSITION );
+        mColorLoc = mProgram.getUniformLocation ( UNIFORM_COLOR );
+        mSamplerLoc = mProgram.getUniformLocation ( UNIFORM_SAMPLER );
 
         GLES20.glClearColor ( 0.0f, 0.0f, 0.0f, 0.0f );
 
@@ -168,7 +137,8 @@ public class ParticleSystemRenderer implements GLSurfaceView.Renderer
         mTime = 1.0f;
 
         // Load particle texture
-        mTextureId = loadTexture ( mContext.getResources().openRawResource( R.raw.smoke ) );              
+        mTextureId = ESTexture.loadTexture ( mContext.getResources().openRawResource( R.raw.smoke ),
+                                          ESTexture.FORMAT_RGB, false );              
     }
 
     private void update()
@@ -215,16 +185,19 @@ public class ParticleSystemRenderer implements GLSurfaceView.Renderer
     //
     public void onDrawFrame(GL10 glUnused)
     {
-        update();
-        
         // Set the viewport
         GLES20.glViewport ( 0, 0, mWidth, mHeight );
         
         // Clear the color buffer
         GLES20.glClear ( GLES20.GL_COLOR_BUFFER_BIT );
 
+        if ( mProgram == null )
+            return;
+
+        update();
+
         // Use the program object
-        GLES20.glUseProgram ( mProgramObject );
+        mProgram.use();
 
         // Load the vertex attributes
         mParticles.position(0);
@@ -272,8 +245,19 @@ public class ParticleSystemRenderer implements GLSurfaceView.Renderer
     }
 
     
-    // Handle to a program object
-    private int mProgramObject;
+    // Program object
+    private ESProgram mProgram;
+
+    // Attribute slots
+    private static final int ATTRIB_LIFETIME = 0;
+    private static final int ATTRIB_START_POSITION = 1;
+    private static final int ATTRIB_END_POSITION = 2;
+
+    // Uniform slots
+    private static final int UNIFORM_TIME = 0;
+    private static final int UNIFORM_CENTER_POSITION = 1;
+    private static final int UNIFORM_COLOR = 2;
+    private static final int UNIFORM_SAMPLER = 3;
     
     // Attribute locations
     private int mLifetimeLoc;
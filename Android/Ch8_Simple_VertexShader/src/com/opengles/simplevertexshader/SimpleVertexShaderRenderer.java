@@ -16,9 +16,10 @@
 
 package com.opengles.simplevertexshader;
 
+import com.openglesbook.common.ESMatrixStack;
+import com.openglesbook.common.ESProgram;
 import com.openglesbook.common.ESShapes;
 import com.openglesbook.common.ESShader;
-import com.openglesbook.common.ESTransform;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -57,14 +58,11 @@ public class SimpleVertexShaderRenderer implements GLSurfaceView.Renderer
                 + "  gl_FragColor = vec4( 1.0, 0.0, 0.0, 1.0 );        \n"
                 + "}                                                   \n";
 
-        // Load the shaders and get a linked program object
-        mProgramObject = ESShader.loadProgram(vShaderStr, fShaderStr);
-
-        // Get the attribute locations
-        mPositionLoc = GLES20.glGetAttribLocation(mProgramObject, "a_position");
-
-        // Get the uniform locations
-        mMVPLoc = GLES20.glGetUniformLocation(mProgramObject, "u_mvpMatrix");
+        // Load the shaders and get a linked program object with the
+        // attribute and uniform locations already resolved
+        mProgram = ESShader.loadProgramObject(vShaderStr, fShaderStr,
+                new String[] { "a_position" },
+                new String[] { "u_mvpMatrix" });
 
         // Generate the vertex data
         mCube.genCube(1.0f);
@@ -84,8 +82,6 @@ public class SimpleVertexShaderRenderer implements GLSurfaceView.Renderer
         float deltaTime = elapsedTime / 1000.0f;
         mLastTime = curTime;
 
-        ESTransform perspective = new ESTransform();
-        ESTransform modelview = new ESTransform();
         float aspect;
 
         // Compute a rotation angle based on time to rotate the cube
@@ -97,21 +93,17 @@ public class SimpleVertexShaderRenderer implements GLSurfaceView.Renderer
         aspect = (float) mWidth / (float) mHeight;
 
         // Generate a perspective matrix with a 60 degree FOV
-        perspective.matrixLoadIdentity();
-        perspective.perspective(60.0f, aspect, 1.0f, 20.0f);
+        mMatrices.projectionLoadIdentity();
+        mMatrices.perspective(60.0f, aspect, 1.0f, 20.0f);
 
         // Generate a model view matrix to rotate/translate the cube
-        modelview.matrixLoadIdentity();
+        mMatrices.loadIdentity();
 
         // Translate away from the viewer
-        modelview.translate(0.0f, 0.0f, -2.0f);
+        mMatrices.translate(0.0f, 0.0f, -2.0f);
 
         // Rotate the cube
-        modelview.rotate(mAngle, 1.0f, 0.0f, 1.0f);
-
-        // Compute the final MVP by multiplying the
-        // modevleiw and perspective matrices together
-        mMVPMatrix.matrixMultiply(modelview.get(), perspective.get());
+        mMatrices.rotate(mAngle, 1.0f, 0.0f, 1.0f);
     }
 
     ///
@@ -127,21 +119,27 @@ public class SimpleVertexShaderRenderer implements GLSurfaceView.Renderer
         // Clear the color buffer
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
 
+        // Nothing to draw if the shaders failed to build
+        if (mProgram == null)
+            return;
+
         // Use the program object
-        GLES20.glUseProgram(mProgramObject);
+        mProgram.use();
 
         // Load the vertex data
-        GLES20.glVertexAttribPointer(mPositionLoc, 3, GLES20.GL_FLOAT, false,
+        int positionLoc = mProgram.getAttribLocation(ATTRIB_POSITION);
+        GLES20.glVertexAttribPointer(positionLoc, 3, GLES20.GL_FLOAT, false,
                 0, mCube.getVertices());
-        GLES20.glEnableVertexAttribArray(mPositionLoc);
+        GLES20.glEnableVertexAttribArray(positionLoc);
 
-        // Load the MVP matrix
-        GLES20.glUniformMatrix4fv(mMVPLoc, 1, false,
-                mMVPMatrix.getAsFloatBuffer());
+        // Load the MVP matrix, the stack multiplies the
+        // modelview and perspective matrices together.  The upload
+        // is skipped when the matrix has not changed.
+        mProgram.setUniformMatrix4fv(UNIFORM_MVP, mMatrices.getMVP(), 0);
 
         // Draw the cube
         GLES20.glDrawElements(GLES20.GL_TRIANGLES, mCube.getNumIndices(),
-                GLES20.GL_UNSIGNED_SHORT, mCube.getIndices());
+                mCube.getIndexType(), mCube.getIndexBuffer());
     }
 
     ///
@@ -153,14 +151,14 @@ public class SimpleVertexShaderRenderer implements GLSurfaceView.Renderer
         mHeight = height;
     }
 
-    // Handle to a program object
-    private int mProgramObject;
+    // Program object
+    private ESProgram mProgram;
 
-    // Attribute locations
-    private int mPositionLoc;
+    // Attribute slots
+    private static final int ATTRIB_POSITION = 0;
 
-    // Uniform locations
-    private int mMVPLoc;
+    // Uniform slots
+    private static final int UNIFORM_MVP = 0;
 
     // Vertex data
     private ESShapes mCube = new ESShapes();
@@ -168,8 +166,8 @@ public class SimpleVertexShaderRenderer implements GLSurfaceView.Renderer
     // Rotation angle
     private float mAngle;
 
-    // MVP matrix
-    private ESTransform mMVPMatrix = new ESTransform();
+    // Modelview, projection and MVP matrices
+    private ESMatrixStack mMatrices = new ESMatrixStack(1);
 
     // Additional Member variables
     private int mWidth;
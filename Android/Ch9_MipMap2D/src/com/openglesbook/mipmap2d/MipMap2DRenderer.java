@@ -24,7 +24,11 @@ import java.nio.ShortBuffer;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import com.openglesbook.common.ESMipmapBuilder;
+import com.openglesbook.common.ESProceduralTexture;
+import com.openglesbook.common.ESProgram;
 import com.openglesbook.common.ESShader;
+import com.openglesbook.common.ESTexture;
 
 import android.content.Context;
 import android.opengl.GLES20;
@@ -47,96 +51,6 @@ public class MipMap2DRenderer implements GLSurfaceView.Renderer
         mIndices.put(mIndicesData).position(0);
     }
     
-    ///
-    //  From an RGB8 source image, generate the next level mipmap
-    //
-    private byte[] genMipMap2D( byte[] src,int srcWidth, int srcHeight, int dstWidth, int dstHeight )
-    {
-        int x,
-            y;
-        int texelSize = 3;
-
-        byte[] dst = new byte[texelSize * (dstWidth) * (dstHeight)];
-   
-        for ( y = 0; y < dstHeight; y++ )
-        {
-            for( x = 0; x < dstWidth; x++ )
-            {
-                int[] srcIndex = new int[4];
-                float r = 0.0f,
-                      g = 0.0f,
-                      b = 0.0f;
-                int sample;
-
-                // Compute the offsets for 2x2 grid of pixels in previous
-                // image to perform box filter
-                srcIndex[0] = 
-                    (((y * 2) * srcWidth) + (x * 2)) * texelSize;
-                srcIndex[1] = 
-                    (((y * 2) * srcWidth) + (x * 2 + 1)) * texelSize; 
-                srcIndex[2] = 
-                    ((((y * 2) + 1) * srcWidth) + (x * 2)) * texelSize;
-                srcIndex[3] = 
-                    ((((y * 2) + 1) * srcWidth) + (x * 2 + 1)) * texelSize;
-
-                 // Sum all pixels
-                 for ( sample = 0; sample < 4; sample++ )
-                 {
-                    r += src[srcIndex[sample]];
-                    g += src[srcIndex[sample] + 1];
-                    b += src[srcIndex[sample] + 2];
-                 }
-    
-                 // Average results
-                 r /= 4.0;
-                 g /= 4.0;
-                 b /= 4.0;
-    
-                 // Store resulting pixels
-                 dst[ ( y * (dstWidth) + x ) * texelSize ] = (byte)( r );
-                 dst[ ( y * (dstWidth) + x ) * texelSize + 1] = (byte)( g );
-                 dst[ ( y * (dstWidth) + x ) * texelSize + 2] = (byte)( b );
-            }
-        }          
-        return dst;
-    }
-
-    ///
-    //  Generate an RGB8 checkerboard image
-    //
-    private byte[] genCheckImage( int width, int height, int checkSize )
-    {
-        int x,
-            y;
-        byte[] pixels = new byte[width * height * 3];
-   
-
-        for ( y = 0; y < height; y++ )
-            for ( x = 0; x < width; x++ )
-            {
-                byte rColor = 0;
-                byte bColor = 0;
-
-                if ( ( x / checkSize ) % 2 == 0 )
-                {
-                    rColor = (byte)(127 * ( ( y / checkSize ) % 2 ));
-                    bColor = (byte)(127 * ( 1 - ( ( y / checkSize ) % 2 ) ));
-                }
-                else
-                {
-                    bColor = (byte)(127 * ( ( y / checkSize ) % 2 ));
-                    rColor = (byte)(127 * ( 1 - ( ( y / checkSize ) % 2 ) ));
-                }
-
-                pixels[(y * height + x) * 3] = rColor;
-                pixels[(y * height + x) * 3 + 1] = 0;
-                pixels[(y * height + x) * 3 + 2] = bColor; 
-            } 
-
-        return pixels;
-    }
-    
-    
     ///
     // Create a mipmapped 2D texture image 
     //
@@ -146,12 +60,10 @@ public class MipMap2DRenderer implements GLSurfaceView.Renderer
         int[]  textureId = new int[1];
         int    width = 256,
                height = 256;
-        int    level;
-        byte[] pixels;
-        byte[] prevImage;
-        byte[] newImage;
+        ByteBuffer pixels;
        
-        pixels = genCheckImage( width, height, 8 );
+        // Blue and red checkerboard, cached between surface creations
+        pixels = ESProceduralTexture.checkerboard ( width, height, 8, 0x00007F, 0x7F0000 );
 
         // Generate a texture object
         GLES20.glGenTextures ( 1, textureId, 0 );
@@ -159,49 +71,9 @@ public class MipMap2DRenderer implements GLSurfaceView.Renderer
         // Bind the texture object
         GLES20.glBindTexture ( GLES20.GL_TEXTURE_2D, textureId[0] );
 
-        // Load mipmap level 0
-        ByteBuffer pixelBuffer = ByteBuffer.allocateDirect(width * height * 3);
-        pixelBuffer.put(pixels).position(0);
-
-        GLES20.glTexImage2D ( GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGB, width, height, 
-                              0, GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, pixelBuffer );
-    
-        level = 1;
-        prevImage = pixels;
-    
-        while ( width > 1 && height > 1 )
-        {
-            int newWidth,
-                newHeight;
-
-            newWidth = width / 2;
-            if ( newWidth <= 0 )
-               newWidth = 1;
-
-            newHeight = height / 2;
-            if ( newHeight <= 0 )
-               newHeight = 1;
-            
-            // Generate the next mipmap level
-            newImage = genMipMap2D( prevImage, width, height, newWidth, newHeight );
-
-            // Load the mipmap level
-            pixelBuffer = ByteBuffer.allocateDirect(newWidth * newHeight * 3);
-            pixelBuffer.put(newImage).position(0);
-            GLES20.glTexImage2D( GLES20.GL_TEXTURE_2D, level, GLES20.GL_RGB, 
-                                 newWidth, newHeight, 0, GLES20.GL_RGB,
-                                 GLES20.GL_UNSIGNED_BYTE, pixelBuffer );
-
-            // Set the previous image for the next iteration
-            prevImage = newImage;
-            level++;
-
-            // Half the width and height
-            width = newWidth;
-            height = newHeight;
-        }
+        // Load mipmap level 0 and generate and load the rest of the chain
+        ESMipmapBuilder.uploadMipmaps ( pixels, width, height, ESTexture.FORMAT_RGB );
 
-    
         // Set the filtering mode
         GLES20.glTexParameteri ( GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST_MIPMAP_NEAREST );
         GLES20.glTexParameteri ( GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR );
@@ -238,17 +110,17 @@ public class MipMap2DRenderer implements GLSurfaceView.Renderer
             "}                                                   \n";
 
         // Load the shaders and get a linked program object
-        mProgramObject = ESShader.loadProgram(vShaderStr, fShaderStr);
+        mProgram = ESShader.loadProgramObject(vShaderStr, fShaderStr,
+                new String[] { "a_position", "a_texCoord" },
+                new String[] { "s_texture", "u_offset" });
 
-        // Get the attribute locations
-        mPositionLoc = GLES20.glGetAttribLocation(mProgramObject, "a_position");
-        mTexCoordLoc = GLES20.glGetAttribLocation(mProgramObject, "a_texCoord" );
-        
-        // Get the sampler location
-        mSamplerLoc = GLES20.glGetUniformLocation ( mProgramObject, "s_texture" );
+        // Nothing to draw if the shaders failed to build
+        if ( mProgram == null )
+            return;
 
-        // Get the offset location
-        mOffsetLoc = GLES20.glGetUniformLocation( mProgramObject, "u_offset" );
+        // Get the attribute locations
+        mPositionLoc = mProgram.getAttribLocation ( ATTRIB_POSITION );
+        mTexCoordLoc = mProgram.getAttribLocation ( ATTRIB_TEXCOORD );
 
         // Load the texture
         mTextureId = createMipMappedTexture2D();
@@ -267,8 +139,11 @@ public class MipMap2DRenderer implements GLSurfaceView.Renderer
         // Clear the color buffer
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
 
+        if ( mProgram == null )
+            return;
+
         // Use the program object
-        GLES20.glUseProgram(mProgramObject);
+        mProgram.use();
 
         // Load the vertex position
         mVertices.position(0);
@@ -289,17 +164,18 @@ public class MipMap2DRenderer implements GLSurfaceView.Renderer
         GLES20.glActiveTexture ( GLES20.GL_TEXTURE0 );
         GLES20.glBindTexture ( GLES20.GL_TEXTURE_2D, mTextureId );
 
-        // Set the sampler texture unit to 0
-        GLES20.glUniform1i ( mSamplerLoc, 0 );
+        // Set the sampler texture unit to 0, only uploaded on the
+        // first frame since the value never changes
+        mProgram.setUniform1i ( UNIFORM_SAMPLER, 0 );
 
         // Draw quad with nearest sampling
         GLES20.glTexParameteri ( GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST );
-        GLES20.glUniform1f ( mOffsetLoc, -0.6f );   
+        mProgram.setUniform1f ( UNIFORM_OFFSET, -0.6f );   
         GLES20.glDrawElements ( GLES20.GL_TRIANGLES, 6, GLES20.GL_UNSIGNED_SHORT, mIndices );
 
         // Draw quad with trilinear filtering
         GLES20.glTexParameteri ( GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR );
-        GLES20.glUniform1f ( mOffsetLoc, 0.6f );
+        mProgram.setUniform1f ( UNIFORM_OFFSET, 0.6f );
         GLES20.glDrawElements ( GLES20.GL_TRIANGLES, 6, GLES20.GL_UNSIGNED_SHORT, mIndices );
     }
 
@@ -313,18 +189,20 @@ public class MipMap2DRenderer implements GLSurfaceView.Renderer
     }
 
     
-    // Handle to a program object
-    private int mProgramObject;
+    // Program object
+    private ESProgram mProgram;
     
+    // Attribute slots
+    private static final int ATTRIB_POSITION = 0;
+    private static final int ATTRIB_TEXCOORD = 1;
+
     // Attribute locations
     private int mPositionLoc;
     private int mTexCoordLoc;
     
-    // Sampler location
-    private int mSamplerLoc;
-    
-    // Offset location
-    private int mOffsetLoc;
+    // Uniform slots
+    private static final int UNIFORM_SAMPLER = 0;
+    private static final int UNIFORM_OFFSET = 1;
     
     // Texture handle
     private int mTextureId;
@@ -25,6 +25,7 @@ import java.nio.ShortBuffer;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import com.openglesbook.common.ESBufferPool;
 import com.openglesbook.common.ESShader;
 
 import android.content.Context;
@@ -64,7 +65,8 @@ public class SimpleTexture2DRenderer implements GLSurfaceView.Renderer
                 0,   0, (byte) 0xff, // Blue
                 (byte) 0xff, (byte) 0xff,   0  // Yellow
             };
-        ByteBuffer pixelBuffer = ByteBuffer.allocateDirect(4*3);
+        // Staging buffer from the shared pool, returned once GL has copied it
+        ByteBuffer pixelBuffer = ESBufferPool.getShared().acquire(4*3);
         pixelBuffer.put(pixels).position(0);
 
         // Use tightly packed data
@@ -78,6 +80,7 @@ public class SimpleTexture2DRenderer implements GLSurfaceView.Renderer
 
         //  Load the texture
         GLES20.glTexImage2D ( GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGB, 2, 2, 0, GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, pixelBuffer );
+        ESBufferPool.getShared().release(pixelBuffer);
 
         // Set the filtering mode
         GLES20.glTexParameteri ( GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST );
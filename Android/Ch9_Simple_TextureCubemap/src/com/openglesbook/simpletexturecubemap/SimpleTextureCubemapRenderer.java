@@ -21,8 +21,12 @@ import java.nio.ByteBuffer;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import com.openglesbook.common.ESCubemap;
+import com.openglesbook.common.ESProceduralTexture;
 import com.openglesbook.common.ESShader;
 import com.openglesbook.common.ESShapes;
+import com.openglesbook.common.ESTexture;
+import com.openglesbook.common.ESVertexFormat;
 
 import android.content.Context;
 import android.opengl.GLES20;
@@ -42,64 +46,22 @@ public class SimpleTextureCubemapRenderer implements GLSurfaceView.Renderer
     // color for each face
     private int createSimpleTextureCubemap( )
     {
-        int[] textureId = new int[1];
-
-        // Face 0 - Red        
-        byte[] cubePixels0 = { 127, 0, 0 };
-        // Face 1 - Green
-        byte[] cubePixels1 = { 0, 127, 0 }; 
-        // Face 2 - Blue
-        byte[] cubePixels2 = { 0, 0, 127 };
-        // Face 3 - Yellow
-        byte[] cubePixels3 = { 127, 127, 0 };
-        // Face 4 - Purple
-        byte[] cubePixels4 = { 127, 0, 127 };
-        // Face 5 - White
-        byte[] cubePixels5 = { 127, 127, 127 };
-                
-        ByteBuffer cubePixels = ByteBuffer.allocateDirect(3);
-    
-        // Generate a texture object
-        GLES20.glGenTextures ( 1, textureId, 0 );
+        int textureId;
 
-        // Bind the texture object
-        GLES20.glBindTexture ( GLES20.GL_TEXTURE_CUBE_MAP, textureId[0] );
-    
-        // Load the cube face - Positive X
-        cubePixels.put(cubePixels0).position(0);
-        GLES20.glTexImage2D ( GLES20.GL_TEXTURE_CUBE_MAP_POSITIVE_X, 0, GLES20.GL_RGB, 1, 1, 0, 
-                              GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, cubePixels );
-
-        // Load the cube face - Negative X
-        cubePixels.put(cubePixels1).position(0);
-        GLES20.glTexImage2D ( GLES20.GL_TEXTURE_CUBE_MAP_NEGATIVE_X, 0, GLES20.GL_RGB, 1, 1, 0, 
-                              GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, cubePixels );
-
-        // Load the cube face - Positive Y
-        cubePixels.put(cubePixels2).position(0);        
-        GLES20.glTexImage2D ( GLES20.GL_TEXTURE_CUBE_MAP_POSITIVE_Y, 0, GLES20.GL_RGB, 1, 1, 0, 
-                              GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, cubePixels );
-
-        // Load the cube face - Negative Y
-        cubePixels.put(cubePixels3).position(0);
-        GLES20.glTexImage2D ( GLES20.GL_TEXTURE_CUBE_MAP_NEGATIVE_Y, 0, GLES20.GL_RGB, 1, 1, 0, 
-                              GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, cubePixels );
-
-        // Load the cube face - Positive Z
-        cubePixels.put(cubePixels4).position(0);        
-        GLES20.glTexImage2D ( GLES20.GL_TEXTURE_CUBE_MAP_POSITIVE_Z, 0, GLES20.GL_RGB, 1, 1, 0, 
-                              GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, cubePixels );
-
-        // Load the cube face - Negative Z
-        cubePixels.put(cubePixels5).position(0);
-        GLES20.glTexImage2D ( GLES20.GL_TEXTURE_CUBE_MAP_NEGATIVE_Z, 0, GLES20.GL_RGB, 1, 1, 0, 
-                              GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, cubePixels );
+        // One texel per face, in the order of the face targets:
+        // red, green, blue, yellow, purple and white
+        ByteBuffer[] cubePixels = ESProceduralTexture.cubeFaces ( 1, new int[] {
+            0x7F0000, 0x007F00, 0x00007F, 0x7F7F00, 0x7F007F, 0x7F7F7F } );
+
+        // Generate a texture object, bind it and load the six faces
+        ESCubemap cubemap = new ESCubemap ( cubePixels, 1, ESTexture.FORMAT_RGB );
+        textureId = cubemap.loadTexture ( );
 
         // Set the filtering mode
         GLES20.glTexParameteri ( GLES20.GL_TEXTURE_CUBE_MAP, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST );
         GLES20.glTexParameteri ( GLES20.GL_TEXTURE_CUBE_MAP, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST );
 
-        return textureId[0];
+        return textureId;
     }
 
     ///
@@ -132,6 +94,9 @@ public class SimpleTextureCubemapRenderer implements GLSurfaceView.Renderer
         // Get the attribute locations
         mPositionLoc = GLES20.glGetAttribLocation(mProgramObject, "a_position");
         mNormalLoc = GLES20.glGetAttribLocation(mProgramObject, "a_normal" );
+        mAttribLocs[ESVertexFormat.POSITION] = mPositionLoc;
+        mAttribLocs[ESVertexFormat.NORMAL] = mNormalLoc;
+        mAttribLocs[ESVertexFormat.TEXCOORD] = -1;
         
         // Get the sampler location
         mSamplerLoc = GLES20.glGetUniformLocation ( mProgramObject, "s_texture" );
@@ -140,6 +105,7 @@ public class SimpleTextureCubemapRenderer implements GLSurfaceView.Renderer
         mTextureId = createSimpleTextureCubemap ();
         
         // Generate the vertex data
+        mSphere.setInterleaved( true );
         mSphere.genSphere( 20, 0.75f );
         
         GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
@@ -162,16 +128,10 @@ public class SimpleTextureCubemapRenderer implements GLSurfaceView.Renderer
         // Use the program object
         GLES20.glUseProgram(mProgramObject);
 
-        // Load the vertex position        
-        GLES20.glVertexAttribPointer ( mPositionLoc, 3, GLES20.GL_FLOAT, 
-                                       false, 0, mSphere.getVertices());
-        // Load the texture coordinate
-        
-        GLES20.glVertexAttribPointer ( mNormalLoc, 3, GLES20.GL_FLOAT,
-                                       false, 0, mSphere.getNormals());
-        
-        GLES20.glEnableVertexAttribArray(mPositionLoc);
-        GLES20.glEnableVertexAttribArray(mNormalLoc);
+        // Load the vertex position and normal from the interleaved
+        // vertex buffer
+        mSphere.getVertexFormat().bind ( mSphere.getInterleavedVertices(),
+                                         mAttribLocs );
 
         // Bind the texture
         GLES20.glActiveTexture ( GLES20.GL_TEXTURE0 );
@@ -180,7 +140,7 @@ public class SimpleTextureCubemapRenderer implements GLSurfaceView.Renderer
         // Set the sampler texture unit to 0
         GLES20.glUniform1i ( mSamplerLoc, 0 );
 
-        GLES20.glDrawElements ( GLES20.GL_TRIANGLES, mSphere.getNumIndices(), GLES20.GL_UNSIGNED_SHORT, mSphere.getIndices() );
+        GLES20.glDrawElements ( GLES20.GL_TRIANGLES, mSphere.getNumIndices(), mSphere.getIndexType(), mSphere.getIndexBuffer() );
     }
 
     ///
@@ -199,6 +159,7 @@ public class SimpleTextureCubemapRenderer implements GLSurfaceView.Renderer
     // Attribute locations
     private int mPositionLoc;
     private int mNormalLoc;
+    private int[] mAttribLocs = new int[ESVertexFormat.NUM_SEMANTICS];
     
     // Sampler location
     private int mSamplerLoc;
@@ -24,6 +24,7 @@ import java.nio.ShortBuffer;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import com.openglesbook.common.ESProceduralTexture;
 import com.openglesbook.common.ESShader;
 
 import android.content.Context;
@@ -47,43 +48,6 @@ public class TextureWrapRenderer implements GLSurfaceView.Renderer
         mIndices.put(mIndicesData).position(0);
     }
 
-    ///
-    //  Generate an RGB8 checkerboard image
-    //
-    private ByteBuffer genCheckImage( int width, int height, int checkSize )
-    {
-        int x,
-            y;
-        byte[] pixels = new byte[width * height * 3];
-   
-
-        for ( y = 0; y < height; y++ )
-            for ( x = 0; x < width; x++ )
-            {
-                byte rColor = 0;
-                byte bColor = 0;
-
-                if ( ( x / checkSize ) % 2 == 0 )
-                {
-                    rColor = (byte)(127 * ( ( y / checkSize ) % 2 ));
-                    bColor = (byte)(127 * ( 1 - ( ( y / checkSize ) % 2 ) ));
-                }
-                else
-                {
-                    bColor = (byte)(127 * ( ( y / checkSize ) % 2 ));
-                    rColor = (byte)(127 * ( 1 - ( ( y / checkSize ) % 2 ) ));
-                }
-
-                pixels[(y * height + x) * 3] = rColor;
-                pixels[(y * height + x) * 3 + 1] = 0;
-                pixels[(y * height + x) * 3 + 2] = bColor; 
-            } 
-
-        ByteBuffer result = ByteBuffer.allocateDirect(width*height*3);
-        result.put(pixels).position(0);
-        return result;
-    }
-    
     ///
     // Create a 2D texture image 
     //
@@ -95,7 +59,8 @@ public class TextureWrapRenderer implements GLSurfaceView.Renderer
                height = 256;
         ByteBuffer pixels;
        
-        pixels = genCheckImage( width, height, 64 );
+        // Blue and red checkerboard, cached between surface creations
+        pixels = ESProceduralTexture.checkerboard ( width, height, 64, 0x00007F, 0x7F0000 );
         
         // Generate a texture object
         GLES20.glGenTextures ( 1, textureId, 0 );
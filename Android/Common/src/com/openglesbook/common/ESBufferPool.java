@@ -0,0 +1,381 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESBufferPool
+//
+//    Reuses native ordered direct buffers for data that only lives until it
+//    has been handed to OpenGL ES, such as texels being uploaded or vertices
+//    going into a buffer object.  Allocating direct memory is slow and it is
+//    only given back when the garbage collector gets around to the buffer,
+//    so allocating per upload leads to spikes in native memory use.
+//
+//    Buffers are acquired for a size and given back with release().  Sizes
+//    are rounded up to a power of two and buffers of each size class are
+//    kept for the next acquire, within a limit on the memory held by the
+//    pool.  Sizes above the largest class are allocated as needed and not
+//    kept.
+//
+//    Buffers dropped without being released are counted as leaks once they
+//    are collected.  With setLeakTracking(true), for example in debuggable
+//    builds, the stack that acquired each leaked buffer is logged as well.
+//
+//    All methods may be called from any thread.
+//
+
+package com.openglesbook.common;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.util.Log;
+
+public class ESBufferPool {
+	// Smallest and largest size classes, as powers of two
+	public static final int MIN_CLASS_SHIFT = 8;
+	public static final int MAX_CLASS_SHIFT = 24;
+
+	//
+	///
+	/// \brief Create a pool
+	/// \param maxPooledBytes Memory the pool may hold in released buffers
+	//
+	public ESBufferPool(long maxPooledBytes) {
+		mMaxPooledBytes = maxPooledBytes;
+
+		for (int i = MIN_CLASS_SHIFT; i <= MAX_CLASS_SHIFT; i++)
+			mFree.add(new ArrayList<ByteBuffer>());
+	}
+
+	//
+	///
+	/// \brief The pool used by the Common classes
+	//
+	public static ESBufferPool getShared() {
+		return sShared;
+	}
+
+	//
+	///
+	/// \brief Lease a direct buffer in native byte order
+	/// \param size Bytes needed
+	/// \return A buffer with position 0 and limit size, whose capacity may
+	/// be larger.  Its contents are undefined.
+	//
+	public synchronized ByteBuffer acquire(int size) {
+		if (size < 0)
+			throw new IllegalArgumentException("Invalid buffer size " + size);
+
+		pollLeaks();
+
+		int sizeClass = getSizeClass(size);
+		ByteBuffer buffer = null;
+
+		if (sizeClass >= 0) {
+			ArrayList<ByteBuffer> free = mFree.get(sizeClass);
+
+			if (!free.isEmpty()) {
+				buffer = free.remove(free.size() - 1);
+				mPooledBytes -= buffer.capacity();
+			}
+		}
+
+		if (buffer != null) {
+			mHits++;
+		} else {
+			mMisses++;
+			int capacity = sizeClass >= 0 ? 1 << (sizeClass + MIN_CLASS_SHIFT)
+					: size;
+			buffer = ByteBuffer.allocateDirect(capacity).order(
+					ByteOrder.nativeOrder());
+		}
+
+		buffer.clear();
+		buffer.limit(size);
+
+		Lease lease = new Lease(buffer, mLeases,
+				mLeakTracking ? new Throwable("Buffer acquired here") : null);
+		Integer key = Integer.valueOf(lease.mHash);
+		lease.mNext = mLeased.get(key);
+		mLeased.put(key, lease);
+
+		mOutstandingBytes += lease.mCapacity;
+		mOutstandingCount++;
+
+		return buffer;
+	}
+
+	//
+	///
+	/// \brief Give a buffer back to the pool.  It must not be used after
+	/// this, nor any view created from it.
+	/// \param buffer A buffer returned by acquire(), not a duplicate or
+	/// slice of it
+	//
+	public synchronized void release(ByteBuffer buffer) {
+		Lease lease = removeLease(buffer);
+
+		if (lease == null)
+			throw new IllegalArgumentException(
+					"Buffer was not acquired from this pool or was already released");
+
+		lease.clear();
+		mOutstandingBytes -= lease.mCapacity;
+		mOutstandingCount--;
+
+		int sizeClass = getSizeClass(lease.mCapacity);
+
+		// Only buffers of exactly a class size are kept, larger ones were
+		// allocated for a single use
+		if (sizeClass >= 0
+				&& lease.mCapacity == 1 << (sizeClass + MIN_CLASS_SHIFT)
+				&& mPooledBytes + lease.mCapacity <= mMaxPooledBytes) {
+			mFree.get(sizeClass).add(buffer);
+			mPooledBytes += lease.mCapacity;
+		}
+
+		pollLeaks();
+	}
+
+	//
+	///
+	/// \brief Limit the memory held in released buffers, dropping the
+	/// largest ones first until they fit
+	//
+	public synchronized void setMaxPooledBytes(long maxPooledBytes) {
+		mMaxPooledBytes = maxPooledBytes;
+		trim(maxPooledBytes);
+	}
+
+	public synchronized long getMaxPooledBytes() {
+		return mMaxPooledBytes;
+	}
+
+	//
+	///
+	/// \brief Drop released buffers, largest first, until the pool holds
+	/// at most targetBytes.  Leased buffers are not affected.
+	//
+	public synchronized void trim(long targetBytes) {
+		for (int i = mFree.size() - 1; i >= 0 && mPooledBytes > targetBytes; i--) {
+			ArrayList<ByteBuffer> free = mFree.get(i);
+
+			while (!free.isEmpty() && mPooledBytes > targetBytes)
+				mPooledBytes -= free.remove(free.size() - 1).capacity();
+		}
+	}
+
+	//
+	///
+	/// \brief Drop every released buffer
+	//
+	public void clear() {
+		trim(0);
+	}
+
+	//
+	///
+	/// \brief Whether to record where each buffer is acquired, so that
+	/// leaks can be logged with the stack that caused them.  Costs a
+	/// stack trace per acquire; meant for debug builds.
+	//
+	public synchronized void setLeakTracking(boolean enabled) {
+		mLeakTracking = enabled;
+	}
+
+	public synchronized boolean isLeakTracking() {
+		return mLeakTracking;
+	}
+
+	//
+	///
+	/// \brief Memory held in released buffers ready for reuse
+	//
+	public synchronized long getPooledBytes() {
+		return mPooledBytes;
+	}
+
+	//
+	///
+	/// \brief Capacity of the buffers currently leased
+	//
+	public synchronized long getOutstandingBytes() {
+		pollLeaks();
+		return mOutstandingBytes;
+	}
+
+	//
+	///
+	/// \brief Number of buffers currently leased
+	//
+	public synchronized int getOutstandingCount() {
+		pollLeaks();
+		return mOutstandingCount;
+	}
+
+	public synchronized long getHitCount() {
+		return mHits;
+	}
+
+	public synchronized long getMissCount() {
+		return mMisses;
+	}
+
+	//
+	///
+	/// \brief Fraction of acquires served by a released buffer
+	//
+	public synchronized float getHitRate() {
+		long total = mHits + mMisses;
+		return total == 0 ? 0.0f : (float) mHits / (float) total;
+	}
+
+	//
+	///
+	/// \brief Number of buffers collected without being released.  Leaks
+	/// are only noticed after the garbage collector has run.
+	//
+	public synchronized long getLeakCount() {
+		pollLeaks();
+		return mLeaks;
+	}
+
+	public synchronized void resetCounters() {
+		mHits = 0;
+		mMisses = 0;
+		mLeaks = 0;
+	}
+
+	//
+	// Size class index of a buffer size, -1 when it is too large to pool
+	//
+	private static int getSizeClass(int size) {
+		int shift = MIN_CLASS_SHIFT;
+
+		while (shift <= MAX_CLASS_SHIFT && (1 << shift) < size)
+			shift++;
+
+		return shift <= MAX_CLASS_SHIFT ? shift - MIN_CLASS_SHIFT : -1;
+	}
+
+	//
+	// Unlink and return the lease of a buffer, null if it has none.  Called
+	// with the pool locked.
+	//
+	private Lease removeLease(ByteBuffer buffer) {
+		Integer key = Integer.valueOf(System.identityHashCode(buffer));
+		Lease prev = null;
+
+		for (Lease lease = mLeased.get(key); lease != null; lease = lease.mNext) {
+			if (lease.get() == buffer) {
+				unlink(key, prev, lease);
+				return lease;
+			}
+			prev = lease;
+		}
+
+		return null;
+	}
+
+	private void unlink(Integer key, Lease prev, Lease lease) {
+		if (prev != null)
+			prev.mNext = lease.mNext;
+		else if (lease.mNext != null)
+			mLeased.put(key, lease.mNext);
+		else
+			mLeased.remove(key);
+	}
+
+	//
+	// Account for leased buffers that have been collected.  Called with the
+	// pool locked.
+	//
+	private void pollLeaks() {
+		Lease leaked;
+
+		while ((leaked = (Lease) mLeases.poll()) != null) {
+			Integer key = Integer.valueOf(leaked.mHash);
+			Lease prev = null;
+			Lease lease = mLeased.get(key);
+
+			while (lease != null && lease != leaked) {
+				prev = lease;
+				lease = lease.mNext;
+			}
+
+			// Released leases are cleared and never enqueued, but be safe
+			if (lease == null)
+				continue;
+
+			unlink(key, prev, lease);
+			mOutstandingBytes -= lease.mCapacity;
+			mOutstandingCount--;
+			mLeaks++;
+
+			if (lease.mOrigin != null)
+				Log.w(TAG, "Leaked " + lease.mCapacity
+						+ " byte buffer, never released", lease.mOrigin);
+			else
+				Log.w(TAG, "Leaked " + lease.mCapacity
+						+ " byte buffer, never released");
+		}
+	}
+
+	//
+	// A leased buffer.  Only weakly refers to it so that dropped buffers
+	// show up on the reference queue.
+	//
+	private static class Lease extends WeakReference<ByteBuffer> {
+		Lease(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue,
+				Throwable origin) {
+			super(buffer, queue);
+			mHash = System.identityHashCode(buffer);
+			mCapacity = buffer.capacity();
+			mOrigin = origin;
+		}
+
+		final int mHash;
+		final int mCapacity;
+		final Throwable mOrigin;
+
+		// Next lease with the same identity hash
+		Lease mNext;
+	}
+
+	private static final String TAG = "ESBufferPool";
+
+	// Room for two buffers of the largest class, so that a 2048x2048 RGBA
+	// upload keeps its staging buffer along with smaller ones
+	private static final ESBufferPool sShared = new ESBufferPool(
+			2L << MAX_CLASS_SHIFT);
+
+	// Member variables
+
+	// Released buffers by size class
+	private final ArrayList<ArrayList<ByteBuffer>> mFree = new ArrayList<ArrayList<ByteBuffer>>();
+
+	// Leases by identity hash of their buffer, chained on collisions.
+	// ByteBuffer.hashCode() depends on the contents, so buffers cannot be
+	// keys themselves.
+	private final HashMap<Integer, Lease> mLeased = new HashMap<Integer, Lease>();
+	private final ReferenceQueue<ByteBuffer> mLeases = new ReferenceQueue<ByteBuffer>();
+
+	private long mMaxPooledBytes;
+	private long mPooledBytes;
+	private long mOutstandingBytes;
+	private int mOutstandingCount;
+	private boolean mLeakTracking;
+	private long mHits;
+	private long mMisses;
+	private long mLeaks;
+}
@@ -0,0 +1,795 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESCubemap
+//
+//    Cube map images on the CPU: loading, mip chain generation and
+//    prefiltering for image based lighting.
+//
+//    Faces are stored in the order of the GL_TEXTURE_CUBE_MAP_POSITIVE_X
+//    based face targets (+X, -X, +Y, -Y, +Z, -Z), with the first row of
+//    each face at t = 0 as OpenGL ES expects.  They can be loaded from six
+//    images decoded in parallel, or split from a single cross or strip
+//    image.
+//
+//    Mip levels are box filtered per face.  Filtering each face on its own
+//    leaves the texels along an edge different on the two faces sharing
+//    it, which shows as seams at low levels, so the edge texels of each
+//    generated level are then replaced by the average of both faces, and
+//    corner texels by the average of the three faces meeting there.
+//
+//    prefilter() builds a new cube map whose levels hold the environment
+//    convolved with the GGX distribution for increasing roughness, for
+//    specular image based lighting.  Each texel importance samples the
+//    distribution, reading the source from the mip level matching each
+//    sample's solid angle so that few samples are needed.
+//
+
+package com.openglesbook.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.util.Log;
+
+public class ESCubemap {
+	//
+	///
+	/// \brief Wrap six square faces
+	/// \param faces Tightly packed texels of each face, starting at their
+	/// positions
+	/// \param size Width and height of each face
+	/// \param format ESTexture.FORMAT_RGBA, FORMAT_RGB or FORMAT_LUMINANCE
+	//
+	public ESCubemap(ByteBuffer[] faces, int size, int format) {
+		if (faces.length != 6)
+			throw new IllegalArgumentException("Cube maps have 6 faces, not "
+					+ faces.length);
+		if (size <= 0)
+			throw new IllegalArgumentException("Invalid face size " + size);
+
+		mSize = size;
+		mFormat = format;
+		mTexelSize = ESTexture.getBytesPerPixel(format);
+		mLevels = new ByteBuffer[1][6];
+
+		for (int face = 0; face < 6; face++) {
+			if (faces[face].remaining() < size * size * mTexelSize)
+				throw new IllegalArgumentException("Face " + face
+						+ " too small for size " + size);
+
+			mLevels[0][face] = faces[face].slice();
+		}
+	}
+
+	//
+	///
+	/// \brief Decode six face images in parallel
+	/// \param streams Images of the faces in face target order.  Closed
+	/// once decoded.
+	/// \return The cube map, null if a face could not be decoded or the
+	/// faces are not all square and the same size
+	//
+	public static ESCubemap load(final InputStream[] streams, final int format) {
+		if (streams.length != 6)
+			throw new IllegalArgumentException("Cube maps have 6 faces, not "
+					+ streams.length);
+
+		final ByteBuffer[] faces = new ByteBuffer[6];
+		final int[] sizes = new int[12];
+
+		ESParallel.forRange(0, 6, 1, new ESParallel.RangeTask() {
+			public void run(int start, int end) {
+				for (int face = start; face < end; face++) {
+					Bitmap bitmap = BitmapFactory.decodeStream(streams[face]);
+
+					try {
+						streams[face].close();
+					} catch (IOException e) {
+						Log.w(TAG, "Unable to close face " + face, e);
+					}
+
+					if (bitmap == null)
+						continue;
+
+					sizes[face * 2] = bitmap.getWidth();
+					sizes[face * 2 + 1] = bitmap.getHeight();
+					faces[face] = ESTexture.decode(bitmap, format, null);
+					bitmap.recycle();
+				}
+			}
+		});
+
+		for (int face = 0; face < 6; face++) {
+			if (faces[face] == null) {
+				Log.e(TAG, "Unable to decode cube map face " + face);
+				return null;
+			}
+
+			if (sizes[face * 2] != sizes[0] || sizes[face * 2 + 1] != sizes[0]) {
+				Log.e(TAG, "Cube map face " + face + " is "
+						+ sizes[face * 2] + "x" + sizes[face * 2 + 1]
+						+ ", expected " + sizes[0] + "x" + sizes[0]);
+				return null;
+			}
+		}
+
+		return new ESCubemap(faces, sizes[0], format);
+	}
+
+	//
+	///
+	/// \brief Split a single image holding all six faces.  The layout is
+	/// found from the aspect ratio:
+	///   4:3 - horizontal cross, -X +Z +X -Z across the middle row with +Y
+	///         above and -Y below +Z
+	///   3:4 - vertical cross, -X +Z +X across the second row with +Y above
+	///         +Z and -Y and -Z below it, -Z upside down
+	///   6:1 - horizontal strip in face target order
+	///   1:6 - vertical strip in face target order
+	/// \param image Tightly packed texels, starting at its position
+	//
+	public static ESCubemap split(ByteBuffer image, int width, int height,
+			int format) {
+		final int[] cells;
+		final int size;
+
+		if (width * 3 == height * 4) {
+			size = width / 4;
+			cells = HORIZONTAL_CROSS;
+		} else if (width * 4 == height * 3) {
+			size = width / 3;
+			cells = VERTICAL_CROSS;
+		} else if (width == height * 6) {
+			size = height;
+			cells = HORIZONTAL_STRIP;
+		} else if (width * 6 == height) {
+			size = width;
+			cells = VERTICAL_STRIP;
+		} else {
+			throw new IllegalArgumentException("No cube map layout is "
+					+ width + "x" + height);
+		}
+
+		final ByteBuffer src = image.slice();
+		final int imageWidth = width;
+		final int texelSize = ESTexture.getBytesPerPixel(format);
+		final ByteBuffer[] faces = new ByteBuffer[6];
+
+		ESParallel.forRange(0, 6, 1, new ESParallel.RangeTask() {
+			public void run(int start, int end) {
+				for (int face = start; face < end; face++)
+					faces[face] = copyCell(src, imageWidth, texelSize,
+							cells[face * 3] * size, cells[face * 3 + 1] * size,
+							size, cells[face * 3 + 2] != 0);
+			}
+		});
+
+		return new ESCubemap(faces, size, format);
+	}
+
+	//
+	///
+	/// \brief Decode a cross or strip image and split it
+	/// \see split(ByteBuffer, int, int, int)
+	//
+	public static ESCubemap split(Bitmap bitmap, int format) {
+		return split(ESTexture.decode(bitmap, format, null), bitmap
+				.getWidth(), bitmap.getHeight(), format);
+	}
+
+	public int getSize() {
+		return mSize;
+	}
+
+	public int getFormat() {
+		return mFormat;
+	}
+
+	public int getLevelCount() {
+		return mLevels.length;
+	}
+
+	//
+	///
+	/// \brief Texels of a face of a level
+	/// \param face Offset from GL_TEXTURE_CUBE_MAP_POSITIVE_X
+	//
+	public ByteBuffer getFace(int level, int face) {
+		return mLevels[level][face].duplicate();
+	}
+
+	//
+	///
+	/// \brief Build the full mip chain below level 0, replacing any levels
+	/// already built.  Faces are box filtered in parallel and the edges of
+	/// each level are then made to match across faces.
+	//
+	public void buildMipmaps() {
+		int levelCount = ESMipmapBuilder.getLevelCount(mSize, mSize);
+		ByteBuffer[][] levels = new ByteBuffer[levelCount][];
+
+		levels[0] = mLevels[0];
+
+		for (int level = 1; level < levelCount; level++) {
+			ByteBuffer[] src = levels[level - 1];
+			ByteBuffer[] dst = new ByteBuffer[6];
+			int srcSize = ESMipmapBuilder.getLevelSize(mSize, level - 1);
+
+			// downsample() splits each face's rows across the pool
+			for (int face = 0; face < 6; face++)
+				dst[face] = ESMipmapBuilder.downsample(src[face], srcSize,
+						srcSize, mFormat, null);
+
+			fixSeams(dst, ESMipmapBuilder.getLevelSize(mSize, level));
+			levels[level] = dst;
+		}
+
+		mLevels = levels;
+	}
+
+	//
+	///
+	/// \brief Convolve the environment with the GGX distribution.  Level m
+	/// of the result holds roughness m / (levels - 1), from a mirror at
+	/// level 0 to fully rough at the last level.  Builds this cube map's
+	/// mip chain first if it has none.  Texels are treated as linear.
+	/// Samples read the source level matching their footprint, so the cost
+	/// grows with size and sampleCount but hardly with getSize().
+	/// \param size Face size of the result's level 0, at most getSize()
+	/// \param sampleCount GGX samples per texel
+	/// \return A new cube map with a full mip chain
+	//
+	public ESCubemap prefilter(int size, int sampleCount) {
+		if (size <= 0 || size > mSize)
+			throw new IllegalArgumentException("Invalid prefiltered size "
+					+ size);
+		if (sampleCount <= 0)
+			throw new IllegalArgumentException("Invalid sample count "
+					+ sampleCount);
+
+		if (mLevels.length == 1 && mSize > 1)
+			buildMipmaps();
+
+		int levelCount = ESMipmapBuilder.getLevelCount(size, size);
+		ByteBuffer[][] levels = new ByteBuffer[levelCount][];
+
+		for (int level = 0; level < levelCount; level++) {
+			float roughness = levelCount == 1 ? 0.0f : (float) level
+					/ (levelCount - 1);
+
+			levels[level] = convolve(ESMipmapBuilder
+					.getLevelSize(size, level), roughness, sampleCount);
+		}
+
+		ESCubemap result = new ESCubemap(levels[0], size, mFormat);
+		result.mLevels = levels;
+		return result;
+	}
+
+	//
+	///
+	/// \brief Load every level into a new cube map texture, with linear
+	/// filtering and clamped to edge.  Leaves the texture bound to
+	/// GL_TEXTURE_CUBE_MAP.
+	/// \return A new texture object
+	//
+	public int loadTexture() {
+		int[] textureId = new int[1];
+
+		GLES20.glGenTextures(1, textureId, 0);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_CUBE_MAP, textureId[0]);
+		GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+
+		for (int level = 0; level < mLevels.length; level++) {
+			int size = ESMipmapBuilder.getLevelSize(mSize, level);
+
+			for (int face = 0; face < 6; face++)
+				GLES20.glTexImage2D(GLES20.GL_TEXTURE_CUBE_MAP_POSITIVE_X
+						+ face, level, mFormat, size, size, 0, mFormat,
+						GLES20.GL_UNSIGNED_BYTE, getFace(level, face));
+		}
+
+		GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_CUBE_MAP,
+				GLES20.GL_TEXTURE_MIN_FILTER,
+				mLevels.length > 1 ? GLES20.GL_LINEAR_MIPMAP_LINEAR
+						: GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_CUBE_MAP,
+				GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_CUBE_MAP,
+				GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_CUBE_MAP,
+				GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+		return textureId[0];
+	}
+
+	//
+	// Copy one face out of a cross or strip image, optionally rotated by
+	// 180 degrees
+	//
+	private static ByteBuffer copyCell(ByteBuffer src, int imageWidth,
+			int texelSize, int x0, int y0, int size, boolean rotate) {
+		ByteBuffer face = ByteBuffer.allocateDirect(size * size * texelSize)
+				.order(ByteOrder.nativeOrder());
+		ByteBuffer row = src.duplicate();
+		int rowBytes = size * texelSize;
+
+		if (!rotate) {
+			for (int y = 0; y < size; y++) {
+				int offset = ((y0 + y) * imageWidth + x0) * texelSize;
+				row.limit(offset + rowBytes);
+				row.position(offset);
+				face.put(row);
+			}
+		} else {
+			for (int y = 0; y < size; y++) {
+				int srcRow = ((y0 + size - 1 - y) * imageWidth + x0) * texelSize;
+
+				for (int x = 0; x < size; x++) {
+					int s = srcRow + (size - 1 - x) * texelSize;
+
+					for (int c = 0; c < texelSize; c++)
+						face.put(src.get(s + c));
+				}
+			}
+		}
+
+		face.flip();
+		return face;
+	}
+
+	//
+	// Make edge and corner texels of a level agree across faces
+	//
+	private void fixSeams(ByteBuffer[] faces, int size) {
+		if (size < 2)
+			return;
+
+		float[] dir = new float[3];
+		int[] texel = new int[3];
+		int[] sum = new int[mTexelSize];
+		float outside = 1.0f + 1.0f / size;
+
+		// Edges, corners excluded: each texel pairs with the texel on the
+		// neighbouring face found by stepping half a texel off the edge
+		for (int face = 0; face < 6; face++) {
+			for (int edge = 0; edge < 4; edge++) {
+				for (int k = 1; k < size - 1; k++) {
+					float along = (2.0f * k + 1.0f) / size - 1.0f;
+					int x = edge == 0 ? 0 : (edge == 1 ? size - 1 : k);
+					int y = edge == 2 ? 0 : (edge == 3 ? size - 1 : k);
+					float u = edge == 0 ? -outside : (edge == 1 ? outside
+							: along);
+					float v = edge == 2 ? -outside : (edge == 3 ? outside
+							: along);
+
+					faceDirection(face, u, v, dir);
+					directionToTexel(dir[0], dir[1], dir[2], size, texel);
+
+					// Average each pair once
+					if (texel[0] < face)
+						continue;
+
+					average(faces, size, sum, face, x, y, texel[0], texel[1],
+							texel[2], -1, 0, 0);
+				}
+			}
+		}
+
+		// Corners: the three faces meeting at each cube corner
+		for (int corner = 0; corner < 8; corner++) {
+			int sx = (corner & 1) != 0 ? 1 : -1;
+			int sy = (corner & 2) != 0 ? 1 : -1;
+			int sz = (corner & 4) != 0 ? 1 : -1;
+			int[] t = new int[9];
+
+			for (int axis = 0; axis < 3; axis++) {
+				int face = axis * 2 + ((axis == 0 ? sx : (axis == 1 ? sy : sz)) > 0 ? 0
+						: 1);
+
+				faceCoords(face, sx, sy, sz, dir);
+				t[axis * 3] = face;
+				t[axis * 3 + 1] = dir[0] > 0.0f ? size - 1 : 0;
+				t[axis * 3 + 2] = dir[1] > 0.0f ? size - 1 : 0;
+			}
+
+			average(faces, size, sum, t[0], t[1], t[2], t[3], t[4], t[5],
+					t[6], t[7], t[8]);
+		}
+	}
+
+	//
+	// Replace two or three texels by their average; face2 is -1 for two
+	//
+	private void average(ByteBuffer[] faces, int size, int[] sum, int face0,
+			int x0, int y0, int face1, int x1, int y1, int face2, int x2,
+			int y2) {
+		int count = face2 < 0 ? 2 : 3;
+		int i0 = (y0 * size + x0) * mTexelSize;
+		int i1 = (y1 * size + x1) * mTexelSize;
+		int i2 = (y2 * size + x2) * mTexelSize;
+
+		for (int c = 0; c < mTexelSize; c++) {
+			sum[c] = (faces[face0].get(i0 + c) & 0xFF)
+					+ (faces[face1].get(i1 + c) & 0xFF);
+
+			if (count == 3)
+				sum[c] += faces[face2].get(i2 + c) & 0xFF;
+		}
+
+		for (int c = 0; c < mTexelSize; c++) {
+			byte value = (byte) ((sum[c] + count / 2) / count);
+
+			faces[face0].put(i0 + c, value);
+			faces[face1].put(i1 + c, value);
+
+			if (count == 3)
+				faces[face2].put(i2 + c, value);
+		}
+	}
+
+	//
+	// One level of the prefiltered cube map
+	//
+	private ByteBuffer[] convolve(final int size, float roughness,
+			final int sampleCount) {
+		final ByteBuffer[] faces = new ByteBuffer[6];
+
+		for (int face = 0; face < 6; face++)
+			faces[face] = ByteBuffer.allocateDirect(
+					size * size * mTexelSize).order(ByteOrder.nativeOrder());
+
+		// A mirror reflects the source unchanged
+		final boolean mirror = roughness == 0.0f;
+		final float[] samples = mirror ? null : importanceSamples(roughness,
+				sampleCount);
+		final int count = mirror ? 0 : samples.length / 5;
+
+		ESParallel.forRange(0, 6 * size, 4, new ESParallel.RangeTask() {
+			public void run(int start, int end) {
+				float[] n = new float[3];
+				float[] st = new float[3];
+				float[] color = new float[4];
+				float[] sum = new float[4];
+				byte[] row = new byte[size * mTexelSize];
+
+				for (int r = start; r < end; r++) {
+					int face = r / size;
+					int y = r % size;
+					float v = (2.0f * y + 1.0f) / size - 1.0f;
+
+					for (int x = 0; x < size; x++) {
+						float u = (2.0f * x + 1.0f) / size - 1.0f;
+
+						faceDirection(face, u, v, n);
+						normalize(n);
+
+						if (mirror) {
+							sample(n[0], n[1], n[2], log2(mSize / (float) size),
+									st, sum);
+						} else {
+							integrate(n, samples, count, st, color, sum);
+						}
+
+						for (int c = 0; c < mTexelSize; c++)
+							row[x * mTexelSize + c] = (byte) (Math.min(1.0f,
+									Math.max(0.0f, sum[c])) * 255.0f + 0.5f);
+					}
+
+					ByteBuffer dst = faces[face].duplicate();
+					dst.position(y * size * mTexelSize);
+					dst.put(row);
+				}
+			}
+		});
+
+		return faces;
+	}
+
+	//
+	// Weighted sum of the source over the samples around direction n.
+	// N = V = R, so each sample's light direction in tangent space is
+	// fixed and only needs rotating into n's frame.
+	//
+	private void integrate(float[] n, float[] samples, int count,
+			float[] st, float[] color, float[] sum) {
+		// Tangent frame around n
+		float upX = Math.abs(n[2]) < 0.999f ? 0.0f : 1.0f;
+		float upZ = 1.0f - upX;
+		float tx = upZ * n[1];
+		float ty = upX * n[2] - upZ * n[0];
+		float tz = -upX * n[1];
+		float length = (float) Math.sqrt(tx * tx + ty * ty + tz * tz);
+		tx /= length;
+		ty /= length;
+		tz /= length;
+		float bx = n[1] * tz - n[2] * ty;
+		float by = n[2] * tx - n[0] * tz;
+		float bz = n[0] * ty - n[1] * tx;
+		float weight = 0.0f;
+
+		for (int c = 0; c < 4; c++)
+			sum[c] = 0.0f;
+
+		for (int i = 0; i < count; i++) {
+			float lx = samples[i * 5];
+			float ly = samples[i * 5 + 1];
+			float lz = samples[i * 5 + 2];
+
+			sample(tx * lx + bx * ly + n[0] * lz, ty * lx + by * ly + n[1]
+					* lz, tz * lx + bz * ly + n[2] * lz, samples[i * 5 + 4], st,
+					color);
+
+			float w = samples[i * 5 + 3];
+			for (int c = 0; c < mTexelSize; c++)
+				sum[c] += color[c] * w;
+			weight += w;
+		}
+
+		for (int c = 0; c < mTexelSize; c++)
+			sum[c] /= weight;
+	}
+
+	//
+	// GGX importance samples for a roughness, as light directions in
+	// tangent space with N = V = +Z.  Each sample is { x, y, z, N.L, lod }
+	// where lod picks the source level whose texels cover the sample's
+	// solid angle.  Samples below the horizon are dropped.
+	//
+	private float[] importanceSamples(float roughness, int sampleCount) {
+		float a = roughness * roughness;
+		float a2 = a * a;
+		float[] samples = new float[sampleCount * 5];
+		int count = 0;
+
+		// Solid angle of a texel of the source's level 0
+		float texelAngle = 4.0f * (float) Math.PI / (6.0f * mSize * mSize);
+
+		for (int i = 0; i < sampleCount; i++) {
+			// Hammersley point
+			float e1 = (float) i / sampleCount;
+			float e2 = (Integer.reverse(i) >>> 1) / (float) (1L << 31);
+
+			float phi = 2.0f * (float) Math.PI * e1;
+			float cosTheta = (float) Math.sqrt((1.0f - e2)
+					/ (1.0f + (a2 - 1.0f) * e2));
+			float sinTheta = (float) Math.sqrt(1.0f - cosTheta * cosTheta);
+			float hx = sinTheta * (float) Math.cos(phi);
+			float hy = sinTheta * (float) Math.sin(phi);
+			float hz = cosTheta;
+
+			// Reflect V = +Z about H
+			float lz = 2.0f * hz * hz - 1.0f;
+			if (lz <= 0.0f)
+				continue;
+
+			// pdf of L is D(H) * N.H / (4 V.H), and N.H = V.H here
+			float d = a2 / (float) Math.PI
+					/ sq(hz * hz * (a2 - 1.0f) + 1.0f);
+			float sampleAngle = 1.0f / (sampleCount * d * 0.25f);
+			float lod = Math.max(0.0f, 0.5f * log2(sampleAngle / texelAngle)
+					+ 1.0f);
+
+			samples[count * 5] = 2.0f * hz * hx;
+			samples[count * 5 + 1] = 2.0f * hz * hy;
+			samples[count * 5 + 2] = lz;
+			samples[count * 5 + 3] = lz;
+			samples[count * 5 + 4] = lod;
+			count++;
+		}
+
+		float[] result = new float[count * 5];
+		System.arraycopy(samples, 0, result, 0, result.length);
+		return result;
+	}
+
+	//
+	// Bilinear sample of the source in a direction, from the nearest level
+	// to lod.  Filtering stays within the face.
+	// \param st Scratch space for three floats
+	//
+	private void sample(float x, float y, float z, float lod, float[] st,
+			float[] color) {
+		int level = Math.min(mLevels.length - 1, (int) (lod + 0.5f));
+		int size = ESMipmapBuilder.getLevelSize(mSize, level);
+
+		directionToFace(x, y, z, st);
+
+		ByteBuffer face = mLevels[level][(int) st[2]];
+		float fx = Math.max(0.0f, Math.min(size - 1.0f, st[0] * size - 0.5f));
+		float fy = Math.max(0.0f, Math.min(size - 1.0f, st[1] * size - 0.5f));
+		int x0 = (int) fx;
+		int y0 = (int) fy;
+		int x1 = Math.min(size - 1, x0 + 1);
+		int y1 = Math.min(size - 1, y0 + 1);
+		fx -= x0;
+		fy -= y0;
+
+		int i00 = (y0 * size + x0) * mTexelSize;
+		int i10 = (y0 * size + x1) * mTexelSize;
+		int i01 = (y1 * size + x0) * mTexelSize;
+		int i11 = (y1 * size + x1) * mTexelSize;
+
+		for (int c = 0; c < mTexelSize; c++) {
+			float top = (face.get(i00 + c) & 0xFF) * (1.0f - fx)
+					+ (face.get(i10 + c) & 0xFF) * fx;
+			float bottom = (face.get(i01 + c) & 0xFF) * (1.0f - fx)
+					+ (face.get(i11 + c) & 0xFF) * fx;
+
+			color[c] = (top * (1.0f - fy) + bottom * fy) * (1.0f / 255.0f);
+		}
+	}
+
+	//
+	// Direction through a point of a face, u and v in -1..1 from the
+	// face's first column and row.  Points outside -1..1 give directions
+	// into the neighbouring faces.
+	//
+	private static void faceDirection(int face, float u, float v, float[] dir) {
+		switch (face) {
+		case 0:
+			dir[0] = 1.0f;
+			dir[1] = -v;
+			dir[2] = -u;
+			break;
+		case 1:
+			dir[0] = -1.0f;
+			dir[1] = -v;
+			dir[2] = u;
+			break;
+		case 2:
+			dir[0] = u;
+			dir[1] = 1.0f;
+			dir[2] = v;
+			break;
+		case 3:
+			dir[0] = u;
+			dir[1] = -1.0f;
+			dir[2] = -v;
+			break;
+		case 4:
+			dir[0] = u;
+			dir[1] = -v;
+			dir[2] = 1.0f;
+			break;
+		default:
+			dir[0] = -u;
+			dir[1] = -v;
+			dir[2] = -1.0f;
+			break;
+		}
+	}
+
+	//
+	// Face a direction selects and where it lands on it, using the
+	// OpenGL ES cube map rules
+	// \param st Receives s, t in 0..1 and the face
+	//
+	private static void directionToFace(float x, float y, float z, float[] st) {
+		float ax = Math.abs(x);
+		float ay = Math.abs(y);
+		float az = Math.abs(z);
+		int face;
+
+		if (ax >= ay && ax >= az)
+			face = x > 0.0f ? 0 : 1;
+		else if (ay >= az)
+			face = y > 0.0f ? 2 : 3;
+		else
+			face = z > 0.0f ? 4 : 5;
+
+		faceCoords(face, x, y, z, st);
+		st[0] = (st[0] + 1.0f) * 0.5f;
+		st[1] = (st[1] + 1.0f) * 0.5f;
+		st[2] = face;
+	}
+
+	//
+	// Project a direction onto a given face
+	// \param uv Receives u, v in -1..1 for directions within the face
+	//
+	private static void faceCoords(int face, float x, float y, float z,
+			float[] uv) {
+		float sc;
+		float tc;
+		float ma;
+
+		switch (face) {
+		case 0:
+			sc = -z;
+			tc = -y;
+			ma = x;
+			break;
+		case 1:
+			sc = z;
+			tc = -y;
+			ma = -x;
+			break;
+		case 2:
+			sc = x;
+			tc = z;
+			ma = y;
+			break;
+		case 3:
+			sc = x;
+			tc = -z;
+			ma = -y;
+			break;
+		case 4:
+			sc = x;
+			tc = -y;
+			ma = z;
+			break;
+		default:
+			sc = -x;
+			tc = -y;
+			ma = -z;
+			break;
+		}
+
+		uv[0] = sc / ma;
+		uv[1] = tc / ma;
+	}
+
+	private static void directionToTexel(float x, float y, float z,
+			int size, int[] texel) {
+		float[] st = new float[3];
+
+		directionToFace(x, y, z, st);
+		texel[0] = (int) st[2];
+		texel[1] = Math.max(0, Math.min(size - 1, (int) (st[0] * size)));
+		texel[2] = Math.max(0, Math.min(size - 1, (int) (st[1] * size)));
+	}
+
+	private static void normalize(float[] v) {
+		float length = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2]
+				* v[2]);
+
+		v[0] /= length;
+		v[1] /= length;
+		v[2] /= length;
+	}
+
+	private static float log2(float value) {
+		return (float) (Math.log(value) / Math.log(2.0));
+	}
+
+	private static float sq(float value) {
+		return value * value;
+	}
+
+	private static final String TAG = "ESCubemap";
+
+	// Cell column, row and whether it is rotated 180 degrees, per face
+	private static final int[] HORIZONTAL_CROSS = { 2, 1, 0, 0, 1, 0, 1, 0,
+			0, 1, 2, 0, 1, 1, 0, 3, 1, 0 };
+	private static final int[] VERTICAL_CROSS = { 2, 1, 0, 0, 1, 0, 1, 0, 0,
+			1, 2, 0, 1, 1, 0, 1, 3, 1 };
+	private static final int[] HORIZONTAL_STRIP = { 0, 0, 0, 1, 0, 0, 2, 0,
+			0, 3, 0, 0, 4, 0, 0, 5, 0, 0 };
+	private static final int[] VERTICAL_STRIP = { 0, 0, 0, 0, 1, 0, 0, 2, 0,
+			0, 3, 0, 0, 4, 0, 0, 5, 0 };
+
+	// Member variables
+	private final int mSize;
+	private final int mFormat;
+	private final int mTexelSize;
+
+	// Faces of each level, mLevels[level][face]
+	private ByteBuffer[][] mLevels;
+}
@@ -0,0 +1,578 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESETC1Encoder
+//
+//    Compresses RGB images to ETC1 (OES_compressed_ETC1_RGB8_texture).
+//    Each 4x4 block becomes 8 bytes made of two 2x4 or 4x2 sub-blocks, each
+//    with a base color and one of eight intensity modifier tables.  The
+//    encoder tries both sub-block orientations in individual and
+//    differential mode and searches base colors around each sub-block's
+//    average; the quality preset sets how wide that search is.  Blocks are
+//    encoded in parallel with ESParallel.
+//
+//    This class does not use any Android API, so it can run on a desktop
+//    JVM to convert assets offline.  writePKM() stores the result in the
+//    PKM container used by the Android SDK tools.
+//
+
+package com.openglesbook.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class ESETC1Encoder {
+	// Quality presets
+	//   QUALITY_FAST   - base color from the sub-block average only
+	//   QUALITY_MEDIUM - base colors within 1 step of the average, with the
+	//                    tables next to the average's best table
+	//   QUALITY_HIGH   - base colors within 2 steps of the average, with
+	//                    every table
+	public static final int QUALITY_FAST = 0;
+	public static final int QUALITY_MEDIUM = 1;
+	public static final int QUALITY_HIGH = 2;
+
+	// Internal format for glCompressedTexImage2D
+	public static final int GL_ETC1_RGB8_OES = 0x8D64;
+
+	// Bytes per encoded 4x4 block
+	public static final int BLOCK_SIZE = 8;
+
+	public ESETC1Encoder(int quality) {
+		if (quality < QUALITY_FAST || quality > QUALITY_HIGH)
+			throw new IllegalArgumentException("Invalid quality " + quality);
+
+		mRadius = quality;
+		mTableSpread = quality == QUALITY_HIGH ? 7 : 1;
+	}
+
+	//
+	///
+	/// \brief Size of an encoded image.  Partial blocks at the right and
+	/// bottom edges are padded to a full block.
+	//
+	public static int getEncodedSize(int width, int height) {
+		return ((width + 3) / 4) * ((height + 3) / 4) * BLOCK_SIZE;
+	}
+
+	//
+	///
+	/// \brief Encode an image
+	/// \param pixels Tightly packed 8 bit RGB or RGBA texels, starting at
+	/// its position.  Alpha is ignored.
+	/// \param width Image width
+	/// \param height Image height
+	/// \param pixelSize 3 for RGB, 4 for RGBA
+	/// \param dst Destination with getEncodedSize() bytes remaining, or null
+	/// to allocate one
+	/// \return dst (or the new buffer), positioned at the first block
+	//
+	public ByteBuffer encode(ByteBuffer pixels, final int width,
+			final int height, final int pixelSize, ByteBuffer dst) {
+		if (pixelSize != 3 && pixelSize != 4)
+			throw new IllegalArgumentException("Invalid pixel size "
+					+ pixelSize);
+		if (pixels.remaining() < width * height * pixelSize)
+			throw new IllegalArgumentException("Source too small for "
+					+ width + "x" + height + " image");
+
+		int size = getEncodedSize(width, height);
+
+		if (dst == null)
+			dst = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+		else if (dst.remaining() < size)
+			throw new IllegalArgumentException("Destination too small for "
+					+ width + "x" + height + " image");
+
+		final ByteBuffer src = pixels.slice();
+		final ByteBuffer out = dst.slice();
+		final int blocksWide = (width + 3) / 4;
+		int blocksHigh = (height + 3) / 4;
+
+		ESParallel.forRange(0, blocksHigh, 1, new ESParallel.RangeTask() {
+			public void run(int start, int end) {
+				encodeRows(src, width, height, pixelSize, out, blocksWide,
+						start, end);
+			}
+		});
+
+		return dst;
+	}
+
+	//
+	///
+	/// \brief Build a mip chain with ESMipmapBuilder and encode every level
+	/// \param level0 Tightly packed RGB texels
+	/// \return Encoded levels, largest first
+	//
+	public ByteBuffer[] encodeMipmaps(ByteBuffer level0, int width, int height) {
+		ByteBuffer[] levels = ESMipmapBuilder.buildChain(level0, width,
+				height, ESTexture.FORMAT_RGB);
+		ByteBuffer[] encoded = new ByteBuffer[levels.length];
+
+		for (int level = 0; level < levels.length; level++)
+			encoded[level] = encode(levels[level], ESMipmapBuilder
+					.getLevelSize(width, level), ESMipmapBuilder.getLevelSize(
+					height, level), 3, null);
+
+		return encoded;
+	}
+
+	//
+	///
+	/// \brief Decode an encoded image back to RGB, for checking quality
+	/// \param encoded Blocks starting at its position
+	/// \param dst Destination for width * height * 3 bytes, or null
+	/// \return dst (or the new buffer), positioned at the first texel
+	//
+	public static ByteBuffer decode(ByteBuffer encoded, int width, int height,
+			ByteBuffer dst) {
+		if (dst == null)
+			dst = ByteBuffer.allocateDirect(width * height * 3).order(
+					ByteOrder.nativeOrder());
+
+		int blocksWide = (width + 3) / 4;
+		int[] rgb = new int[16 * 3];
+		int base = encoded.position();
+		int start = dst.position();
+
+		for (int by = 0; by < (height + 3) / 4; by++) {
+			for (int bx = 0; bx < blocksWide; bx++) {
+				int offset = base + (by * blocksWide + bx) * BLOCK_SIZE;
+				decodeBlock(readInt(encoded, offset), readInt(encoded,
+						offset + 4), rgb);
+
+				for (int y = 0; y < 4 && by * 4 + y < height; y++) {
+					for (int x = 0; x < 4 && bx * 4 + x < width; x++) {
+						int i = start + ((by * 4 + y) * width + bx * 4 + x) * 3;
+						int p = (y * 4 + x) * 3;
+						dst.put(i, (byte) rgb[p]);
+						dst.put(i + 1, (byte) rgb[p + 1]);
+						dst.put(i + 2, (byte) rgb[p + 2]);
+					}
+				}
+			}
+		}
+
+		return dst;
+	}
+
+	//
+	///
+	/// \brief Write an encoded image as a PKM file: a 16 byte header
+	/// ("PKM 10", format, padded and original size, big endian) followed by
+	/// the blocks
+	//
+	public static void writePKM(OutputStream os, ByteBuffer encoded,
+			int width, int height) throws IOException {
+		byte[] header = new byte[PKM_HEADER_SIZE];
+		int paddedWidth = (width + 3) & ~3;
+		int paddedHeight = (height + 3) & ~3;
+
+		header[0] = 'P';
+		header[1] = 'K';
+		header[2] = 'M';
+		header[3] = ' ';
+		header[4] = '1';
+		header[5] = '0';
+		// Format 0, ETC1_RGB_NO_MIPMAPS
+		header[6] = 0;
+		header[7] = 0;
+		header[8] = (byte) (paddedWidth >> 8);
+		header[9] = (byte) paddedWidth;
+		header[10] = (byte) (paddedHeight >> 8);
+		header[11] = (byte) paddedHeight;
+		header[12] = (byte) (width >> 8);
+		header[13] = (byte) width;
+		header[14] = (byte) (height >> 8);
+		header[15] = (byte) height;
+		os.write(header);
+
+		byte[] blocks = new byte[getEncodedSize(width, height)];
+		encoded.duplicate().get(blocks);
+		os.write(blocks);
+	}
+
+	private void encodeRows(ByteBuffer src, int width, int height,
+			int pixelSize, ByteBuffer out, int blocksWide, int start, int end) {
+		int[] block = new int[16 * 3];
+		long[] words = new long[1];
+
+		for (int by = start; by < end; by++) {
+			for (int bx = 0; bx < blocksWide; bx++) {
+				// Fetch the block, repeating the last row and column past
+				// the edges
+				for (int y = 0; y < 4; y++) {
+					int sy = Math.min(by * 4 + y, height - 1);
+
+					for (int x = 0; x < 4; x++) {
+						int sx = Math.min(bx * 4 + x, width - 1);
+						int i = (sy * width + sx) * pixelSize;
+						int p = (y * 4 + x) * 3;
+
+						block[p] = src.get(i) & 0xFF;
+						block[p + 1] = src.get(i + 1) & 0xFF;
+						block[p + 2] = src.get(i + 2) & 0xFF;
+					}
+				}
+
+				encodeBlock(block, words);
+
+				int offset = (by * blocksWide + bx) * BLOCK_SIZE;
+				long word = words[0];
+				for (int b = 0; b < BLOCK_SIZE; b++)
+					out.put(offset + b, (byte) (word >>> (56 - b * 8)));
+			}
+		}
+	}
+
+	//
+	// Encode one block of 16 RGB texels, stored row by row, into a 64 bit
+	// word
+	//
+	private void encodeBlock(int[] block, long[] word) {
+		int[] sub0 = new int[8 * 3];
+		int[] sub1 = new int[8 * 3];
+		int[] best0 = new int[4];
+		int[] best1 = new int[4];
+		int[] alt0 = new int[4];
+		int[] alt1 = new int[4];
+		long bestError = Long.MAX_VALUE;
+		long bestWord = 0;
+
+		for (int flip = 0; flip < 2; flip++) {
+			gatherSubBlocks(block, flip, sub0, sub1);
+
+			// Individual mode, two independent 4 bit base colors
+			long error = search(sub0, 4, null, 0, best0)
+					+ search(sub1, 4, null, 0, best1);
+
+			if (error < bestError) {
+				bestError = error;
+				bestWord = packWord(block, flip, false, best0, best1);
+			}
+
+			// Differential mode, 5 bit base colors no more than -4..3
+			// apart.  Use the best base for each sub-block if they are close
+			// enough, otherwise constrain one sub-block to the other's best
+			// base, trying both ways round.
+			long error0 = search(sub0, 5, null, 0, best0);
+			long error1 = search(sub1, 5, null, 0, best1);
+			long first = error0 + error1;
+
+			if (!inDifferentialRange(best0, best1)) {
+				first = error0 + search(sub1, 5, best0, 1, alt1);
+				long second = error1 + search(sub0, 5, best1, -1, alt0);
+
+				if (second < first) {
+					first = second;
+					System.arraycopy(alt0, 0, best0, 0, 4);
+				} else {
+					System.arraycopy(alt1, 0, best1, 0, 4);
+				}
+			}
+
+			if (first < bestError) {
+				bestError = first;
+				bestWord = packWord(block, flip, true, best0, best1);
+			}
+		}
+
+		word[0] = bestWord;
+	}
+
+	//
+	// Find the quantized base color and table with the smallest error for a
+	// sub-block.  If ref is given the search is limited to colors whose
+	// difference from ref fits the differential mode: sign is 1 when ref is
+	// the first sub-block's color, -1 when it is the second's.
+	// result = { r, g, b, table }
+	//
+	private long search(int[] sub, int bits, int[] ref, int sign,
+			int[] result) {
+		int max = (1 << bits) - 1;
+		int sumR = 0;
+		int sumG = 0;
+		int sumB = 0;
+
+		for (int i = 0; i < 8; i++) {
+			sumR += sub[i * 3];
+			sumG += sub[i * 3 + 1];
+			sumB += sub[i * 3 + 2];
+		}
+
+		// Average quantized to the base color precision
+		int qr = (sumR * max + 255 * 4) / (255 * 8);
+		int qg = (sumG * max + 255 * 4) / (255 * 8);
+		int qb = (sumB * max + 255 * 4) / (255 * 8);
+		// Try every table with the average itself, then only the tables
+		// next to the best one with the colors around it
+		long bestError = searchTables(sub, bits, clampBase(qr, max, ref, 0,
+				sign), clampBase(qg, max, ref, 1, sign), clampBase(qb, max, ref,
+				2, sign), 0, 7, Long.MAX_VALUE, result);
+		int firstTable = Math.max(0, result[3] - mTableSpread);
+		int lastTable = Math.min(7, result[3] + mTableSpread);
+
+		for (int dr = -mRadius; dr <= mRadius; dr++) {
+			int r = clampBase(qr + dr, max, ref, 0, sign);
+			for (int dg = -mRadius; dg <= mRadius; dg++) {
+				int g = clampBase(qg + dg, max, ref, 1, sign);
+				for (int db = -mRadius; db <= mRadius; db++) {
+					int b = clampBase(qb + db, max, ref, 2, sign);
+
+					if (dr != 0 || dg != 0 || db != 0)
+						bestError = searchTables(sub, bits, r, g, b,
+								firstTable, lastTable, bestError, result);
+				}
+			}
+		}
+
+		return bestError;
+	}
+
+	//
+	// Try a range of tables with one base color, updating result if any
+	// beats bestError
+	//
+	private static long searchTables(int[] sub, int bits, int r, int g,
+			int b, int firstTable, int lastTable, long bestError, int[] result) {
+		int er = expand(r, bits);
+		int eg = expand(g, bits);
+		int eb = expand(b, bits);
+
+		for (int table = firstTable; table <= lastTable; table++) {
+			long error = subBlockError(sub, er, eg, eb, table, bestError);
+
+			if (error < bestError) {
+				bestError = error;
+				result[0] = r;
+				result[1] = g;
+				result[2] = b;
+				result[3] = table;
+			}
+		}
+
+		return bestError;
+	}
+
+	private static boolean inDifferentialRange(int[] c0, int[] c1) {
+		for (int c = 0; c < 3; c++) {
+			int delta = c1[c] - c0[c];
+
+			if (delta < -4 || delta > 3)
+				return false;
+		}
+
+		return true;
+	}
+
+	//
+	// Clamp a candidate base component to the valid range, and to within
+	// the differential range of ref[component] when ref is given
+	//
+	private static int clampBase(int value, int max, int[] ref,
+			int component, int sign) {
+		int lo = 0;
+		int hi = max;
+
+		if (ref != null) {
+			// Second color minus first must lie in -4..3
+			lo = Math.max(lo, sign > 0 ? ref[component] - 4 : ref[component] - 3);
+			hi = Math.min(hi, sign > 0 ? ref[component] + 3 : ref[component] + 4);
+		}
+
+		return value < lo ? lo : (value > hi ? hi : value);
+	}
+
+	//
+	// Squared error of a sub-block for one base color and table, giving up
+	// once it exceeds limit
+	//
+	private static long subBlockError(int[] sub, int r, int g, int b,
+			int table, long limit) {
+		int[] modifiers = MODIFIERS[table];
+		long error = 0;
+
+		for (int i = 0; i < 8 && error < limit; i++) {
+			int pr = sub[i * 3];
+			int pg = sub[i * 3 + 1];
+			int pb = sub[i * 3 + 2];
+			int best = Integer.MAX_VALUE;
+
+			for (int m = 0; m < 4; m++) {
+				int d = modifiers[m];
+				int er = clamp255(r + d) - pr;
+				int eg = clamp255(g + d) - pg;
+				int eb = clamp255(b + d) - pb;
+				int e = er * er + eg * eg + eb * eb;
+
+				if (e < best)
+					best = e;
+			}
+
+			error += best;
+		}
+
+		return error;
+	}
+
+	//
+	// Assemble the 64 bit block: base colors, tables, mode and flip bits
+	// in the high word and the per texel modifier indices in the low word
+	//
+	private static long packWord(int[] block, int flip, boolean differential,
+			int[] c0, int[] c1) {
+		int hi;
+
+		if (differential) {
+			hi = (c0[0] << 27) | (((c1[0] - c0[0]) & 7) << 24)
+					| (c0[1] << 19) | (((c1[1] - c0[1]) & 7) << 16)
+					| (c0[2] << 11) | (((c1[2] - c0[2]) & 7) << 8) | (1 << 1);
+		} else {
+			hi = (c0[0] << 28) | (c1[0] << 24) | (c0[1] << 20)
+					| (c1[1] << 16) | (c0[2] << 12) | (c1[2] << 8);
+		}
+
+		hi |= (c0[3] << 5) | (c1[3] << 2) | flip;
+
+		int bits = differential ? 5 : 4;
+		int lo = 0;
+
+		for (int y = 0; y < 4; y++) {
+			for (int x = 0; x < 4; x++) {
+				int[] c = (flip == 0 ? x < 2 : y < 2) ? c0 : c1;
+				int p = (y * 4 + x) * 3;
+				int index = bestModifier(block[p], block[p + 1], block[p + 2],
+						expand(c[0], bits), expand(c[1], bits), expand(c[2],
+								bits), MODIFIERS[c[3]]);
+
+				// Texels are numbered down the columns
+				int k = x * 4 + y;
+				lo |= ((index >> 1) << (16 + k)) | ((index & 1) << k);
+			}
+		}
+
+		return ((long) hi << 32) | (lo & 0xFFFFFFFFL);
+	}
+
+	private static int bestModifier(int pr, int pg, int pb, int r, int g,
+			int b, int[] modifiers) {
+		int bestIndex = 0;
+		int best = Integer.MAX_VALUE;
+
+		for (int m = 0; m < 4; m++) {
+			int d = modifiers[m];
+			int er = clamp255(r + d) - pr;
+			int eg = clamp255(g + d) - pg;
+			int eb = clamp255(b + d) - pb;
+			int e = er * er + eg * eg + eb * eb;
+
+			if (e < best) {
+				best = e;
+				bestIndex = m;
+			}
+		}
+
+		return bestIndex;
+	}
+
+	//
+	// Split a block into its two sub-blocks: left and right halves when
+	// flip is 0, top and bottom halves when it is 1
+	//
+	private static void gatherSubBlocks(int[] block, int flip, int[] sub0,
+			int[] sub1) {
+		int n0 = 0;
+		int n1 = 0;
+
+		for (int y = 0; y < 4; y++) {
+			for (int x = 0; x < 4; x++) {
+				int p = (y * 4 + x) * 3;
+				boolean first = flip == 0 ? x < 2 : y < 2;
+				int[] sub = first ? sub0 : sub1;
+				int n = first ? n0++ : n1++;
+
+				sub[n * 3] = block[p];
+				sub[n * 3 + 1] = block[p + 1];
+				sub[n * 3 + 2] = block[p + 2];
+			}
+		}
+	}
+
+	private static void decodeBlock(int hi, int lo, int[] rgb) {
+		boolean differential = (hi & 2) != 0;
+		int flip = hi & 1;
+		int[][] base = new int[2][3];
+
+		if (differential) {
+			for (int c = 0; c < 3; c++) {
+				int shift = 27 - c * 8;
+				int b0 = (hi >>> shift) & 31;
+				int delta = ((hi >>> (shift - 3)) & 7) << 29 >> 29;
+
+				base[0][c] = expand(b0, 5);
+				base[1][c] = expand((b0 + delta) & 31, 5);
+			}
+		} else {
+			for (int c = 0; c < 3; c++) {
+				base[0][c] = expand((hi >>> (28 - c * 8)) & 15, 4);
+				base[1][c] = expand((hi >>> (24 - c * 8)) & 15, 4);
+			}
+		}
+
+		int[] tables = { (hi >>> 5) & 7, (hi >>> 2) & 7 };
+
+		for (int y = 0; y < 4; y++) {
+			for (int x = 0; x < 4; x++) {
+				int s = (flip == 0 ? x < 2 : y < 2) ? 0 : 1;
+				int k = x * 4 + y;
+				int index = (((lo >>> (16 + k)) & 1) << 1) | ((lo >>> k) & 1);
+				int d = MODIFIERS[tables[s]][index];
+				int p = (y * 4 + x) * 3;
+
+				for (int c = 0; c < 3; c++)
+					rgb[p + c] = clamp255(base[s][c] + d);
+			}
+		}
+	}
+
+	private static int readInt(ByteBuffer buffer, int offset) {
+		return ((buffer.get(offset) & 0xFF) << 24)
+				| ((buffer.get(offset + 1) & 0xFF) << 16)
+				| ((buffer.get(offset + 2) & 0xFF) << 8)
+				| (buffer.get(offset + 3) & 0xFF);
+	}
+
+	// Replicate the high bits of a 4 or 5 bit component into the low bits
+	private static int expand(int value, int bits) {
+		return bits == 4 ? (value << 4) | value : (value << 3) | (value >> 2);
+	}
+
+	private static int clamp255(int value) {
+		return value < 0 ? 0 : (value > 255 ? 255 : value);
+	}
+
+	// Intensity modifiers per table, in texel index order
+	private static final int[][] MODIFIERS = { { 2, 8, -2, -8 },
+			{ 5, 17, -5, -17 }, { 9, 29, -9, -29 }, { 13, 42, -13, -42 },
+			{ 18, 60, -18, -60 }, { 24, 80, -24, -80 },
+			{ 33, 106, -33, -106 }, { 47, 183, -47, -183 } };
+
+	private static final int PKM_HEADER_SIZE = 16;
+
+	// Member variables
+	private final int mRadius;
+
+	// Tables either side of the best one tried with the colors around the
+	// average
+	private final int mTableSpread;
+}
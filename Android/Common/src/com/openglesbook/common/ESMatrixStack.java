@@ -0,0 +1,179 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESMatrixStack
+//
+//    Fixed capacity push/pop modelview stack with a projection matrix and
+//    a cached modelview-projection product.  All storage is allocated up
+//    front so that pushing, popping and transforming never allocate.
+//
+
+package com.openglesbook.common;
+
+import java.nio.FloatBuffer;
+
+public class ESMatrixStack {
+	//
+	///
+	/// \brief Create a matrix stack
+	/// \param capacity Maximum number of matrices that can be pushed
+	//
+	public ESMatrixStack(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+
+		mStack = new float[capacity * 16];
+		mCapacity = capacity;
+
+		mModelview.matrixLoadIdentity();
+		mProjection.matrixLoadIdentity();
+		mMVPDirty = true;
+	}
+
+	//
+	///
+	/// \brief Save a copy of the current modelview matrix on the stack
+	//
+	public void pushMatrix() {
+		if (mDepth == mCapacity)
+			throw new IllegalStateException("Matrix stack overflow");
+
+		System.arraycopy(mModelview.get(), 0, mStack, mDepth * 16, 16);
+		mDepth++;
+	}
+
+	//
+	///
+	/// \brief Restore the modelview matrix saved by the matching push
+	//
+	public void popMatrix() {
+		if (mDepth == 0)
+			throw new IllegalStateException("Matrix stack underflow");
+
+		mDepth--;
+		System.arraycopy(mStack, mDepth * 16, mModelview.get(), 0, 16);
+		mMVPDirty = true;
+	}
+
+	public int getDepth() {
+		return mDepth;
+	}
+
+	public int getCapacity() {
+		return mCapacity;
+	}
+
+	//
+	// Modelview operations, applied to the top of the stack
+	//
+	public void loadIdentity() {
+		mModelview.matrixLoadIdentity();
+		mMVPDirty = true;
+	}
+
+	public void loadMatrix(float[] src) {
+		mModelview.matrixLoad(src);
+		mMVPDirty = true;
+	}
+
+	//
+	///
+	/// \brief Concatenate a local (child) transform onto the current matrix
+	/// \param local Matrix in the same layout as ESTransform.get()
+	//
+	public void multMatrix(float[] local) {
+		mModelview.matrixMultiply(local, mModelview.get());
+		mMVPDirty = true;
+	}
+
+	public void translate(float tx, float ty, float tz) {
+		mModelview.translate(tx, ty, tz);
+		mMVPDirty = true;
+	}
+
+	public void rotate(float angle, float x, float y, float z) {
+		mModelview.rotate(angle, x, y, z);
+		mMVPDirty = true;
+	}
+
+	public void scale(float sx, float sy, float sz) {
+		mModelview.scale(sx, sy, sz);
+		mMVPDirty = true;
+	}
+
+	//
+	// Projection operations
+	//
+	public void projectionLoadIdentity() {
+		mProjection.matrixLoadIdentity();
+		mMVPDirty = true;
+	}
+
+	public void perspective(float fovy, float aspect, float nearZ, float farZ) {
+		mProjection.perspective(fovy, aspect, nearZ, farZ);
+		mMVPDirty = true;
+	}
+
+	public void frustum(float left, float right, float bottom, float top,
+			float nearZ, float farZ) {
+		mProjection.frustum(left, right, bottom, top, nearZ, farZ);
+		mMVPDirty = true;
+	}
+
+	public void ortho(float left, float right, float bottom, float top,
+			float nearZ, float farZ) {
+		mProjection.ortho(left, right, bottom, top, nearZ, farZ);
+		mMVPDirty = true;
+	}
+
+	//
+	// Accessors.  The returned arrays are owned by the stack and must not
+	// be modified by the caller.
+	//
+	public float[] getModelview() {
+		return mModelview.get();
+	}
+
+	public float[] getProjection() {
+		return mProjection.get();
+	}
+
+	//
+	///
+	/// \brief Return modelview * projection, recomputed only if either
+	/// matrix changed since the last call
+	//
+	public float[] getMVP() {
+		updateMVP();
+		return mMVP.get();
+	}
+
+	public FloatBuffer getMVPAsFloatBuffer() {
+		updateMVP();
+		return mMVP.getAsFloatBuffer();
+	}
+
+	private void updateMVP() {
+		if (mMVPDirty) {
+			mMVP.matrixMultiply(mModelview.get(), mProjection.get());
+			mMVPDirty = false;
+		}
+	}
+
+	// Member variables
+	private final float[] mStack;
+	private final int mCapacity;
+	private int mDepth;
+
+	private final ESTransform mModelview = new ESTransform();
+	private final ESTransform mProjection = new ESTransform();
+	private final ESTransform mMVP = new ESTransform();
+	private boolean mMVPDirty;
+}
@@ -0,0 +1,440 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESMeshOptimizer
+//
+//    Reorders indexed triangle lists for the GPU's post-transform vertex
+//    cache (Tom Forsyth's "Linear-Speed Vertex Cache Optimisation"), then
+//    reorders the vertices in the order they are first referenced so that
+//    vertex fetch walks memory linearly.
+//
+
+package com.openglesbook.common;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+public class ESMeshOptimizer {
+	// Cache size used to report ACMR, a common post-transform cache size
+	public static final int DEFAULT_CACHE_SIZE = 16;
+
+	//
+	///
+	/// \brief Result of optimize()
+	//
+	public static class Report {
+		// Average cache miss ratio (transformed vertices per triangle)
+		public float acmrBefore;
+		public float acmrAfter;
+
+		// Time spent optimizing, in milliseconds
+		public long elapsedMillis;
+
+		public String toString() {
+			return "ACMR " + acmrBefore + " -> " + acmrAfter + " in "
+					+ elapsedMillis + " ms";
+		}
+	}
+
+	//
+	///
+	/// \brief Optimize an indexed triangle list in place.  The triangles
+	/// are reordered for vertex cache locality, then the vertices are
+	/// renumbered in first use order and every vertex buffer is permuted to
+	/// match.
+	/// \param indices ShortBuffer (unsigned 16-bit) or IntBuffer indices
+	/// \param numIndices Number of indices, a multiple of 3
+	/// \param numVertices Number of vertices referenced by the indices
+	/// \param vertexBuffers Float attribute buffers to permute, may be empty
+	/// \param components Number of floats per vertex in each vertex buffer
+	/// \return ACMR before and after, measured with DEFAULT_CACHE_SIZE
+	//
+	public static Report optimize(Buffer indices, int numIndices,
+			int numVertices, FloatBuffer[] vertexBuffers, int[] components) {
+		long startTime = System.currentTimeMillis();
+		Report report = new Report();
+		int[] list = readIndices(indices, numIndices);
+
+		report.acmrBefore = computeACMR(list, numVertices, DEFAULT_CACHE_SIZE);
+
+		list = optimizeVertexCache(list, numVertices);
+		int[] remap = optimizeVertexFetch(list, numVertices);
+
+		for (int i = 0; i < vertexBuffers.length; i++)
+			remapVertices(vertexBuffers[i], components[i], remap);
+
+		writeIndices(list, indices);
+
+		report.acmrAfter = computeACMR(list, numVertices, DEFAULT_CACHE_SIZE);
+		report.elapsedMillis = System.currentTimeMillis() - startTime;
+		return report;
+	}
+
+	//
+	///
+	/// \brief Optimize the separate (non-interleaved) buffers of a generated
+	/// shape in place
+	//
+	public static Report optimize(ESShapes shape) {
+		if (shape.getVertices() == null)
+			throw new IllegalArgumentException(
+					"Interleaved shapes must be optimized with the buffer form");
+
+		FloatBuffer[] buffers = { shape.getVertices(), shape.getNormals(),
+				shape.getTexCoords() };
+		int[] components = { 3, 3, 2 };
+
+		return optimize(shape.getIndexBuffer(), shape.getNumIndices(),
+				shape.getVertices().capacity() / 3, buffers, components);
+	}
+
+	//
+	///
+	/// \brief Simulate a FIFO post-transform cache
+	/// \return Average number of vertices transformed per triangle
+	//
+	public static float computeACMR(int[] indices, int numVertices,
+			int cacheSize) {
+		int numTriangles = indices.length / 3;
+
+		if (numTriangles == 0)
+			return 0.0f;
+
+		// Time stamp at which each vertex entered the cache
+		int[] cacheTime = new int[numVertices];
+		int time = cacheSize + 1;
+		int misses = 0;
+
+		for (int i = 0; i < numTriangles * 3; i++) {
+			int v = indices[i];
+
+			if (time - cacheTime[v] > cacheSize) {
+				cacheTime[v] = time++;
+				misses++;
+			}
+		}
+
+		return (float) misses / numTriangles;
+	}
+
+	//
+	///
+	/// \brief Reorder triangles for vertex cache locality
+	/// \param indices Triangle list
+	/// \param numVertices Number of vertices referenced by the indices
+	/// \return A new triangle list with the same triangles in cache
+	/// friendly order
+	//
+	public static int[] optimizeVertexCache(int[] indices, int numVertices) {
+		int numTriangles = indices.length / 3;
+		int[] result = new int[numTriangles * 3];
+
+		if (numTriangles == 0)
+			return result;
+
+		// Build vertex -> triangle adjacency
+		int[] liveTriangles = new int[numVertices];
+		for (int i = 0; i < numTriangles * 3; i++)
+			liveTriangles[indices[i]]++;
+
+		int[] adjacencyOffset = new int[numVertices + 1];
+		for (int v = 0; v < numVertices; v++)
+			adjacencyOffset[v + 1] = adjacencyOffset[v] + liveTriangles[v];
+
+		int[] adjacency = new int[numTriangles * 3];
+		int[] fill = new int[numVertices];
+		for (int t = 0; t < numTriangles; t++) {
+			for (int k = 0; k < 3; k++) {
+				int v = indices[t * 3 + k];
+				adjacency[adjacencyOffset[v] + fill[v]++] = t;
+			}
+		}
+
+		// Initial scores
+		float[] vertexScore = new float[numVertices];
+		for (int v = 0; v < numVertices; v++)
+			vertexScore[v] = vertexScore(-1, liveTriangles[v]);
+
+		float[] triangleScore = new float[numTriangles];
+		boolean[] emitted = new boolean[numTriangles];
+		for (int t = 0; t < numTriangles; t++)
+			triangleScore[t] = vertexScore[indices[t * 3]]
+					+ vertexScore[indices[t * 3 + 1]]
+					+ vertexScore[indices[t * 3 + 2]];
+
+		int[] cache = new int[FORSYTH_CACHE_SIZE + 3];
+		int[] newCache = new int[FORSYTH_CACHE_SIZE + 3];
+		int cacheCount = 0;
+		int bestTriangle = -1;
+		int scanCursor = 0;
+
+		for (int emittedCount = 0; emittedCount < numTriangles; emittedCount++) {
+			if (bestTriangle < 0) {
+				// Nothing in the cache is connected to a remaining
+				// triangle, continue with the next unemitted triangle
+				while (emitted[scanCursor])
+					scanCursor++;
+				bestTriangle = scanCursor;
+			}
+
+			int t = bestTriangle;
+			emitted[t] = true;
+
+			// Emit the triangle and detach it from its vertices
+			int newCount = 0;
+			for (int k = 0; k < 3; k++) {
+				int v = indices[t * 3 + k];
+				result[emittedCount * 3 + k] = v;
+
+				int begin = adjacencyOffset[v];
+				int end = begin + liveTriangles[v];
+				for (int a = begin; a < end; a++) {
+					if (adjacency[a] == t) {
+						adjacency[a] = adjacency[end - 1];
+						break;
+					}
+				}
+				liveTriangles[v]--;
+
+				// Degenerate triangles repeat a vertex
+				if (!contains(newCache, newCount, v))
+					newCache[newCount++] = v;
+			}
+
+			// The triangle's vertices move to the front of the LRU cache
+			int triangleCount = newCount;
+			for (int c = 0; c < cacheCount; c++) {
+				int v = cache[c];
+				if (!contains(newCache, triangleCount, v))
+					newCache[newCount++] = v;
+			}
+
+			int[] swap = cache;
+			cache = newCache;
+			newCache = swap;
+			cacheCount = newCount;
+
+			// Rescore the cached vertices and the triangles using them.
+			// Vertices that fell out of the cache are rescored as well.
+			for (int c = 0; c < cacheCount; c++) {
+				int v = cache[c];
+				int position = c < FORSYTH_CACHE_SIZE ? c : -1;
+				float score = vertexScore(position, liveTriangles[v]);
+				float delta = score - vertexScore[v];
+				vertexScore[v] = score;
+
+				int begin = adjacencyOffset[v];
+				int end = begin + liveTriangles[v];
+				for (int a = begin; a < end; a++)
+					triangleScore[adjacency[a]] += delta;
+			}
+
+			// Pick the best triangle only once every delta is applied, a
+			// triangle sharing several cached vertices gets one per vertex
+			bestTriangle = -1;
+			float bestScore = -1.0f;
+
+			for (int c = 0; c < cacheCount; c++) {
+				int v = cache[c];
+				int begin = adjacencyOffset[v];
+				int end = begin + liveTriangles[v];
+
+				for (int a = begin; a < end; a++) {
+					int adjacent = adjacency[a];
+
+					if (triangleScore[adjacent] > bestScore) {
+						bestScore = triangleScore[adjacent];
+						bestTriangle = adjacent;
+					}
+				}
+			}
+
+			if (cacheCount > FORSYTH_CACHE_SIZE)
+				cacheCount = FORSYTH_CACHE_SIZE;
+		}
+
+		return result;
+	}
+
+	//
+	///
+	/// \brief Renumber vertices in the order the indices first reference
+	/// them, rewriting indices in place.  Unreferenced vertices are moved
+	/// to the end.
+	/// \return Table mapping each old vertex number to its new number
+	//
+	public static int[] optimizeVertexFetch(int[] indices, int numVertices) {
+		int[] remap = new int[numVertices];
+		int next = 0;
+
+		for (int v = 0; v < numVertices; v++)
+			remap[v] = -1;
+
+		for (int i = 0; i < indices.length; i++) {
+			int v = indices[i];
+
+			if (remap[v] < 0)
+				remap[v] = next++;
+			indices[i] = remap[v];
+		}
+
+		for (int v = 0; v < numVertices; v++) {
+			if (remap[v] < 0)
+				remap[v] = next++;
+		}
+
+		return remap;
+	}
+
+	//
+	///
+	/// \brief Permute a float vertex buffer so that old vertex v moves to
+	/// remap[v]
+	//
+	public static void remapVertices(FloatBuffer data, int components,
+			int[] remap) {
+		float[] src = new float[remap.length * components];
+		float[] dst = new float[remap.length * components];
+		FloatBuffer view = data.duplicate();
+
+		view.position(0);
+		view.get(src);
+
+		for (int v = 0; v < remap.length; v++)
+			System.arraycopy(src, v * components, dst, remap[v] * components,
+					components);
+
+		view.position(0);
+		view.put(dst);
+	}
+
+	//
+	///
+	/// \brief Permute an interleaved vertex buffer so that old vertex v
+	/// moves to remap[v]
+	//
+	public static void remapVertices(ByteBuffer data, int stride, int[] remap) {
+		byte[] src = new byte[remap.length * stride];
+		byte[] dst = new byte[remap.length * stride];
+		ByteBuffer view = data.duplicate();
+
+		view.position(0);
+		view.get(src);
+
+		for (int v = 0; v < remap.length; v++)
+			System.arraycopy(src, v * stride, dst, remap[v] * stride, stride);
+
+		view.position(0);
+		view.put(dst);
+	}
+
+	//
+	///
+	/// \brief Copy ShortBuffer (read as unsigned) or IntBuffer indices into
+	/// an array
+	//
+	public static int[] readIndices(Buffer indices, int numIndices) {
+		int[] result = new int[numIndices];
+
+		if (indices instanceof ShortBuffer) {
+			ShortBuffer src = (ShortBuffer) indices;
+			for (int i = 0; i < numIndices; i++)
+				result[i] = src.get(i) & 0xFFFF;
+		} else if (indices instanceof IntBuffer) {
+			IntBuffer src = ((IntBuffer) indices).duplicate();
+			src.position(0);
+			src.get(result);
+		} else {
+			throw new IllegalArgumentException("Unsupported index buffer type");
+		}
+
+		return result;
+	}
+
+	//
+	///
+	/// \brief Copy indices back into a ShortBuffer or IntBuffer
+	//
+	public static void writeIndices(int[] src, Buffer indices) {
+		if (indices instanceof ShortBuffer) {
+			ShortBuffer dst = (ShortBuffer) indices;
+			for (int i = 0; i < src.length; i++)
+				dst.put(i, (short) src[i]);
+		} else if (indices instanceof IntBuffer) {
+			IntBuffer dst = ((IntBuffer) indices).duplicate();
+			dst.position(0);
+			dst.put(src);
+		} else {
+			throw new IllegalArgumentException("Unsupported index buffer type");
+		}
+	}
+
+	private static boolean contains(int[] array, int count, int value) {
+		for (int i = 0; i < count; i++) {
+			if (array[i] == value)
+				return true;
+		}
+		return false;
+	}
+
+	//
+	// Forsyth's vertex score: recently used vertices score highest, the
+	// three most recent ones slightly less so that strips keep turning,
+	// and vertices with few remaining triangles get a boost so they are
+	// finished off
+	//
+	private static float vertexScore(int cachePosition, int liveTriangles) {
+		if (liveTriangles == 0)
+			return -1.0f;
+
+		float score = 0.0f;
+
+		if (cachePosition >= 0)
+			score = CACHE_POSITION_SCORE[cachePosition];
+
+		if (liveTriangles < VALENCE_SCORE.length)
+			score += VALENCE_SCORE[liveTriangles];
+		else
+			score += VALENCE_BOOST_SCALE
+					* (float) Math.pow(liveTriangles, -VALENCE_BOOST_POWER);
+
+		return score;
+	}
+
+	// Size of the LRU cache modelled while optimizing
+	private static final int FORSYTH_CACHE_SIZE = 32;
+
+	private static final float CACHE_DECAY_POWER = 1.5f;
+	private static final float LAST_TRIANGLE_SCORE = 0.75f;
+	private static final float VALENCE_BOOST_SCALE = 2.0f;
+	private static final float VALENCE_BOOST_POWER = 0.5f;
+
+	private static final float[] CACHE_POSITION_SCORE = new float[FORSYTH_CACHE_SIZE];
+	private static final float[] VALENCE_SCORE = new float[64];
+
+	static {
+		for (int i = 0; i < FORSYTH_CACHE_SIZE; i++) {
+			if (i < 3) {
+				CACHE_POSITION_SCORE[i] = LAST_TRIANGLE_SCORE;
+			} else {
+				float scaler = 1.0f / (FORSYTH_CACHE_SIZE - 3);
+				CACHE_POSITION_SCORE[i] = (float) Math.pow(
+						1.0f - (i - 3) * scaler, CACHE_DECAY_POWER);
+			}
+		}
+
+		for (int i = 1; i < VALENCE_SCORE.length; i++)
+			VALENCE_SCORE[i] = VALENCE_BOOST_SCALE
+					* (float) Math.pow(i, -VALENCE_BOOST_POWER);
+	}
+}
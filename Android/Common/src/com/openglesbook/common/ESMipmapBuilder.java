@@ -0,0 +1,941 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESMipmapBuilder
+//
+//    Generates mipmap chains for 8 bit per channel images (RGB, RGBA or
+//    luminance) of any size.  Texels are treated as unsigned and averaged
+//    with rounded integer arithmetic.  Each level halves both dimensions,
+//    rounding down, until the image is 1x1.  An even dimension uses a
+//    two texel box filter; an odd dimension uses a three texel filter
+//    weighted so that every source texel contributes equally, as described
+//    in "Non-Power-of-Two Mipmap Creation" (NVIDIA).  Rows of a level are
+//    filtered in parallel with ESParallel.
+//
+//    Optionally the color channels are averaged in linear space rather
+//    than sRGB space, and the Kaiser or Lanczos windowed sinc kernels can
+//    replace the box filter.  Kernel weights and sRGB conversions come
+//    from tables computed once per level and once per process.  Halving
+//    even sizes without sRGB, the usual case, runs the windowed sinc in
+//    fixed point integer arithmetic.
+//
+
+package com.openglesbook.common;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import android.opengl.GLES20;
+
+public class ESMipmapBuilder {
+	// Downsampling filters.  Radii are in destination texels, so halving
+	// takes 4 source texels per unit of radius.
+	//   FILTER_BOX        - box filter, exact integer arithmetic
+	//   FILTER_KAISER     - Kaiser windowed sinc, radius 2, alpha 4
+	//   FILTER_LANCZOS    - Lanczos windowed sinc, 2 lobes
+	//   FILTER_KAISER_HQ  - Kaiser windowed sinc, radius 3, alpha 4
+	//   FILTER_LANCZOS_HQ - Lanczos windowed sinc, 3 lobes
+	// The HQ kernels are sharper with less aliasing but take 12 taps per
+	// axis where the others take 8, and always filter in floating point.
+	public static final int FILTER_BOX = 0;
+	public static final int FILTER_KAISER = 1;
+	public static final int FILTER_LANCZOS = 2;
+	public static final int FILTER_KAISER_HQ = 3;
+	public static final int FILTER_LANCZOS_HQ = 4;
+
+	//
+	///
+	/// \brief Number of levels in a full mip chain, including level 0
+	//
+	public static int getLevelCount(int width, int height) {
+		int levels = 1;
+		int size = Math.max(width, height);
+
+		while (size > 1) {
+			size >>= 1;
+			levels++;
+		}
+
+		return levels;
+	}
+
+	//
+	///
+	/// \brief Width or height of a level
+	//
+	public static int getLevelSize(int size, int level) {
+		return Math.max(1, size >> level);
+	}
+
+	//
+	///
+	/// \brief Generate the next level of an image
+	/// \param src Source texels, tightly packed, starting at its position
+	/// \param srcWidth Source width
+	/// \param srcHeight Source height
+	/// \param format ESTexture.FORMAT_RGBA, FORMAT_RGB or FORMAT_LUMINANCE
+	/// \param dst Destination with room for the next level starting at its
+	/// position, or null to allocate one
+	/// \return dst (or the new buffer), positioned at the first texel
+	//
+	public static ByteBuffer downsample(ByteBuffer src, int srcWidth,
+			int srcHeight, int format, ByteBuffer dst) {
+		return downsample(src, srcWidth, srcHeight, format, dst, FILTER_BOX,
+				false);
+	}
+
+	//
+	///
+	/// \brief Generate the next level of an image
+	/// \param filter One of the FILTER_ constants
+	/// \param srgb Whether color channels hold sRGB encoded values and are
+	/// filtered in linear space.  Alpha is always filtered as is.
+	/// \see downsample(ByteBuffer, int, int, int, ByteBuffer)
+	//
+	public static ByteBuffer downsample(ByteBuffer src, int srcWidth,
+			int srcHeight, int format, ByteBuffer dst, int filter,
+			boolean srgb) {
+		int texelSize = ESTexture.getBytesPerPixel(format);
+		int dstWidth = getLevelSize(srcWidth, 1);
+		int dstHeight = getLevelSize(srcHeight, 1);
+		int dstSize = dstWidth * dstHeight * texelSize;
+
+		if (src.remaining() < srcWidth * srcHeight * texelSize)
+			throw new IllegalArgumentException("Source too small for "
+					+ srcWidth + "x" + srcHeight + " image");
+
+		if (dst == null)
+			dst = ByteBuffer.allocateDirect(dstSize).order(
+					ByteOrder.nativeOrder());
+		else if (dst.remaining() < dstSize)
+			throw new IllegalArgumentException("Destination too small for "
+					+ dstWidth + "x" + dstHeight + " image");
+
+		// Work on slices so that row offsets start at zero and the
+		// caller's positions are left alone
+		final ByteBuffer s = src.slice().order(ByteOrder.nativeOrder());
+		final ByteBuffer d = dst.slice().order(ByteOrder.nativeOrder());
+		final int sw = srcWidth;
+		final int dw = dstWidth;
+		final int ts = texelSize;
+		final boolean linear = srgb;
+		int grain = Math.max(1, TEXELS_PER_TASK / dstWidth);
+
+		if (filter == FILTER_BOX && srcWidth % 2 == 0 && srcHeight % 2 == 0) {
+			if (texelSize == 4 && !srgb) {
+				final IntBuffer si = s.asIntBuffer();
+				final IntBuffer di = d.asIntBuffer();
+
+				ESParallel.forRange(0, dstHeight, grain,
+						new ESParallel.RangeTask() {
+							public void run(int start, int end) {
+								boxRowsRGBA(si, sw, di, dw, start, end);
+							}
+						});
+			} else {
+				ESParallel.forRange(0, dstHeight, grain,
+						new ESParallel.RangeTask() {
+							public void run(int start, int end) {
+								boxRows(s, sw, d, dw, ts, linear, start, end);
+							}
+						});
+			}
+		} else if ((filter == FILTER_KAISER || filter == FILTER_LANCZOS)
+				&& !srgb && srcWidth % 2 == 0 && srcHeight % 2 == 0) {
+			final Kernel kx = new Kernel(srcWidth, filter);
+			final Kernel ky = new Kernel(srcHeight, filter);
+			final int[] weights = kx.getFixedWeights();
+
+			ESParallel.forRange(0, dstHeight, Math.max(grain, MIN_STRIP_ROWS),
+					new ESParallel.RangeTask() {
+						public void run(int start, int end) {
+							resampleRowsFixed(s, sw, d, dw, ts, kx, ky,
+									weights, start, end);
+						}
+					});
+		} else if (filter != FILTER_BOX || srgb) {
+			final Kernel kx = new Kernel(srcWidth, filter);
+			final Kernel ky = new Kernel(srcHeight, filter);
+
+			// Neighbouring strips filter some source rows twice, larger
+			// strips keep that overlap small
+			ESParallel.forRange(0, dstHeight, Math.max(grain, MIN_STRIP_ROWS),
+					new ESParallel.RangeTask() {
+						public void run(int start, int end) {
+							resampleRows(s, sw, d, dw, ts, kx, ky, linear,
+									start, end);
+						}
+					});
+		} else {
+			final Filter fx = new Filter(srcWidth);
+			final Filter fy = new Filter(srcHeight);
+
+			ESParallel.forRange(0, dstHeight, grain,
+					new ESParallel.RangeTask() {
+						public void run(int start, int end) {
+							filterRows(s, sw, d, dw, ts, fx, fy, start, end);
+						}
+					});
+		}
+
+		return dst;
+	}
+
+	//
+	///
+	/// \brief Generate every level below level 0
+	/// \param level0 Base image, tightly packed, starting at its position
+	/// \return The levels, element 0 is level0 itself
+	//
+	public static ByteBuffer[] buildChain(ByteBuffer level0, int width,
+			int height, int format) {
+		return buildChain(level0, width, height, format, FILTER_BOX, false);
+	}
+
+	//
+	///
+	/// \brief Generate every level below level 0 with the given filter
+	/// \see downsample(ByteBuffer, int, int, int, ByteBuffer, int, boolean)
+	//
+	public static ByteBuffer[] buildChain(ByteBuffer level0, int width,
+			int height, int format, int filter, boolean srgb) {
+		ByteBuffer[] levels = new ByteBuffer[getLevelCount(width, height)];
+
+		levels[0] = level0;
+
+		for (int level = 1; level < levels.length; level++) {
+			levels[level] = downsample(levels[level - 1], getLevelSize(
+					width, level - 1), getLevelSize(height, level - 1),
+					format, null, filter, srgb);
+		}
+
+		return levels;
+	}
+
+	//
+	///
+	/// \brief Load an image and its whole mip chain into the texture bound
+	/// to GL_TEXTURE_2D.  Levels below 0 are built in two scratch buffers
+	/// from ESBufferPool used in turn, so no buffer is allocated per level.
+	/// \param level0 Base image, tightly packed, starting at its position
+	/// \param format ESTexture.FORMAT_RGBA, FORMAT_RGB or FORMAT_LUMINANCE
+	//
+	public static void uploadMipmaps(ByteBuffer level0, int width,
+			int height, int format) {
+		uploadMipmaps(level0, width, height, format, FILTER_BOX, false);
+	}
+
+	//
+	///
+	/// \brief Load an image and its mip chain built with the given filter
+	/// \see downsample(ByteBuffer, int, int, int, ByteBuffer, int, boolean)
+	//
+	public static void uploadMipmaps(ByteBuffer level0, int width,
+			int height, int format, int filter, boolean srgb) {
+		int texelSize = ESTexture.getBytesPerPixel(format);
+		int levels = getLevelCount(width, height);
+		ESBufferPool pool = ESBufferPool.getShared();
+		ByteBuffer[] scratch = new ByteBuffer[2];
+
+		try {
+			// Level 1 goes in the first buffer and level 2 in the second,
+			// every later level fits in whichever was used two levels before
+			for (int i = 0; i < 2 && i + 1 < levels; i++)
+				scratch[i] = pool.acquire(getLevelSize(width, i + 1)
+						* getLevelSize(height, i + 1) * texelSize);
+
+			GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+			GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width,
+					height, 0, format, GLES20.GL_UNSIGNED_BYTE, level0);
+
+			ByteBuffer prev = level0;
+
+			for (int level = 1; level < levels; level++) {
+				int prevWidth = getLevelSize(width, level - 1);
+				int prevHeight = getLevelSize(height, level - 1);
+				ByteBuffer next = scratch[(level - 1) & 1];
+
+				next.clear();
+				downsample(prev, prevWidth, prevHeight, format, next, filter,
+						srgb);
+
+				GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, level, format,
+						getLevelSize(width, level),
+						getLevelSize(height, level), 0, format,
+						GLES20.GL_UNSIGNED_BYTE, next);
+				prev = next;
+			}
+
+			GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+		} finally {
+			for (int i = 0; i < 2; i++)
+				if (scratch[i] != null)
+					pool.release(scratch[i]);
+		}
+	}
+
+	//
+	// 2x2 box filter on RGBA texels packed in ints.  The four texels are
+	// averaged two channels at a time in 16 bit lanes: the sum of four
+	// bytes plus the rounding bias is at most 1022, so lanes never carry
+	// into each other.  Byte order does not matter since every byte is
+	// treated alike.
+	//
+	private static void boxRowsRGBA(IntBuffer src, int srcWidth,
+			IntBuffer dst, int dstWidth, int start, int end) {
+		IntBuffer s = src.duplicate();
+		IntBuffer d = dst.duplicate();
+		int[] row0 = new int[srcWidth];
+		int[] row1 = new int[srcWidth];
+		int[] out = new int[dstWidth];
+
+		for (int y = start; y < end; y++) {
+			s.position(y * 2 * srcWidth);
+			s.get(row0);
+			s.get(row1);
+
+			for (int x = 0; x < dstWidth; x++) {
+				int a = row0[x * 2];
+				int b = row0[x * 2 + 1];
+				int c = row1[x * 2];
+				int e = row1[x * 2 + 1];
+
+				int lo = (a & 0x00FF00FF) + (b & 0x00FF00FF)
+						+ (c & 0x00FF00FF) + (e & 0x00FF00FF) + 0x00020002;
+				int hi = ((a >>> 8) & 0x00FF00FF) + ((b >>> 8) & 0x00FF00FF)
+						+ ((c >>> 8) & 0x00FF00FF) + ((e >>> 8) & 0x00FF00FF)
+						+ 0x00020002;
+
+				out[x] = ((lo >>> 2) & 0x00FF00FF)
+						| (((hi >>> 2) & 0x00FF00FF) << 8);
+			}
+
+			d.position(y * dstWidth);
+			d.put(out);
+		}
+	}
+
+	//
+	// 2x2 box filter for any texel size.  sRGB color is averaged as 16 bit
+	// linear integers.
+	//
+	private static void boxRows(ByteBuffer src, int srcWidth, ByteBuffer dst,
+			int dstWidth, int texelSize, boolean srgb, int start, int end) {
+		ByteBuffer s = src.duplicate();
+		ByteBuffer d = dst.duplicate();
+		int srcPitch = srcWidth * texelSize;
+		int dstPitch = dstWidth * texelSize;
+		byte[] rows = new byte[srcPitch * 2];
+		byte[] out = new byte[dstPitch];
+
+		for (int y = start; y < end; y++) {
+			s.position(y * 2 * srcPitch);
+			s.get(rows);
+
+			for (int x = 0; x < dstWidth; x++) {
+				int i0 = x * 2 * texelSize;
+				int i1 = i0 + srcPitch;
+
+				for (int c = 0; c < texelSize; c++) {
+					int a = rows[i0 + c] & 0xFF;
+					int b = rows[i0 + texelSize + c] & 0xFF;
+					int e = rows[i1 + c] & 0xFF;
+					int f = rows[i1 + texelSize + c] & 0xFF;
+
+					if (srgb && c < 3) {
+						int sum = SRGB.TO_LINEAR16[a] + SRGB.TO_LINEAR16[b]
+								+ SRGB.TO_LINEAR16[e] + SRGB.TO_LINEAR16[f];
+						out[x * texelSize + c] = SRGB.FROM_LINEAR[(sum + 2) >> 2];
+					} else {
+						out[x * texelSize + c] = (byte) ((a + b + e + f + 2) >> 2);
+					}
+				}
+			}
+
+			d.position(y * dstPitch);
+			d.put(out);
+		}
+	}
+
+	//
+	// Separable weighted filter used when a dimension is odd or 1
+	//
+	private static void filterRows(ByteBuffer src, int srcWidth,
+			ByteBuffer dst, int dstWidth, int texelSize, Filter fx,
+			Filter fy, int start, int end) {
+		ByteBuffer s = src.duplicate();
+		ByteBuffer d = dst.duplicate();
+		int srcPitch = srcWidth * texelSize;
+		int dstPitch = dstWidth * texelSize;
+		byte[] row = new byte[srcPitch];
+		long[] acc = new long[dstPitch];
+		byte[] out = new byte[dstPitch];
+		long denominator = (long) fx.mDenominator * fy.mDenominator;
+		long half = denominator / 2;
+
+		for (int y = start; y < end; y++) {
+			Arrays.fill(acc, 0);
+
+			for (int ty = 0; ty < Filter.TAPS; ty++) {
+				int wy = fy.mWeight[y * Filter.TAPS + ty];
+
+				if (wy == 0)
+					continue;
+
+				s.position(fy.mIndex[y * Filter.TAPS + ty] * srcPitch);
+				s.get(row);
+
+				for (int x = 0; x < dstWidth; x++) {
+					for (int tx = 0; tx < Filter.TAPS; tx++) {
+						int w = wy * fx.mWeight[x * Filter.TAPS + tx];
+
+						if (w == 0)
+							continue;
+
+						int i = fx.mIndex[x * Filter.TAPS + tx] * texelSize;
+
+						for (int c = 0; c < texelSize; c++)
+							acc[x * texelSize + c] += (long) w
+									* (row[i + c] & 0xFF);
+					}
+				}
+			}
+
+			for (int i = 0; i < dstPitch; i++)
+				out[i] = (byte) ((acc[i] + half) / denominator);
+
+			d.position(y * dstPitch);
+			d.put(out);
+		}
+	}
+
+	//
+	// Separable resampling with float weights.  Source rows are filtered
+	// horizontally into a ring holding the rows under one vertical kernel,
+	// and each destination row is then filtered vertically from the ring.
+	// Destination rows move down the source monotonically, so every source
+	// row under the strip is filtered once and the scratch memory does not
+	// depend on the strip height.  Values are normalized to [0, 1], and
+	// linearized first when filtering sRGB color.
+	//
+	private static void resampleRows(ByteBuffer src, int srcWidth,
+			ByteBuffer dst, int dstWidth, int texelSize, Kernel kx, Kernel ky,
+			boolean srgb, int start, int end) {
+		ByteBuffer s = src.duplicate();
+		ByteBuffer d = dst.duplicate();
+		int srcPitch = srcWidth * texelSize;
+		int dstPitch = dstWidth * texelSize;
+		int ringSize = 1;
+
+		// The taps of a destination row cover consecutive source rows, so a
+		// ring as tall as the widest span never evicts a row still in use
+		for (int y = start; y < end; y++) {
+			int lo = Integer.MAX_VALUE;
+			int hi = 0;
+
+			for (int t = 0; t < ky.mTaps; t++) {
+				lo = Math.min(lo, ky.mIndex[y * ky.mTaps + t]);
+				hi = Math.max(hi, ky.mIndex[y * ky.mTaps + t]);
+			}
+
+			ringSize = Math.max(ringSize, hi - lo + 1);
+		}
+
+		// Decode table per channel, alpha is never sRGB encoded
+		float[][] decode = new float[texelSize][];
+		for (int c = 0; c < texelSize; c++)
+			decode[c] = srgb && c < 3 ? SRGB.TO_LINEAR : UNORM_TO_FLOAT;
+
+		byte[] row = new byte[srcPitch];
+		float[] values = new float[srcPitch];
+		float[] ring = new float[ringSize * dstPitch];
+		int[] ringRows = new int[ringSize];
+		float[] acc = new float[dstPitch];
+		byte[] out = new byte[dstPitch];
+		int srcHeight = ky.mSize;
+
+		Arrays.fill(ringRows, -1);
+
+		for (int y = start; y < end; y++) {
+			for (int t = 0; t < ky.mTaps; t++) {
+				int srcRow = ky.mIndex[y * ky.mTaps + t];
+				int slot = srcRow % ringSize;
+
+				if (ringRows[slot] != srcRow) {
+					s.position(srcRow * srcPitch);
+					s.get(row);
+
+					for (int c = 0; c < texelSize; c++) {
+						float[] table = decode[c];
+						for (int i = c; i < srcPitch; i += texelSize)
+							values[i] = table[row[i] & 0xFF];
+					}
+
+					filterRow(values, srcWidth, texelSize, kx, ring, slot
+							* dstPitch, dstWidth);
+					ringRows[slot] = srcRow;
+				}
+			}
+
+			Arrays.fill(acc, 0.0f);
+
+			int first = ky.mFirst[y];
+
+			if (ky.mSymmetric && first >= 0 && first + ky.mTaps <= srcHeight) {
+				for (int t = 0; t < ky.mTaps / 2; t++) {
+					float w = ky.mWeight[t];
+					int base0 = ((first + t) % ringSize) * dstPitch;
+					int base1 = ((first + ky.mTaps - 1 - t) % ringSize)
+							* dstPitch;
+
+					for (int i = 0; i < dstPitch; i++)
+						acc[i] += w * (ring[base0 + i] + ring[base1 + i]);
+				}
+			} else {
+				for (int t = 0; t < ky.mTaps; t++) {
+					float w = ky.mWeight[y * ky.mTaps + t];
+					int base = (ky.mIndex[y * ky.mTaps + t] % ringSize)
+							* dstPitch;
+
+					if (w == 0.0f)
+						continue;
+
+					for (int i = 0; i < dstPitch; i++)
+						acc[i] += w * ring[base + i];
+				}
+			}
+
+			for (int i = 0; i < dstPitch; i++) {
+				float v = acc[i] < 0.0f ? 0.0f : (acc[i] > 1.0f ? 1.0f : acc[i]);
+
+				if (srgb && i % texelSize < 3)
+					out[i] = SRGB.FROM_LINEAR[(int) (v * 65535.0f + 0.5f)];
+				else
+					out[i] = (byte) (int) (v * 255.0f + 0.5f);
+			}
+
+			d.position(y * dstPitch);
+			d.put(out);
+		}
+	}
+
+	//
+	// Halving with a symmetric windowed sinc in fixed point.  Every
+	// destination texel shares one set of FIXED_TAPS weights in FIXED_BITS
+	// fixed point, so the taps are unrolled.  The structure is that of
+	// resampleRows(): source rows are filtered horizontally into a ring,
+	// then each destination row is filtered vertically from it in one
+	// pass.  Horizontal sums drop FIXED_ROUND_BITS so that the vertical
+	// sums fit in an int even with the negative lobes.
+	//
+	private static void resampleRowsFixed(ByteBuffer src, int srcWidth,
+			ByteBuffer dst, int dstWidth, int texelSize, Kernel kx, Kernel ky,
+			int[] weights, int start, int end) {
+		ByteBuffer s = src.duplicate();
+		ByteBuffer d = dst.duplicate();
+		int srcPitch = srcWidth * texelSize;
+		int dstPitch = dstWidth * texelSize;
+		int[][] ring = new int[FIXED_TAPS][dstPitch];
+		int[] ringRows = new int[FIXED_TAPS];
+		int[][] taps = new int[FIXED_TAPS][];
+		byte[] row = new byte[srcPitch];
+		byte[] out = new byte[dstPitch];
+		int w0 = weights[0], w1 = weights[1], w2 = weights[2], w3 = weights[3];
+		int shift = 2 * FIXED_BITS - FIXED_ROUND_BITS;
+		int half = 1 << (shift - 1);
+
+		Arrays.fill(ringRows, -1);
+
+		for (int y = start; y < end; y++) {
+			for (int t = 0; t < FIXED_TAPS; t++) {
+				int srcRow = ky.mIndex[y * FIXED_TAPS + t];
+				int slot = srcRow % FIXED_TAPS;
+
+				if (ringRows[slot] != srcRow) {
+					s.position(srcRow * srcPitch);
+					s.get(row);
+					filterRowFixed(row, srcWidth, texelSize, kx, weights,
+							ring[slot], dstWidth);
+					ringRows[slot] = srcRow;
+				}
+
+				taps[t] = ring[slot];
+			}
+
+			int[] r0 = taps[0], r1 = taps[1], r2 = taps[2], r3 = taps[3];
+			int[] r4 = taps[4], r5 = taps[5], r6 = taps[6], r7 = taps[7];
+
+			for (int i = 0; i < dstPitch; i++) {
+				int v = (w0 * (r0[i] + r7[i]) + w1 * (r1[i] + r6[i]) + w2
+						* (r2[i] + r5[i]) + w3 * (r3[i] + r4[i]) + half) >> shift;
+				out[i] = (byte) (v < 0 ? 0 : (v > 255 ? 255 : v));
+			}
+
+			d.position(y * dstPitch);
+			d.put(out);
+		}
+	}
+
+	//
+	// Horizontal pass of resampleRowsFixed() for one source row
+	//
+	private static void filterRowFixed(byte[] row, int srcWidth,
+			int texelSize, Kernel kx, int[] weights, int[] dst, int dstWidth) {
+		int w0 = weights[0], w1 = weights[1], w2 = weights[2], w3 = weights[3];
+		int half = 1 << (FIXED_ROUND_BITS - 1);
+		int ts = texelSize;
+		int lo = 0;
+		int hi = dstWidth;
+
+		// Texels whose taps all fall inside the row form one run
+		while (lo < dstWidth && kx.mFirst[lo] < 0)
+			lo++;
+		while (hi > lo && kx.mFirst[hi - 1] + FIXED_TAPS > srcWidth)
+			hi--;
+
+		for (int x = 0; x < lo; x++)
+			filterTexelFixed(row, texelSize, kx, weights, dst, x);
+
+		// Pair taps mirrored around the center, they share a weight.
+		// Halving moves the window by two texels per output texel.  One
+		// channel at a time keeps the inner loop long.
+		int first = lo < hi ? kx.mFirst[lo] * ts : 0;
+		int end = hi * ts;
+		int step = 2 * ts;
+
+		for (int c = 0; c < ts; c++) {
+			for (int o = lo * ts + c, i = first + c; o < end; o += ts, i += step)
+				dst[o] = (w0 * ((row[i] & 0xFF) + (row[i + 7 * ts] & 0xFF)) + w1
+						* ((row[i + ts] & 0xFF) + (row[i + 6 * ts] & 0xFF)) + w2
+						* ((row[i + 2 * ts] & 0xFF) + (row[i + 5 * ts] & 0xFF))
+						+ w3
+						* ((row[i + 3 * ts] & 0xFF) + (row[i + 4 * ts] & 0xFF)) + half) >> FIXED_ROUND_BITS;
+		}
+
+		for (int x = hi; x < dstWidth; x++)
+			filterTexelFixed(row, texelSize, kx, weights, dst, x);
+	}
+
+	//
+	// One texel of filterRowFixed() with its taps clamped to the row
+	//
+	private static void filterTexelFixed(byte[] row, int texelSize,
+			Kernel kx, int[] weights, int[] dst, int x) {
+		int half = 1 << (FIXED_ROUND_BITS - 1);
+
+		for (int c = 0; c < texelSize; c++) {
+			int sum = 0;
+			for (int t = 0; t < FIXED_TAPS; t++)
+				sum += weights[t]
+						* (row[kx.mIndex[x * FIXED_TAPS + t] * texelSize + c] & 0xFF);
+			dst[x * texelSize + c] = (sum + half) >> FIXED_ROUND_BITS;
+		}
+	}
+
+	//
+	// Filter one row of decoded source values horizontally into
+	// dst[base, base + dstWidth * texelSize)
+	//
+	private static void filterRow(float[] values, int srcWidth,
+			int texelSize, Kernel kx, float[] dst, int base, int dstWidth) {
+		for (int x = 0; x < dstWidth; x++) {
+			int first = kx.mFirst[x];
+			int o = base + x * texelSize;
+
+			if (kx.mSymmetric && first >= 0 && first + kx.mTaps <= srcWidth) {
+				// Pair taps mirrored around the center, they share a weight
+				int i0 = first * texelSize;
+				int i1 = (first + kx.mTaps - 1) * texelSize;
+
+				for (int c = 0; c < texelSize; c++) {
+					float sum = 0.0f;
+					for (int t = 0; t < kx.mTaps / 2; t++)
+						sum += kx.mWeight[t]
+								* (values[i0 + t * texelSize + c] + values[i1
+										- t * texelSize + c]);
+					dst[o + c] = sum;
+				}
+				continue;
+			}
+
+			for (int c = 0; c < texelSize; c++)
+				dst[o + c] = 0.0f;
+
+			for (int t = 0; t < kx.mTaps; t++) {
+				float w = kx.mWeight[x * kx.mTaps + t];
+				int i = kx.mIndex[x * kx.mTaps + t] * texelSize;
+
+				for (int c = 0; c < texelSize; c++)
+					dst[o + c] += w * values[i + c];
+			}
+		}
+	}
+
+	//
+	// Source texels and float weights for each destination texel along one
+	// axis, for the resampling path.  Weights of a destination texel sum
+	// to 1.  Taps past the edge are clamped to the edge texel.
+	//
+	private static class Kernel {
+		Kernel(int srcSize, int filter) {
+			int dstSize = getLevelSize(srcSize, 1);
+
+			mSize = srcSize;
+			mFirst = new int[dstSize];
+
+			if (filter == FILTER_BOX) {
+				Filter box = new Filter(srcSize);
+
+				mRadius = 0;
+				mTaps = Filter.TAPS;
+				mSymmetric = false;
+				mIndex = box.mIndex;
+				mWeight = new float[box.mWeight.length];
+				for (int i = 0; i < mWeight.length; i++)
+					mWeight[i] = (float) box.mWeight[i] / box.mDenominator;
+				for (int i = 0; i < dstSize; i++)
+					mFirst[i] = box.mIndex[i * mTaps];
+				return;
+			}
+
+			boolean useKaiser = filter == FILTER_KAISER
+					|| filter == FILTER_KAISER_HQ;
+
+			if (filter == FILTER_KAISER || filter == FILTER_LANCZOS)
+				mRadius = KERNEL_RADIUS;
+			else if (filter == FILTER_KAISER_HQ || filter == FILTER_LANCZOS_HQ)
+				mRadius = KERNEL_RADIUS_HQ;
+			else
+				throw new IllegalArgumentException("Invalid filter " + filter);
+
+			// Source texels per destination texel, and the kernel radius
+			// in source texels
+			double scale = (double) srcSize / dstSize;
+			double support = mRadius * scale;
+
+			mTaps = (int) Math.ceil(support * 2.0);
+
+			// Halving an even size puts every destination texel at the same
+			// phase, so all texels share one symmetric set of weights
+			mSymmetric = srcSize % 2 == 0 && mTaps % 2 == 0;
+			mIndex = new int[dstSize * mTaps];
+			mWeight = new float[dstSize * mTaps];
+
+			for (int i = 0; i < dstSize; i++) {
+				double center = (i + 0.5) * scale;
+				// First source texel whose center is inside the support
+				int first = (int) Math.floor(center - support - 0.5) + 1;
+				double sum = 0.0;
+
+				mFirst[i] = first;
+
+				if (mSymmetric && i > 0) {
+					// Same phase as texel 0, only the indices move
+					for (int t = 0; t < mTaps; t++) {
+						mIndex[i * mTaps + t] = Math.max(0, Math.min(
+								srcSize - 1, first + t));
+						mWeight[i * mTaps + t] = mWeight[t];
+					}
+					continue;
+				}
+
+				for (int t = 0; t < mTaps; t++) {
+					int j = first + t;
+					double x = (j + 0.5 - center) / scale;
+					double w = useKaiser ? kaiser(x) : lanczos(x);
+
+					mIndex[i * mTaps + t] = Math.max(0, Math.min(srcSize - 1, j));
+					mWeight[i * mTaps + t] = (float) w;
+					sum += w;
+				}
+
+				for (int t = 0; t < mTaps; t++)
+					mWeight[i * mTaps + t] /= sum;
+			}
+		}
+
+		private static double sinc(double x) {
+			if (Math.abs(x) < 1e-6)
+				return 1.0;
+			return Math.sin(Math.PI * x) / (Math.PI * x);
+		}
+
+		//
+		// Weights of the first destination texel in FIXED_BITS fixed
+		// point, for kernels where every texel shares them.  The pair
+		// around the center absorbs the rounding error so that the weights
+		// stay symmetric and sum to exactly 1 << FIXED_BITS.
+		//
+		int[] getFixedWeights() {
+			int[] weights = new int[mTaps];
+			int sum = 0;
+
+			for (int t = 0; t < mTaps / 2; t++) {
+				int w = Math.round(mWeight[t] * (1 << FIXED_BITS));
+				weights[t] = w;
+				weights[mTaps - 1 - t] = w;
+				sum += 2 * w;
+			}
+
+			weights[mTaps / 2 - 1] += ((1 << FIXED_BITS) - sum) / 2;
+			weights[mTaps / 2] = weights[mTaps / 2 - 1];
+			return weights;
+		}
+
+		private double lanczos(double x) {
+			if (Math.abs(x) >= mRadius)
+				return 0.0;
+			return sinc(x) * sinc(x / mRadius);
+		}
+
+		private double kaiser(double x) {
+			if (Math.abs(x) >= mRadius)
+				return 0.0;
+			double r = x / mRadius;
+			return sinc(x) * besselI0(KAISER_ALPHA * Math.sqrt(1.0 - r * r))
+					/ KAISER_SCALE;
+		}
+
+		// Modified Bessel function of the first kind, order 0
+		private static double besselI0(double x) {
+			double sum = 1.0;
+			double term = 1.0;
+			double q = x * x / 4.0;
+
+			for (int k = 1; term > sum * 1e-12; k++) {
+				term *= q / ((double) k * k);
+				sum += term;
+			}
+
+			return sum;
+		}
+
+		// Source size, and the first source texel of each destination
+		// texel before clamping
+		final int mSize;
+		final int[] mFirst;
+
+		// Kernel radius in destination texels, 0 for the box filter
+		final int mRadius;
+
+		final int mTaps;
+		final boolean mSymmetric;
+		final int[] mIndex;
+		final float[] mWeight;
+	}
+
+	//
+	// sRGB transfer function tables, built on first use
+	//
+	private static class SRGB {
+		// Encoded byte to linear value
+		static final float[] TO_LINEAR = new float[256];
+
+		// Encoded byte to linear value scaled to 16 bits
+		static final int[] TO_LINEAR16 = new int[256];
+
+		// Linear value scaled to 16 bits to encoded byte
+		static final byte[] FROM_LINEAR = new byte[65536];
+
+		static {
+			for (int i = 0; i < 256; i++) {
+				double c = i / 255.0;
+				double l = c <= 0.04045 ? c / 12.92 : Math.pow(
+						(c + 0.055) / 1.055, 2.4);
+				TO_LINEAR[i] = (float) l;
+				TO_LINEAR16[i] = (int) Math.round(l * 65535.0);
+			}
+
+			for (int i = 0; i < 65536; i++) {
+				double l = i / 65535.0;
+				double c = l <= 0.0031308 ? l * 12.92 : 1.055 * Math.pow(l,
+						1.0 / 2.4) - 0.055;
+				FROM_LINEAR[i] = (byte) (int) Math.round(c * 255.0);
+			}
+		}
+	}
+
+	//
+	// Source texels and integer weights for each destination texel along
+	// one axis.  Weights of a destination texel sum to mDenominator.
+	//
+	private static class Filter {
+		static final int TAPS = 3;
+
+		Filter(int srcSize) {
+			int dstSize = getLevelSize(srcSize, 1);
+
+			mIndex = new int[dstSize * TAPS];
+			mWeight = new int[dstSize * TAPS];
+
+			if (srcSize == 1) {
+				mDenominator = 1;
+				mWeight[0] = 1;
+			} else if (srcSize % 2 == 0) {
+				mDenominator = 2;
+				for (int i = 0; i < dstSize; i++) {
+					mIndex[i * TAPS + 0] = i * 2;
+					mIndex[i * TAPS + 1] = i * 2 + 1;
+					mWeight[i * TAPS + 0] = 1;
+					mWeight[i * TAPS + 1] = 1;
+				}
+			} else {
+				// Destination texel i covers source texels 2i to 2i + 2,
+				// the outer two only partially
+				int n = dstSize;
+				mDenominator = 2 * n + 1;
+				for (int i = 0; i < dstSize; i++) {
+					mIndex[i * TAPS + 0] = i * 2;
+					mIndex[i * TAPS + 1] = i * 2 + 1;
+					mIndex[i * TAPS + 2] = i * 2 + 2;
+					mWeight[i * TAPS + 0] = n - i;
+					mWeight[i * TAPS + 1] = n;
+					mWeight[i * TAPS + 2] = i + 1;
+				}
+			}
+		}
+
+		final int[] mIndex;
+		final int[] mWeight;
+		final int mDenominator;
+	}
+
+	// Destination texels filtered per worker task
+	private static final int TEXELS_PER_TASK = 16 * 1024;
+
+	// Smallest strip of destination rows resampled per task
+	private static final int MIN_STRIP_ROWS = 32;
+
+	// Windowed sinc parameters, radius in destination texels
+	private static final int KERNEL_RADIUS = 2;
+	private static final int KERNEL_RADIUS_HQ = 3;
+	private static final double KAISER_ALPHA = 4.0;
+	private static final double KAISER_SCALE = Kernel.besselI0(KAISER_ALPHA);
+
+	// Fractional bits of the fixed point weights, and the bits dropped
+	// between the horizontal and vertical passes.  A vertical sum is at
+	// most 255 * 2^(2 * FIXED_BITS - FIXED_ROUND_BITS) times the summed
+	// absolute weights squared, well inside an int.
+	private static final int FIXED_BITS = 12;
+	private static final int FIXED_ROUND_BITS = 4;
+
+	// Taps of the radius 2 kernels when halving
+	private static final int FIXED_TAPS = 8;
+
+	// Byte to [0, 1]
+	private static final float[] UNORM_TO_FLOAT = new float[256];
+
+	static {
+		for (int i = 0; i < 256; i++)
+			UNORM_TO_FLOAT[i] = i / 255.0f;
+	}
+}
@@ -0,0 +1,146 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESParallel
+//
+//    Utility class for splitting a range of work across a shared pool of
+//    worker threads.  Used by the CPU side mesh and image generators.
+//
+
+package com.openglesbook.common;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+public class ESParallel {
+	//
+	///
+	/// \brief A unit of work over the half-open range [start, end)
+	//
+	public interface RangeTask {
+		public void run(int start, int end);
+	}
+
+	//
+	///
+	/// \brief Number of threads that work is split across
+	//
+	public static int getThreadCount() {
+		return NUM_THREADS;
+	}
+
+	//
+	///
+	/// \brief Run task over [start, end), split into chunks of at least
+	/// grain items.  The calling thread runs the last chunk and returns once
+	/// every chunk has completed.  Calls made from a worker thread run
+	/// serially so nested use cannot deadlock the pool.
+	/// \param start First item
+	/// \param end One past the last item
+	/// \param grain Minimum number of items per chunk
+	/// \param task Work to run on each chunk
+	//
+	public static void forRange(int start, int end, int grain,
+			final RangeTask task) {
+		int count = end - start;
+
+		if (count <= 0)
+			return;
+
+		if (grain < 1)
+			grain = 1;
+
+		int numChunks = Math.min(NUM_THREADS, (count + grain - 1) / grain);
+
+		if (numChunks <= 1 || sIsWorker.get() != null) {
+			task.run(start, end);
+			return;
+		}
+
+		Future<?>[] futures = new Future<?>[numChunks - 1];
+		int chunkSize = (count + numChunks - 1) / numChunks;
+		int chunkStart = start;
+
+		for (int i = 0; i < numChunks - 1; i++) {
+			final int s = chunkStart;
+			final int e = Math.min(end, s + chunkSize);
+
+			futures[i] = getExecutor().submit(new Runnable() {
+				public void run() {
+					task.run(s, e);
+				}
+			});
+			chunkStart = e;
+		}
+
+		RuntimeException failure = null;
+
+		try {
+			task.run(chunkStart, end);
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+
+		for (int i = 0; i < futures.length; i++) {
+			try {
+				futures[i].get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (failure == null)
+					failure = new IllegalStateException(
+							"Interrupted waiting for workers");
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+						failure = (RuntimeException) cause;
+					else if (cause instanceof Error)
+						throw (Error) cause;
+					else
+						failure = new RuntimeException(cause);
+				}
+			}
+		}
+
+		if (failure != null)
+			throw failure;
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (sExecutor == null) {
+			sExecutor = Executors.newFixedThreadPool(NUM_THREADS - 1,
+					new ThreadFactory() {
+						private int mCount;
+
+						public Thread newThread(final Runnable r) {
+							Thread t = new Thread(new Runnable() {
+								public void run() {
+									sIsWorker.set(Boolean.TRUE);
+									r.run();
+								}
+							}, "ESParallel-" + (mCount++));
+							t.setDaemon(true);
+							return t;
+						}
+					});
+		}
+		return sExecutor;
+	}
+
+	private static final int NUM_THREADS = Math.max(1, Runtime.getRuntime()
+			.availableProcessors());
+
+	private static final ThreadLocal<Boolean> sIsWorker = new ThreadLocal<Boolean>();
+
+	private static ExecutorService sExecutor;
+}
@@ -0,0 +1,345 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESProceduralTexture
+//
+//    Generates the RGB8 images used by the texturing samples: checkerboards,
+//    gradients, noise and solid colors.  Rows are generated in parallel with
+//    ESParallel straight into direct buffers ready for glTexImage2D().
+//
+//    Results are cached by their parameters, so asking again for the same
+//    image, for example when the surface is recreated after the context
+//    was lost, returns the existing texels instead of generating them
+//    again.  The cache holds at most getCacheBudget() bytes and drops the
+//    least recently used images first.  Callers must not modify the
+//    returned texels.
+//
+//    Colors are given as 0xRRGGBB.
+//
+
+package com.openglesbook.common;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class ESProceduralTexture {
+	// Bytes per texel of every generated image
+	public static final int TEXEL_SIZE = 3;
+
+	//
+	///
+	/// \brief Checkerboard of two colors
+	/// \param checkSize Width and height of a square in texels
+	/// \param color0 Color of the square at the origin
+	/// \param color1 Color of the squares next to it
+	/// \return Tightly packed RGB texels
+	//
+	public static ByteBuffer checkerboard(int width, int height,
+			final int checkSize, final int color0, final int color1) {
+		if (checkSize <= 0)
+			throw new IllegalArgumentException("Invalid check size "
+					+ checkSize);
+
+		String key = "checker " + width + "x" + height + " " + checkSize
+				+ " " + color0 + " " + color1;
+
+		return generate(key, width, height, new RowGenerator() {
+			public void generate(int y, int width, byte[] row) {
+				int yCheck = y / checkSize;
+
+				for (int x = 0; x < width; x++) {
+					int color = ((x / checkSize + yCheck) & 1) == 0 ? color0
+							: color1;
+					putColor(row, x, color);
+				}
+			}
+		});
+	}
+
+	//
+	///
+	/// \brief Linear gradient between two colors
+	/// \param vertical Whether the colors blend from the first row to the
+	/// last, rather than from the first column to the last
+	/// \return Tightly packed RGB texels
+	//
+	public static ByteBuffer gradient(int width, final int height,
+			final int color0, final int color1, final boolean vertical) {
+		String key = "gradient " + width + "x" + height + " " + color0 + " "
+				+ color1 + " " + vertical;
+
+		return generate(key, width, height, new RowGenerator() {
+			public void generate(int y, int width, byte[] row) {
+				if (vertical) {
+					int color = lerpColor(color0, color1, y, height);
+
+					for (int x = 0; x < width; x++)
+						putColor(row, x, color);
+				} else {
+					for (int x = 0; x < width; x++)
+						putColor(row, x, lerpColor(color0, color1, x, width));
+				}
+			}
+		});
+	}
+
+	//
+	///
+	/// \brief Grey fractal value noise
+	/// \param cellSize Texels between lattice points of the first octave
+	/// \param octaves Number of octaves, each with half the cell size and
+	/// half the amplitude of the one before
+	/// \param seed Selects the noise pattern
+	/// \return Tightly packed RGB texels
+	//
+	public static ByteBuffer noise(int width, int height,
+			final int cellSize, final int octaves, final int seed) {
+		if (cellSize <= 0 || octaves <= 0)
+			throw new IllegalArgumentException("Invalid noise cell size "
+					+ cellSize + " or octaves " + octaves);
+
+		String key = "noise " + width + "x" + height + " " + cellSize + " "
+				+ octaves + " " + seed;
+
+		return generate(key, width, height, new RowGenerator() {
+			public void generate(int y, int width, byte[] row) {
+				for (int x = 0; x < width; x++) {
+					float value = 0.0f;
+					float amplitude = 0.5f;
+					float cell = cellSize;
+					float total = 0.0f;
+
+					for (int octave = 0; octave < octaves; octave++) {
+						value += amplitude
+								* valueNoise(x / cell, y / cell, seed + octave);
+						total += amplitude;
+						amplitude *= 0.5f;
+						cell = Math.max(1.0f, cell * 0.5f);
+					}
+
+					int grey = (int) (value / total * 255.0f + 0.5f);
+					putColor(row, x, grey * 0x010101);
+				}
+			}
+		});
+	}
+
+	//
+	///
+	/// \brief Image of a single color
+	/// \return Tightly packed RGB texels
+	//
+	public static ByteBuffer solid(int width, int height, final int color) {
+		String key = "solid " + width + "x" + height + " " + color;
+
+		return generate(key, width, height, new RowGenerator() {
+			public void generate(int y, int width, byte[] row) {
+				for (int x = 0; x < width; x++)
+					putColor(row, x, color);
+			}
+		});
+	}
+
+	//
+	///
+	/// \brief Solid color faces for a cube map
+	/// \param colors Six colors, in the order of the
+	/// GL_TEXTURE_CUBE_MAP_POSITIVE_X based face targets
+	/// \return One square face of size x size texels per color
+	//
+	public static ByteBuffer[] cubeFaces(int size, int[] colors) {
+		if (colors.length != 6)
+			throw new IllegalArgumentException("Cube maps have 6 faces, not "
+					+ colors.length);
+
+		ByteBuffer[] faces = new ByteBuffer[6];
+		for (int face = 0; face < 6; face++)
+			faces[face] = solid(size, size, colors[face]);
+
+		return faces;
+	}
+
+	//
+	///
+	/// \brief Limit the memory held by cached images, dropping the least
+	/// recently used ones until they fit
+	//
+	public static void setCacheBudget(long budgetBytes) {
+		synchronized (sCache) {
+			sCacheBudget = budgetBytes;
+			trimCache();
+		}
+	}
+
+	public static long getCacheBudget() {
+		synchronized (sCache) {
+			return sCacheBudget;
+		}
+	}
+
+	public static long getCachedBytes() {
+		synchronized (sCache) {
+			return sCachedBytes;
+		}
+	}
+
+	public static void clearCache() {
+		synchronized (sCache) {
+			sCache.clear();
+			sCachedBytes = 0;
+		}
+	}
+
+	//
+	// Fills one row of an image.  Called from several threads at once.
+	//
+	private interface RowGenerator {
+		public void generate(int y, int width, byte[] row);
+	}
+
+	//
+	// Return the cached image for key, or generate it in parallel and cache
+	// it if it fits the budget
+	//
+	private static ByteBuffer generate(String key, final int width,
+			int height, final RowGenerator generator) {
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid image size " + width
+					+ "x" + height);
+
+		synchronized (sCache) {
+			ByteBuffer cached = sCache.get(key);
+
+			if (cached != null)
+				return cached.duplicate();
+		}
+
+		final int rowBytes = width * TEXEL_SIZE;
+		final ByteBuffer pixels = ByteBuffer.allocateDirect(rowBytes * height)
+				.order(ByteOrder.nativeOrder());
+
+		ESParallel.forRange(0, height, MIN_ROWS_PER_TASK,
+				new ESParallel.RangeTask() {
+					public void run(int start, int end) {
+						ByteBuffer dst = pixels.duplicate();
+						byte[] row = new byte[rowBytes];
+
+						dst.position(start * rowBytes);
+
+						for (int y = start; y < end; y++) {
+							generator.generate(y, width, row);
+							dst.put(row);
+						}
+					}
+				});
+
+		synchronized (sCache) {
+			// Another thread may have generated the same image meanwhile
+			ByteBuffer cached = sCache.get(key);
+
+			if (cached != null)
+				return cached.duplicate();
+
+			// Caching an image larger than the whole budget would only
+			// evict everything else before dropping the image itself
+			if (pixels.capacity() > sCacheBudget)
+				return pixels;
+
+			sCache.put(key, pixels);
+			sCachedBytes += pixels.capacity();
+			trimCache();
+		}
+
+		return pixels.duplicate();
+	}
+
+	//
+	// Drop least recently used images until the cache fits its budget.
+	// Called with the cache locked.
+	//
+	private static void trimCache() {
+		Iterator<ByteBuffer> it = sCache.values().iterator();
+
+		while (sCachedBytes > sCacheBudget && it.hasNext()) {
+			sCachedBytes -= it.next().capacity();
+			it.remove();
+		}
+	}
+
+	private static void putColor(byte[] row, int x, int color) {
+		row[x * 3] = (byte) (color >> 16);
+		row[x * 3 + 1] = (byte) (color >> 8);
+		row[x * 3 + 2] = (byte) color;
+	}
+
+	//
+	// Blend two colors by i / (n - 1), per channel with rounding
+	//
+	private static int lerpColor(int color0, int color1, int i, int n) {
+		if (n <= 1)
+			return color0;
+
+		int color = 0;
+
+		for (int shift = 0; shift <= 16; shift += 8) {
+			int c0 = (color0 >> shift) & 0xFF;
+			int c1 = (color1 >> shift) & 0xFF;
+			int c = c0 + ((c1 - c0) * i * 2 + (n - 1)) / (2 * (n - 1));
+
+			color |= c << shift;
+		}
+
+		return color;
+	}
+
+	//
+	// Smoothly interpolated random values at integer lattice points, in 0..1
+	//
+	private static float valueNoise(float x, float y, int seed) {
+		int x0 = (int) Math.floor(x);
+		int y0 = (int) Math.floor(y);
+		float fx = x - x0;
+		float fy = y - y0;
+
+		// Smoothstep weights hide the lattice
+		fx = fx * fx * (3.0f - 2.0f * fx);
+		fy = fy * fy * (3.0f - 2.0f * fy);
+
+		float top = lattice(x0, y0, seed) * (1.0f - fx)
+				+ lattice(x0 + 1, y0, seed) * fx;
+		float bottom = lattice(x0, y0 + 1, seed) * (1.0f - fx)
+				+ lattice(x0 + 1, y0 + 1, seed) * fx;
+
+		return top * (1.0f - fy) + bottom * fy;
+	}
+
+	//
+	// Hash of a lattice point, in 0..1
+	//
+	private static float lattice(int x, int y, int seed) {
+		int h = x * 374761393 + y * 668265263 + seed * 1274126177;
+
+		h = (h ^ (h >>> 13)) * 1103515245;
+		h ^= h >>> 16;
+
+		return (h & 0xFFFFFF) / (float) 0xFFFFFF;
+	}
+
+	// Rows generated per task at minimum
+	private static final int MIN_ROWS_PER_TASK = 16;
+
+	// Cached images by parameters, least recently used first
+	private static final LinkedHashMap<String, ByteBuffer> sCache = new LinkedHashMap<String, ByteBuffer>(
+			16, 0.75f, true);
+	private static long sCacheBudget = 8 * 1024 * 1024;
+	private static long sCachedBytes;
+}
@@ -0,0 +1,491 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESProgram
+//
+//    A linked program object together with its active attributes and
+//    uniforms.  The renderer declares the attribute and uniform names it
+//    uses once; their locations are then looked up by integer slot, in the
+//    order the names were declared, without querying the driver.  Loading
+//    again after a context loss keeps the slots unchanged.
+//
+//    Uniforms set through the setUniform methods are shadowed on the CPU,
+//    and an upload whose value is bit-identical to the last one sent for
+//    that slot is skipped.
+//
+
+package com.openglesbook.common;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+public class ESProgram {
+	//
+	///
+	/// \brief Create a program description.  Nothing is compiled until
+	/// load() is called.
+	/// \param vertShaderSrc Vertex shader source code
+	/// \param fragShaderSrc Fragment shader source code
+	/// \param attribNames Attribute names, slot i is attribNames[i]
+	/// \param uniformNames Uniform names, slot i is uniformNames[i]
+	//
+	public ESProgram(String vertShaderSrc, String fragShaderSrc,
+			String[] attribNames, String[] uniformNames) {
+		mVertShaderSrc = vertShaderSrc;
+		mFragShaderSrc = fragShaderSrc;
+		mAttribNames = attribNames != null ? attribNames : new String[0];
+		mUniformNames = uniformNames != null ? uniformNames : new String[0];
+		mAttribSlots = new int[mAttribNames.length];
+		mUniformSlots = new int[mUniformNames.length];
+		mShadow = new int[mUniformNames.length][];
+		mShadowType = new int[mUniformNames.length];
+		clearReflection();
+	}
+
+	//
+	///
+	/// \brief Compile, link and reflect the program.  Call again from
+	/// onSurfaceCreated() after the context has been lost.
+	/// \return false if the program failed to compile or link
+	//
+	public boolean load() {
+		mProgramObject = ESShader.loadProgram(mVertShaderSrc, mFragShaderSrc);
+
+		clearReflection();
+
+		if (mProgramObject == 0)
+			return false;
+
+		reflect();
+		mValid = validate();
+		return true;
+	}
+
+	//
+	///
+	/// \brief Delete the program object
+	//
+	public void release() {
+		if (mProgramObject != 0)
+			GLES20.glDeleteProgram(mProgramObject);
+
+		mProgramObject = 0;
+		clearReflection();
+	}
+
+	public void use() {
+		GLES20.glUseProgram(mProgramObject);
+	}
+
+	public int getProgramObject() {
+		return mProgramObject;
+	}
+
+	//
+	///
+	/// \brief Whether the declared names and the active names of the
+	/// linked program match exactly.  Mismatches are logged by load().
+	//
+	public boolean isValid() {
+		return mValid;
+	}
+
+	//
+	///
+	/// \brief Location of a declared attribute, -1 if it is not active
+	/// \param slot Index of the name in the attribNames constructor argument
+	//
+	public int getAttribLocation(int slot) {
+		return mAttribSlots[slot];
+	}
+
+	//
+	///
+	/// \brief Location of a declared uniform, -1 if it is not active
+	/// \param slot Index of the name in the uniformNames constructor argument
+	//
+	public int getUniformLocation(int slot) {
+		return mUniformSlots[slot];
+	}
+
+	//
+	///
+	/// \brief Location of any active attribute by name, from the reflected
+	/// table rather than the driver.  -1 if it is not active.
+	//
+	public int getAttribLocation(String name) {
+		Integer index = mAttribIndex.get(name);
+		return index != null ? mAttribLocations[index.intValue()] : -1;
+	}
+
+	//
+	///
+	/// \brief Location of any active uniform by name, from the reflected
+	/// table rather than the driver.  Arrays may be named with or without
+	/// the "[0]" suffix.  -1 if it is not active.
+	//
+	public int getUniformLocation(String name) {
+		Integer index = mUniformIndex.get(name);
+		return index != null ? mUniformLocations[index.intValue()] : -1;
+	}
+
+	//
+	///
+	/// \brief Set an int or sampler uniform.  The program must be in use.
+	/// \param slot Index of the name in the uniformNames constructor argument
+	//
+	public void setUniform1i(int slot, int x) {
+		mPending[0] = x;
+		if (shadow(slot, SHADOW_INT, 1))
+			GLES20.glUniform1i(mUniformSlots[slot], x);
+	}
+
+	public void setUniform1f(int slot, float x) {
+		mPending[0] = Float.floatToRawIntBits(x);
+		if (shadow(slot, SHADOW_FLOAT, 1))
+			GLES20.glUniform1f(mUniformSlots[slot], x);
+	}
+
+	public void setUniform2f(int slot, float x, float y) {
+		mPending[0] = Float.floatToRawIntBits(x);
+		mPending[1] = Float.floatToRawIntBits(y);
+		if (shadow(slot, SHADOW_FLOAT, 2))
+			GLES20.glUniform2f(mUniformSlots[slot], x, y);
+	}
+
+	public void setUniform3f(int slot, float x, float y, float z) {
+		mPending[0] = Float.floatToRawIntBits(x);
+		mPending[1] = Float.floatToRawIntBits(y);
+		mPending[2] = Float.floatToRawIntBits(z);
+		if (shadow(slot, SHADOW_FLOAT, 3))
+			GLES20.glUniform3f(mUniformSlots[slot], x, y, z);
+	}
+
+	public void setUniform4f(int slot, float x, float y, float z, float w) {
+		mPending[0] = Float.floatToRawIntBits(x);
+		mPending[1] = Float.floatToRawIntBits(y);
+		mPending[2] = Float.floatToRawIntBits(z);
+		mPending[3] = Float.floatToRawIntBits(w);
+		if (shadow(slot, SHADOW_FLOAT, 4))
+			GLES20.glUniform4f(mUniformSlots[slot], x, y, z, w);
+	}
+
+	//
+	///
+	/// \brief Set a mat4 uniform.  The program must be in use.
+	/// \param slot Index of the name in the uniformNames constructor argument
+	/// \param m Column major matrix, 16 floats from offset
+	//
+	public void setUniformMatrix4fv(int slot, float[] m, int offset) {
+		for (int i = 0; i < 16; i++)
+			mPending[i] = Float.floatToRawIntBits(m[offset + i]);
+		if (shadow(slot, SHADOW_MATRIX, 16))
+			GLES20.glUniformMatrix4fv(mUniformSlots[slot], 1, false, m, offset);
+	}
+
+	//
+	///
+	/// \brief Set a mat4 uniform from the 16 floats at the buffer's
+	/// position.  The buffer position is not changed.
+	//
+	public void setUniformMatrix4fv(int slot, FloatBuffer m) {
+		int position = m.position();
+		for (int i = 0; i < 16; i++)
+			mPending[i] = Float.floatToRawIntBits(m.get(position + i));
+		if (shadow(slot, SHADOW_MATRIX, 16))
+			GLES20.glUniformMatrix4fv(mUniformSlots[slot], 1, false, m);
+	}
+
+	//
+	///
+	/// \brief Forget the shadowed values, so that the next set of every
+	/// uniform is uploaded.  Needed if uniforms of this program were changed
+	/// with GLES20 calls directly.
+	//
+	public void invalidateUniforms() {
+		Arrays.fill(mShadowType, SHADOW_NONE);
+	}
+
+	//
+	///
+	/// \brief Number of uniform uploads sent to GL by the setUniform methods
+	//
+	public long getUniformUploadCount() {
+		return mUniformUploads;
+	}
+
+	//
+	///
+	/// \brief Number of uniform uploads skipped because the value had not
+	/// changed
+	//
+	public long getUniformSkipCount() {
+		return mUniformSkips;
+	}
+
+	public void resetUniformCounters() {
+		mUniformUploads = 0;
+		mUniformSkips = 0;
+	}
+
+	public int getActiveAttribCount() {
+		return mAttribLocations.length;
+	}
+
+	public String getActiveAttribName(int index) {
+		return mActiveAttribNames[index];
+	}
+
+	public int getActiveAttribType(int index) {
+		return mAttribTypes[index];
+	}
+
+	public int getActiveAttribSize(int index) {
+		return mAttribSizes[index];
+	}
+
+	public int getActiveUniformCount() {
+		return mUniformLocations.length;
+	}
+
+	public String getActiveUniformName(int index) {
+		return mActiveUniformNames[index];
+	}
+
+	public int getActiveUniformType(int index) {
+		return mUniformTypes[index];
+	}
+
+	public int getActiveUniformSize(int index) {
+		return mUniformSizes[index];
+	}
+
+	//
+	// Read every active attribute and uniform of the linked program and
+	// resolve the declared slots against them
+	//
+	private void reflect() {
+		int[] params = new int[1];
+		int[] length = new int[1];
+		int[] size = new int[1];
+		int[] type = new int[1];
+
+		GLES20.glGetProgramiv(mProgramObject, GLES20.GL_ACTIVE_ATTRIBUTES,
+				params, 0);
+		int numAttribs = params[0];
+		GLES20.glGetProgramiv(mProgramObject,
+				GLES20.GL_ACTIVE_ATTRIBUTE_MAX_LENGTH, params, 0);
+		byte[] name = new byte[Math.max(params[0], 1)];
+
+		mActiveAttribNames = new String[numAttribs];
+		mAttribTypes = new int[numAttribs];
+		mAttribSizes = new int[numAttribs];
+		mAttribLocations = new int[numAttribs];
+
+		for (int i = 0; i < numAttribs; i++) {
+			GLES20.glGetActiveAttrib(mProgramObject, i, name.length, length,
+					0, size, 0, type, 0, name, 0);
+
+			String attribName = new String(name, 0, length[0]);
+			mActiveAttribNames[i] = attribName;
+			mAttribTypes[i] = type[0];
+			mAttribSizes[i] = size[0];
+			mAttribLocations[i] = GLES20.glGetAttribLocation(mProgramObject,
+					attribName);
+			mAttribIndex.put(attribName, Integer.valueOf(i));
+		}
+
+		GLES20.glGetProgramiv(mProgramObject, GLES20.GL_ACTIVE_UNIFORMS,
+				params, 0);
+		int numUniforms = params[0];
+		GLES20.glGetProgramiv(mProgramObject,
+				GLES20.GL_ACTIVE_UNIFORM_MAX_LENGTH, params, 0);
+		name = new byte[Math.max(params[0], 1)];
+
+		mActiveUniformNames = new String[numUniforms];
+		mUniformTypes = new int[numUniforms];
+		mUniformSizes = new int[numUniforms];
+		mUniformLocations = new int[numUniforms];
+
+		for (int i = 0; i < numUniforms; i++) {
+			GLES20.glGetActiveUniform(mProgramObject, i, name.length, length,
+					0, size, 0, type, 0, name, 0);
+
+			String uniformName = new String(name, 0, length[0]);
+			mActiveUniformNames[i] = uniformName;
+			mUniformTypes[i] = type[0];
+			mUniformSizes[i] = size[0];
+			mUniformLocations[i] = GLES20.glGetUniformLocation(mProgramObject,
+					uniformName);
+			mUniformIndex.put(uniformName, Integer.valueOf(i));
+
+			// Arrays are reported as "name[0]", accept the bare name too
+			if (uniformName.endsWith("[0]"))
+				mUniformIndex.put(uniformName.substring(0,
+						uniformName.length() - 3), Integer.valueOf(i));
+		}
+
+		for (int slot = 0; slot < mAttribNames.length; slot++)
+			mAttribSlots[slot] = getAttribLocation(mAttribNames[slot]);
+
+		for (int slot = 0; slot < mUniformNames.length; slot++)
+			mUniformSlots[slot] = getUniformLocation(mUniformNames[slot]);
+	}
+
+	//
+	// Check that the renderer and the shaders agree on names.  A declared
+	// name that is not active is either misspelled or optimized out by the
+	// compiler; an active name that is not declared is never set.
+	//
+	private boolean validate() {
+		boolean valid = true;
+
+		for (int slot = 0; slot < mAttribNames.length; slot++) {
+			if (mAttribSlots[slot] < 0) {
+				Log.w(TAG, "Attribute " + mAttribNames[slot]
+						+ " is not active in the program");
+				valid = false;
+			}
+		}
+
+		for (int slot = 0; slot < mUniformNames.length; slot++) {
+			if (mUniformSlots[slot] < 0) {
+				Log.w(TAG, "Uniform " + mUniformNames[slot]
+						+ " is not active in the program");
+				valid = false;
+			}
+		}
+
+		for (int i = 0; i < mActiveAttribNames.length; i++) {
+			if (!mActiveAttribNames[i].startsWith("gl_")
+					&& !isDeclared(mAttribNames, mActiveAttribNames[i])) {
+				Log.w(TAG, "Active attribute " + mActiveAttribNames[i]
+						+ " is not declared by the renderer");
+				valid = false;
+			}
+		}
+
+		for (int i = 0; i < mActiveUniformNames.length; i++) {
+			if (!mActiveUniformNames[i].startsWith("gl_")
+					&& !isDeclared(mUniformNames, mActiveUniformNames[i])) {
+				Log.w(TAG, "Active uniform " + mActiveUniformNames[i]
+						+ " is not declared by the renderer");
+				valid = false;
+			}
+		}
+
+		return valid;
+	}
+
+	//
+	// Compare the first count values in mPending with the shadow of a slot
+	// and record them.  Returns whether the upload has to be issued.
+	// Uniforms that are not active are never uploaded.
+	//
+	private boolean shadow(int slot, int type, int count) {
+		if (mUniformSlots[slot] < 0) {
+			mUniformSkips++;
+			return false;
+		}
+
+		int[] shadow = mShadow[slot];
+
+		if (mShadowType[slot] == type && shadow.length == count) {
+			int i = 0;
+			while (i < count && shadow[i] == mPending[i])
+				i++;
+
+			if (i == count) {
+				mUniformSkips++;
+				return false;
+			}
+		}
+
+		if (shadow == null || shadow.length != count) {
+			shadow = new int[count];
+			mShadow[slot] = shadow;
+		}
+
+		System.arraycopy(mPending, 0, shadow, 0, count);
+		mShadowType[slot] = type;
+		mUniformUploads++;
+		return true;
+	}
+
+	private static boolean isDeclared(String[] names, String activeName) {
+		String bareName = activeName.endsWith("[0]") ? activeName.substring(
+				0, activeName.length() - 3) : activeName;
+
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(activeName) || names[i].equals(bareName))
+				return true;
+		}
+
+		return false;
+	}
+
+	private void clearReflection() {
+		mAttribIndex.clear();
+		mUniformIndex.clear();
+		mActiveAttribNames = new String[0];
+		mAttribTypes = new int[0];
+		mAttribSizes = new int[0];
+		mAttribLocations = new int[0];
+		mActiveUniformNames = new String[0];
+		mUniformTypes = new int[0];
+		mUniformSizes = new int[0];
+		mUniformLocations = new int[0];
+		Arrays.fill(mAttribSlots, -1);
+		Arrays.fill(mUniformSlots, -1);
+		Arrays.fill(mShadowType, SHADOW_NONE);
+		mValid = false;
+	}
+
+	private static final String TAG = "ESProgram";
+
+	// Kind of value held by a uniform shadow
+	private static final int SHADOW_NONE = 0;
+	private static final int SHADOW_INT = 1;
+	private static final int SHADOW_FLOAT = 2;
+	private static final int SHADOW_MATRIX = 3;
+
+	// Member variables
+	private final String mVertShaderSrc;
+	private final String mFragShaderSrc;
+	private final String[] mAttribNames;
+	private final String[] mUniformNames;
+	private final int[] mAttribSlots;
+	private final int[] mUniformSlots;
+	private int mProgramObject;
+	private boolean mValid;
+
+	// Last uploaded bits of each uniform slot
+	private final int[][] mShadow;
+	private final int[] mShadowType;
+	private final int[] mPending = new int[16];
+	private long mUniformUploads;
+	private long mUniformSkips;
+
+	// Reflected active attributes and uniforms
+	private final HashMap<String, Integer> mAttribIndex = new HashMap<String, Integer>();
+	private final HashMap<String, Integer> mUniformIndex = new HashMap<String, Integer>();
+	private String[] mActiveAttribNames;
+	private int[] mAttribTypes;
+	private int[] mAttribSizes;
+	private int[] mAttribLocations;
+	private String[] mActiveUniformNames;
+	private int[] mUniformTypes;
+	private int[] mUniformSizes;
+	private int[] mUniformLocations;
+}
@@ -0,0 +1,561 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESProgramCache
+//
+//    Persistent cache of linked program binaries, keyed by a hash of the
+//    vertex and fragment shader source.  The cache directory holds a
+//    memory-mapped index file and one blob file per program.  Entries are
+//    evicted least recently used first to stay within a size budget.  On a
+//    miss, a rejected binary or a driver change the program is compiled
+//    from source with ESShader.loadProgram.
+//
+
+package com.openglesbook.common;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+public class ESProgramCache {
+	//
+	///
+	/// \brief GL entry points used by the cache, so that a stand-in can be
+	/// supplied where no driver is available
+	//
+	public interface Driver {
+		//
+		/// \return A string identifying the driver build.  Cached binaries
+		/// are discarded when it changes.
+		//
+		public String getDriverVersion();
+
+		//
+		/// \return Whether program binaries can be retrieved and loaded
+		//
+		public boolean supportsProgramBinary();
+
+		//
+		/// \brief Retrieve the binary of a linked program
+		/// \param format Receives the binary format in element 0
+		/// \return The binary, or null on failure
+		//
+		public ByteBuffer getProgramBinary(int program, int[] format);
+
+		//
+		/// \brief Create a program from a binary
+		/// \return The linked program, or 0 if the binary was rejected
+		//
+		public int loadProgramBinary(int format, ByteBuffer binary);
+
+		//
+		/// \brief Compile and link a program from source
+		/// \return The linked program, or 0 on failure
+		//
+		public int compileProgram(String vertShaderSrc, String fragShaderSrc);
+	}
+
+	//
+	///
+	/// \brief Open (or create) a cache in directory using the GLES driver.
+	/// Must be called on a thread with a current GL context.
+	/// \param directory Directory holding the index and blob files
+	/// \param budgetBytes Maximum total size of the cached binaries
+	//
+	public ESProgramCache(File directory, long budgetBytes) {
+		this(directory, budgetBytes, new GLES20Driver());
+	}
+
+	public ESProgramCache(File directory, long budgetBytes, Driver driver) {
+		mDirectory = directory;
+		mBudgetBytes = budgetBytes;
+		mDriver = driver;
+
+		try {
+			openIndex();
+		} catch (IOException e) {
+			Log.w(TAG, "Program cache disabled: " + e.getMessage());
+			mIndex = null;
+		}
+	}
+
+	//
+	///
+	/// \brief Load a program from the cache, compiling and caching it on a
+	/// miss
+	/// \return A new linked program object, 0 on failure
+	//
+	public int loadProgram(String vertShaderSrc, String fragShaderSrc) {
+		if (mIndex == null || !mDriver.supportsProgramBinary())
+			return compile(vertShaderSrc, fragShaderSrc);
+
+		String key = hashKey(vertShaderSrc, fragShaderSrc);
+		Integer slot = mSlots.get(key);
+
+		if (slot != null) {
+			long start = System.nanoTime();
+			int program = loadEntry(slot.intValue(), key);
+
+			if (program != 0) {
+				mHits++;
+				mBinaryLoadNanos += System.nanoTime() - start;
+				return program;
+			}
+
+			// The driver rejected the binary, drop it and rebuild
+			mRejects++;
+			removeEntry(slot.intValue(), key);
+		}
+
+		mMisses++;
+		int program = compile(vertShaderSrc, fragShaderSrc);
+
+		if (program != 0)
+			storeEntry(key, program);
+
+		return program;
+	}
+
+	//
+	///
+	/// \brief Flush the index to disk
+	//
+	public void close() {
+		if (mIndex != null)
+			mIndex.force();
+	}
+
+	//
+	// Metrics
+	//
+	public int getHitCount() {
+		return mHits;
+	}
+
+	public int getMissCount() {
+		return mMisses;
+	}
+
+	// Binaries that were found but rejected by the driver
+	public int getRejectCount() {
+		return mRejects;
+	}
+
+	public int getEvictionCount() {
+		return mEvictions;
+	}
+
+	public long getCachedBytes() {
+		return mCachedBytes;
+	}
+
+	// Total time spent compiling from source, in nanoseconds
+	public long getCompileNanos() {
+		return mCompileNanos;
+	}
+
+	// Total time spent loading binaries on hits, in nanoseconds
+	public long getBinaryLoadNanos() {
+		return mBinaryLoadNanos;
+	}
+
+	private int compile(String vertShaderSrc, String fragShaderSrc) {
+		long start = System.nanoTime();
+		int program = mDriver.compileProgram(vertShaderSrc, fragShaderSrc);
+		mCompileNanos += System.nanoTime() - start;
+		return program;
+	}
+
+	//
+	// Map the index file, discarding its contents if it is not a valid
+	// index for the current driver
+	//
+	private void openIndex() throws IOException {
+		if (!mDirectory.isDirectory() && !mDirectory.mkdirs())
+			throw new IOException("Cannot create " + mDirectory);
+
+		RandomAccessFile file = new RandomAccessFile(new File(mDirectory,
+				INDEX_FILE), "rw");
+		try {
+			file.setLength(INDEX_SIZE);
+			mIndex = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+					INDEX_SIZE);
+		} finally {
+			file.close();
+		}
+
+		byte[] driverHash = digest(mDriver.getDriverVersion());
+		byte[] storedHash = new byte[HASH_SIZE];
+		mIndex.position(HEADER_DRIVER);
+		mIndex.get(storedHash);
+		mIndex.position(0);
+
+		if (mIndex.getInt(HEADER_MAGIC) != MAGIC
+				|| mIndex.getInt(HEADER_VERSION) != VERSION
+				|| !MessageDigest.isEqual(driverHash, storedHash)) {
+			resetIndex(driverHash);
+			return;
+		}
+
+		mClock = mIndex.getLong(HEADER_CLOCK);
+
+		for (int slot = 0; slot < MAX_ENTRIES; slot++) {
+			int size = mIndex.getInt(entryOffset(slot) + ENTRY_SIZE_FIELD);
+
+			if (size > 0) {
+				mSlots.put(entryKey(slot), Integer.valueOf(slot));
+				mCachedBytes += size;
+			}
+		}
+	}
+
+	//
+	// Empty the index and delete every blob, used on first use and
+	// whenever the driver changes
+	//
+	private void resetIndex(byte[] driverHash) {
+		for (int slot = 0; slot < MAX_ENTRIES; slot++) {
+			if (mIndex.getInt(HEADER_MAGIC) == MAGIC
+					&& mIndex.getInt(entryOffset(slot) + ENTRY_SIZE_FIELD) > 0)
+				new File(mDirectory, entryKey(slot) + BLOB_SUFFIX).delete();
+		}
+
+		for (int i = 0; i < INDEX_SIZE; i++)
+			mIndex.put(i, (byte) 0);
+
+		mIndex.putInt(HEADER_MAGIC, MAGIC);
+		mIndex.putInt(HEADER_VERSION, VERSION);
+		mIndex.position(HEADER_DRIVER);
+		mIndex.put(driverHash);
+		mIndex.position(0);
+
+		mSlots.clear();
+		mCachedBytes = 0;
+		mClock = 0;
+	}
+
+	private int loadEntry(int slot, String key) {
+		int offset = entryOffset(slot);
+		int format = mIndex.getInt(offset + ENTRY_FORMAT_FIELD);
+		int size = mIndex.getInt(offset + ENTRY_SIZE_FIELD);
+		ByteBuffer binary;
+
+		try {
+			RandomAccessFile file = new RandomAccessFile(new File(mDirectory,
+					key + BLOB_SUFFIX), "r");
+			try {
+				if (file.length() != size)
+					return 0;
+				binary = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+						0, size);
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			return 0;
+		}
+
+		int program = mDriver.loadProgramBinary(format, binary);
+
+		if (program != 0)
+			touch(slot);
+
+		return program;
+	}
+
+	private void storeEntry(String key, int program) {
+		int[] format = new int[1];
+		ByteBuffer binary = mDriver.getProgramBinary(program, format);
+
+		if (binary == null || binary.remaining() == 0
+				|| binary.remaining() > mBudgetBytes)
+			return;
+
+		int size = binary.remaining();
+
+		// Make room, least recently used first
+		while (mCachedBytes + size > mBudgetBytes
+				|| mSlots.size() == MAX_ENTRIES)
+			evictOldest();
+
+		int slot = findFreeSlot();
+
+		try {
+			FileOutputStream out = new FileOutputStream(new File(mDirectory,
+					key + BLOB_SUFFIX));
+			try {
+				out.getChannel().write(binary);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Failed to write program binary: " + e.getMessage());
+			return;
+		}
+
+		int offset = entryOffset(slot);
+		byte[] keyBytes = hexToBytes(key);
+
+		mIndex.position(offset + ENTRY_KEY_FIELD);
+		mIndex.put(keyBytes);
+		mIndex.position(0);
+		mIndex.putInt(offset + ENTRY_FORMAT_FIELD, format[0]);
+		mIndex.putInt(offset + ENTRY_SIZE_FIELD, size);
+		touch(slot);
+
+		mSlots.put(key, Integer.valueOf(slot));
+		mCachedBytes += size;
+	}
+
+	private void evictOldest() {
+		int oldest = -1;
+		long oldestTime = Long.MAX_VALUE;
+
+		for (int slot = 0; slot < MAX_ENTRIES; slot++) {
+			int offset = entryOffset(slot);
+
+			if (mIndex.getInt(offset + ENTRY_SIZE_FIELD) > 0
+					&& mIndex.getLong(offset + ENTRY_LAST_USED_FIELD) < oldestTime) {
+				oldest = slot;
+				oldestTime = mIndex.getLong(offset + ENTRY_LAST_USED_FIELD);
+			}
+		}
+
+		removeEntry(oldest, entryKey(oldest));
+		mEvictions++;
+	}
+
+	private void removeEntry(int slot, String key) {
+		int offset = entryOffset(slot);
+
+		mCachedBytes -= mIndex.getInt(offset + ENTRY_SIZE_FIELD);
+		mIndex.putInt(offset + ENTRY_SIZE_FIELD, 0);
+		mSlots.remove(key);
+		new File(mDirectory, key + BLOB_SUFFIX).delete();
+	}
+
+	private int findFreeSlot() {
+		for (int slot = 0; slot < MAX_ENTRIES; slot++) {
+			if (mIndex.getInt(entryOffset(slot) + ENTRY_SIZE_FIELD) == 0)
+				return slot;
+		}
+		throw new IllegalStateException("No free program cache slot");
+	}
+
+	private void touch(int slot) {
+		mClock++;
+		mIndex.putLong(entryOffset(slot) + ENTRY_LAST_USED_FIELD, mClock);
+		mIndex.putLong(HEADER_CLOCK, mClock);
+	}
+
+	private String entryKey(int slot) {
+		StringBuilder key = new StringBuilder(HASH_SIZE * 2);
+		int offset = entryOffset(slot) + ENTRY_KEY_FIELD;
+
+		for (int i = 0; i < HASH_SIZE; i++) {
+			int b = mIndex.get(offset + i) & 0xFF;
+			key.append(HEX.charAt(b >> 4)).append(HEX.charAt(b & 0xF));
+		}
+		return key.toString();
+	}
+
+	private static int entryOffset(int slot) {
+		return HEADER_SIZE + slot * ENTRY_SIZE;
+	}
+
+	//
+	// The key covers both stages, with a separator so that moving text
+	// from one source to the other changes the hash
+	//
+	private static String hashKey(String vertShaderSrc, String fragShaderSrc) {
+		byte[] hash = digest(vertShaderSrc + "\u0000" + fragShaderSrc);
+		StringBuilder key = new StringBuilder(HASH_SIZE * 2);
+
+		for (int i = 0; i < hash.length; i++) {
+			int b = hash[i] & 0xFF;
+			key.append(HEX.charAt(b >> 4)).append(HEX.charAt(b & 0xF));
+		}
+		return key.toString();
+	}
+
+	private static byte[] digest(String text) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			return md.digest(text.getBytes("UTF-8"));
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static byte[] hexToBytes(String hex) {
+		byte[] result = new byte[hex.length() / 2];
+
+		for (int i = 0; i < result.length; i++)
+			result[i] = (byte) Integer.parseInt(
+					hex.substring(i * 2, i * 2 + 2), 16);
+		return result;
+	}
+
+	//
+	///
+	/// \brief Driver backed by GLES.  Program binaries need OpenGL ES 3.0,
+	/// which is only reachable through reflection while the library targets
+	/// API level 8.  Without it every load compiles from source.
+	//
+	public static class GLES20Driver implements Driver {
+		public String getDriverVersion() {
+			return GLES20.glGetString(GLES20.GL_VENDOR) + "/"
+					+ GLES20.glGetString(GLES20.GL_RENDERER) + "/"
+					+ GLES20.glGetString(GLES20.GL_VERSION);
+		}
+
+		public boolean supportsProgramBinary() {
+			if (sGetProgramBinary == null || sProgramBinary == null)
+				return false;
+
+			int[] numFormats = new int[1];
+			GLES20.glGetIntegerv(GL_NUM_PROGRAM_BINARY_FORMATS, numFormats, 0);
+			return numFormats[0] > 0;
+		}
+
+		public ByteBuffer getProgramBinary(int program, int[] format) {
+			int[] length = new int[1];
+			GLES20.glGetProgramiv(program, GL_PROGRAM_BINARY_LENGTH, length, 0);
+
+			if (length[0] <= 0)
+				return null;
+
+			ByteBuffer binary = ByteBuffer.allocateDirect(length[0]).order(
+					ByteOrder.nativeOrder());
+			int[] written = new int[1];
+
+			try {
+				sGetProgramBinary.invoke(null, Integer.valueOf(program),
+						Integer.valueOf(length[0]), written,
+						Integer.valueOf(0), format, Integer.valueOf(0), binary);
+			} catch (Exception e) {
+				return null;
+			}
+
+			if (GLES20.glGetError() != GLES20.GL_NO_ERROR || written[0] <= 0)
+				return null;
+
+			binary.limit(written[0]);
+			return binary;
+		}
+
+		public int loadProgramBinary(int format, ByteBuffer binary) {
+			int program = GLES20.glCreateProgram();
+			int[] linked = new int[1];
+
+			if (program == 0)
+				return 0;
+
+			try {
+				sProgramBinary.invoke(null, Integer.valueOf(program),
+						Integer.valueOf(format), binary,
+						Integer.valueOf(binary.remaining()));
+			} catch (Exception e) {
+				GLES20.glDeleteProgram(program);
+				return 0;
+			}
+
+			GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linked, 0);
+
+			if (linked[0] == 0) {
+				GLES20.glDeleteProgram(program);
+				return 0;
+			}
+			return program;
+		}
+
+		public int compileProgram(String vertShaderSrc, String fragShaderSrc) {
+			return ESShader.loadProgram(vertShaderSrc, fragShaderSrc);
+		}
+
+		private static final int GL_PROGRAM_BINARY_LENGTH = 0x8741;
+		private static final int GL_NUM_PROGRAM_BINARY_FORMATS = 0x87FE;
+
+		private static Method sGetProgramBinary;
+		private static Method sProgramBinary;
+
+		static {
+			try {
+				Class<?> gles30 = Class.forName("android.opengl.GLES30");
+				sGetProgramBinary = gles30.getMethod("glGetProgramBinary",
+						int.class, int.class, int[].class, int.class,
+						int[].class, int.class, Buffer.class);
+				sProgramBinary = gles30.getMethod("glProgramBinary",
+						int.class, int.class, Buffer.class, int.class);
+			} catch (Exception e) {
+				sGetProgramBinary = null;
+				sProgramBinary = null;
+			}
+		}
+	}
+
+	private static final String TAG = "ESProgramCache";
+	private static final String INDEX_FILE = "programs.idx";
+	private static final String BLOB_SUFFIX = ".bin";
+	private static final String HEX = "0123456789abcdef";
+
+	// Index file layout.  A fixed size header followed by MAX_ENTRIES
+	// fixed size entries; an entry with size 0 is free.
+	private static final int MAGIC = 0x45535043; // 'ESPC'
+	private static final int VERSION = 1;
+	private static final int HASH_SIZE = 20;
+	private static final int MAX_ENTRIES = 256;
+
+	private static final int HEADER_MAGIC = 0;
+	private static final int HEADER_VERSION = 4;
+	private static final int HEADER_DRIVER = 8;
+	private static final int HEADER_CLOCK = HEADER_DRIVER + HASH_SIZE;
+	private static final int HEADER_SIZE = HEADER_CLOCK + 8;
+
+	private static final int ENTRY_KEY_FIELD = 0;
+	private static final int ENTRY_FORMAT_FIELD = HASH_SIZE;
+	private static final int ENTRY_SIZE_FIELD = ENTRY_FORMAT_FIELD + 4;
+	private static final int ENTRY_LAST_USED_FIELD = ENTRY_SIZE_FIELD + 4;
+	private static final int ENTRY_SIZE = ENTRY_LAST_USED_FIELD + 8;
+
+	private static final int INDEX_SIZE = HEADER_SIZE + MAX_ENTRIES
+			* ENTRY_SIZE;
+
+	// Member variables
+	private final File mDirectory;
+	private final long mBudgetBytes;
+	private final Driver mDriver;
+	private MappedByteBuffer mIndex;
+	private final HashMap<String, Integer> mSlots = new HashMap<String, Integer>();
+	private long mCachedBytes;
+	private long mClock;
+
+	private int mHits;
+	private int mMisses;
+	private int mRejects;
+	private int mEvictions;
+	private long mCompileNanos;
+	private long mBinaryLoadNanos;
+}
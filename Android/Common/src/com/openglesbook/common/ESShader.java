@@ -110,4 +110,25 @@ public class ESShader {
 		return programObject;
 	}
 
+	//
+	///
+	/// \brief Load a program and reflect its active attributes and uniforms.
+	/// Mismatches between the declared and active names are output to log.
+	/// \param vertShaderSrc Vertex shader source code
+	/// \param fragShaderSrc Fragment shader source code
+	/// \param attribNames Attribute names used by the renderer, in slot order
+	/// \param uniformNames Uniform names used by the renderer, in slot order
+	/// \return A loaded program, null on failure
+	//
+	public static ESProgram loadProgramObject(String vertShaderSrc,
+			String fragShaderSrc, String[] attribNames, String[] uniformNames) {
+		ESProgram program = new ESProgram(vertShaderSrc, fragShaderSrc,
+				attribNames, uniformNames);
+
+		if (!program.load())
+			return null;
+
+		return program;
+	}
+
 }
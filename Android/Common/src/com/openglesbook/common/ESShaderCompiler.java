@@ -0,0 +1,516 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESShaderCompiler
+//
+//    Asynchronous program compilation.  compile() queues a program and
+//    returns a handle immediately.  The compile and link commands are
+//    issued either on a worker thread that owns an EGL context shared with
+//    the renderer, or on the GL thread a few programs per frame from
+//    runFrame().  Compile and link status is not queried until the handle
+//    is first used, so issuing the work never waits on the driver.
+//
+
+package com.openglesbook.common;
+
+import java.util.LinkedList;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+public class ESShaderCompiler {
+	//
+	///
+	/// \brief GL entry points used by the compiler, so that a test double
+	/// can record the order of calls
+	//
+	public interface GL {
+		public int createShader(int type);
+
+		public void shaderSource(int shader, String source);
+
+		public void compileShader(int shader);
+
+		public int getShaderStatus(int shader);
+
+		public String getShaderInfoLog(int shader);
+
+		public void deleteShader(int shader);
+
+		public int createProgram();
+
+		public void attachShader(int program, int shader);
+
+		public void linkProgram(int program);
+
+		public int getLinkStatus(int program);
+
+		public String getProgramInfoLog(int program);
+
+		public void deleteProgram(int program);
+
+		public void finish();
+	}
+
+	//
+	///
+	/// \brief A program that may still be compiling
+	//
+	public class ProgramHandle {
+		//
+		///
+		/// \brief Whether the compile and link commands have been issued and,
+		/// on the worker, completed.  get() will not block once this is true.
+		//
+		public boolean isReady() {
+			synchronized (ESShaderCompiler.this) {
+				return mState == STATE_ISSUED || mState == STATE_RESOLVED;
+			}
+		}
+
+		//
+		///
+		/// \brief Return the linked program, 0 if it failed to compile or
+		/// link.  Must be called on the GL thread.  The first call queries
+		/// the compile and link status; a program that has not been issued
+		/// yet is compiled right away.
+		//
+		public int get() {
+			boolean compileHere = false;
+
+			synchronized (ESShaderCompiler.this) {
+				if (mState == STATE_RESOLVED)
+					return mProgram;
+
+				if (mState == STATE_QUEUED) {
+					mQueue.remove(this);
+					mState = STATE_ISSUING;
+					compileHere = true;
+				} else {
+					while (mState == STATE_ISSUING) {
+						try {
+							ESShaderCompiler.this.wait();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							return 0;
+						}
+					}
+				}
+			}
+
+			if (compileHere)
+				issue(this);
+
+			resolve(this);
+			return mProgram;
+		}
+
+		public String getVertexSource() {
+			return mVertSrc;
+		}
+
+		public String getFragmentSource() {
+			return mFragSrc;
+		}
+
+		private ProgramHandle(String vertSrc, String fragSrc) {
+			mVertSrc = vertSrc;
+			mFragSrc = fragSrc;
+		}
+
+		private final String mVertSrc;
+		private final String mFragSrc;
+		private int mState = STATE_QUEUED;
+		private int mVertexShader;
+		private int mFragmentShader;
+		private int mProgram;
+	}
+
+	public ESShaderCompiler() {
+		this(new GLES20GL());
+	}
+
+	public ESShaderCompiler(GL gl) {
+		mGL = gl;
+	}
+
+	//
+	///
+	/// \brief Queue a program for compilation.  May be called from any
+	/// thread.
+	//
+	public synchronized ProgramHandle compile(String vertShaderSrc,
+			String fragShaderSrc) {
+		ProgramHandle handle = new ProgramHandle(vertShaderSrc, fragShaderSrc);
+
+		mQueue.addLast(handle);
+		notifyAll();
+		return handle;
+	}
+
+	//
+	///
+	/// \brief Limit the work runFrame() issues per call
+	/// \param maxPrograms Maximum programs issued per frame
+	/// \param maxNanos Stop issuing once this much time has been spent,
+	/// at least one program is always issued
+	//
+	public void setFrameBudget(int maxPrograms, long maxNanos) {
+		mFrameMaxPrograms = maxPrograms;
+		mFrameMaxNanos = maxNanos;
+	}
+
+	//
+	///
+	/// \brief Issue queued programs on the GL thread within the frame
+	/// budget.  Does nothing while a worker is running.
+	/// \return Number of programs issued
+	//
+	public int runFrame() {
+		if (mWorker != null)
+			return 0;
+
+		long start = System.nanoTime();
+		int issued = 0;
+
+		while (issued < mFrameMaxPrograms) {
+			ProgramHandle handle = takeNext(false);
+
+			if (handle == null)
+				break;
+
+			issue(handle);
+			issued++;
+
+			if (System.nanoTime() - start >= mFrameMaxNanos)
+				break;
+		}
+
+		return issued;
+	}
+
+	//
+	///
+	/// \brief Start a worker thread with an EGL context shared with the
+	/// context current on the calling thread.  Call on the GL thread, for
+	/// example from onSurfaceCreated().
+	/// \return false if no shared context could be created, in which case
+	/// programs are issued from runFrame()
+	//
+	public boolean startWorker() {
+		if (mWorker != null)
+			return true;
+
+		SharedContextWorker worker = new SharedContextWorker();
+
+		if (!worker.createContext()) {
+			Log.w(TAG, "Shared context unavailable, compiling on GL thread");
+			return false;
+		}
+
+		mWorker = worker;
+		worker.start();
+		return true;
+	}
+
+	//
+	///
+	/// \brief Stop the worker.  Programs it has not issued stay queued for
+	/// runFrame() or get().
+	//
+	public void shutdown() {
+		SharedContextWorker worker;
+
+		synchronized (this) {
+			worker = mWorker;
+			mWorker = null;
+			mShutdown = true;
+			notifyAll();
+		}
+
+		if (worker != null) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		synchronized (this) {
+			mShutdown = false;
+		}
+	}
+
+	public synchronized int getQueuedCount() {
+		return mQueue.size();
+	}
+
+	//
+	// Take the next queued program and mark it as being issued.  The worker
+	// waits for work, the GL thread does not.
+	//
+	private synchronized ProgramHandle takeNext(boolean wait) {
+		while (true) {
+			if (wait && mShutdown)
+				return null;
+			if (!mQueue.isEmpty())
+				break;
+			if (!wait)
+				return null;
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				return null;
+			}
+		}
+
+		ProgramHandle handle = mQueue.removeFirst();
+		handle.mState = STATE_ISSUING;
+		return handle;
+	}
+
+	//
+	// Issue the compile and link commands without querying any status
+	//
+	private void issue(ProgramHandle handle) {
+		int vertexShader = mGL.createShader(GLES20.GL_VERTEX_SHADER);
+		int fragmentShader = mGL.createShader(GLES20.GL_FRAGMENT_SHADER);
+		int program = mGL.createProgram();
+
+		if (vertexShader != 0 && fragmentShader != 0 && program != 0) {
+			mGL.shaderSource(vertexShader, handle.mVertSrc);
+			mGL.compileShader(vertexShader);
+			mGL.shaderSource(fragmentShader, handle.mFragSrc);
+			mGL.compileShader(fragmentShader);
+
+			mGL.attachShader(program, vertexShader);
+			mGL.attachShader(program, fragmentShader);
+			mGL.linkProgram(program);
+		}
+
+		// Objects created on the worker must be complete before another
+		// context uses them
+		if (Thread.currentThread() instanceof SharedContextWorker)
+			mGL.finish();
+
+		synchronized (this) {
+			handle.mVertexShader = vertexShader;
+			handle.mFragmentShader = fragmentShader;
+			handle.mProgram = program;
+			handle.mState = STATE_ISSUED;
+			notifyAll();
+		}
+	}
+
+	//
+	// Query the compile and link status on first use
+	//
+	private void resolve(ProgramHandle handle) {
+		synchronized (this) {
+			if (handle.mState == STATE_RESOLVED)
+				return;
+		}
+
+		int program = handle.mProgram;
+
+		if (program != 0 && mGL.getLinkStatus(program) == 0) {
+			if (handle.mVertexShader != 0
+					&& mGL.getShaderStatus(handle.mVertexShader) == 0)
+				Log.e(TAG, mGL.getShaderInfoLog(handle.mVertexShader));
+			if (handle.mFragmentShader != 0
+					&& mGL.getShaderStatus(handle.mFragmentShader) == 0)
+				Log.e(TAG, mGL.getShaderInfoLog(handle.mFragmentShader));
+			Log.e(TAG, "Error linking program:");
+			Log.e(TAG, mGL.getProgramInfoLog(program));
+
+			mGL.deleteProgram(program);
+			program = 0;
+		} else if (program == 0) {
+			Log.e(TAG, "Failed to create program objects");
+		}
+
+		// Free up no longer needed shader resources
+		if (handle.mVertexShader != 0)
+			mGL.deleteShader(handle.mVertexShader);
+		if (handle.mFragmentShader != 0)
+			mGL.deleteShader(handle.mFragmentShader);
+
+		synchronized (this) {
+			handle.mVertexShader = 0;
+			handle.mFragmentShader = 0;
+			handle.mProgram = program;
+			handle.mState = STATE_RESOLVED;
+		}
+	}
+
+	//
+	// Worker thread with a pbuffer surface and a context sharing objects
+	// with the renderer's context
+	//
+	private class SharedContextWorker extends Thread {
+		SharedContextWorker() {
+			super("ESShaderCompiler");
+			setDaemon(true);
+		}
+
+		boolean createContext() {
+			mEgl = (EGL10) EGLContext.getEGL();
+			mDisplay = mEgl.eglGetCurrentDisplay();
+			EGLContext sharedContext = mEgl.eglGetCurrentContext();
+
+			if (mDisplay == EGL10.EGL_NO_DISPLAY
+					|| sharedContext == EGL10.EGL_NO_CONTEXT)
+				return false;
+
+			int[] configAttribs = { EGL10.EGL_RENDERABLE_TYPE,
+					EGL_OPENGL_ES2_BIT, EGL10.EGL_SURFACE_TYPE,
+					EGL10.EGL_PBUFFER_BIT, EGL10.EGL_NONE };
+			EGLConfig[] configs = new EGLConfig[1];
+			int[] numConfigs = new int[1];
+
+			if (!mEgl.eglChooseConfig(mDisplay, configAttribs, configs, 1,
+					numConfigs) || numConfigs[0] == 0)
+				return false;
+
+			int[] contextAttribs = { EGL_CONTEXT_CLIENT_VERSION, 2,
+					EGL10.EGL_NONE };
+			mContext = mEgl.eglCreateContext(mDisplay, configs[0],
+					sharedContext, contextAttribs);
+
+			if (mContext == null || mContext == EGL10.EGL_NO_CONTEXT)
+				return false;
+
+			int[] surfaceAttribs = { EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1,
+					EGL10.EGL_NONE };
+			mSurface = mEgl.eglCreatePbufferSurface(mDisplay, configs[0],
+					surfaceAttribs);
+
+			if (mSurface == null || mSurface == EGL10.EGL_NO_SURFACE) {
+				mEgl.eglDestroyContext(mDisplay, mContext);
+				return false;
+			}
+			return true;
+		}
+
+		public void run() {
+			if (!mEgl.eglMakeCurrent(mDisplay, mSurface, mSurface, mContext)) {
+				Log.e(TAG, "eglMakeCurrent failed: " + mEgl.eglGetError());
+				synchronized (ESShaderCompiler.this) {
+					if (mWorker == this)
+						mWorker = null;
+				}
+			} else {
+				ProgramHandle handle;
+
+				while ((handle = takeNext(true)) != null)
+					issue(handle);
+
+				mEgl.eglMakeCurrent(mDisplay, EGL10.EGL_NO_SURFACE,
+						EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+			}
+
+			mEgl.eglDestroySurface(mDisplay, mSurface);
+			mEgl.eglDestroyContext(mDisplay, mContext);
+		}
+
+		private EGL10 mEgl;
+		private EGLDisplay mDisplay;
+		private EGLContext mContext;
+		private EGLSurface mSurface;
+	}
+
+	//
+	///
+	/// \brief GL implementation calling GLES20 on the current thread's
+	/// context
+	//
+	public static class GLES20GL implements GL {
+		public int createShader(int type) {
+			return GLES20.glCreateShader(type);
+		}
+
+		public void shaderSource(int shader, String source) {
+			GLES20.glShaderSource(shader, source);
+		}
+
+		public void compileShader(int shader) {
+			GLES20.glCompileShader(shader);
+		}
+
+		public int getShaderStatus(int shader) {
+			int[] compiled = new int[1];
+			GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+			return compiled[0];
+		}
+
+		public String getShaderInfoLog(int shader) {
+			return GLES20.glGetShaderInfoLog(shader);
+		}
+
+		public void deleteShader(int shader) {
+			GLES20.glDeleteShader(shader);
+		}
+
+		public int createProgram() {
+			return GLES20.glCreateProgram();
+		}
+
+		public void attachShader(int program, int shader) {
+			GLES20.glAttachShader(program, shader);
+		}
+
+		public void linkProgram(int program) {
+			GLES20.glLinkProgram(program);
+		}
+
+		public int getLinkStatus(int program) {
+			int[] linked = new int[1];
+			GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linked, 0);
+			return linked[0];
+		}
+
+		public String getProgramInfoLog(int program) {
+			return GLES20.glGetProgramInfoLog(program);
+		}
+
+		public void deleteProgram(int program) {
+			GLES20.glDeleteProgram(program);
+		}
+
+		public void finish() {
+			GLES20.glFinish();
+		}
+	}
+
+	private static final String TAG = "ESShaderCompiler";
+
+	private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+	private static final int EGL_OPENGL_ES2_BIT = 4;
+
+	// Handle states
+	private static final int STATE_QUEUED = 0;
+	private static final int STATE_ISSUING = 1;
+	private static final int STATE_ISSUED = 2;
+	private static final int STATE_RESOLVED = 3;
+
+	// Member variables
+	private final GL mGL;
+	private final LinkedList<ProgramHandle> mQueue = new LinkedList<ProgramHandle>();
+	private volatile SharedContextWorker mWorker;
+	private boolean mShutdown;
+	private int mFrameMaxPrograms = 2;
+	private long mFrameMaxNanos = 4000000;
+}
@@ -0,0 +1,370 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESShaderVariants
+//
+//    Builds specialized programs from one vertex/fragment source pair and a
+//    set of #define feature flags.  Variants are keyed by the sorted flag
+//    list and compiled only the first time they are requested.  A flag is
+//    only defined in a shader stage that mentions it, so variants that
+//    differ in flags one stage ignores share that stage's shader object,
+//    and variants whose sources end up identical share one program.
+//
+
+package com.openglesbook.common;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+public class ESShaderVariants {
+	//
+	///
+	/// \brief Create a variant set
+	/// \param vertShaderSrc Vertex shader source, using #ifdef/#if on the
+	/// feature flags
+	/// \param fragShaderSrc Fragment shader source
+	//
+	public ESShaderVariants(String vertShaderSrc, String fragShaderSrc) {
+		mVertShaderSrc = vertShaderSrc;
+		mFragShaderSrc = fragShaderSrc;
+	}
+
+	//
+	///
+	/// \brief Return the program for a set of feature flags, compiling it
+	/// on first use.  Must be called on the GL thread.
+	/// \param defines Flags of the form "NAME" or "NAME=VALUE", in any order
+	/// \return The linked program object, 0 if the variant failed to build
+	//
+	public int getProgram(String... defines) {
+		String key = canonicalKey(defines);
+		Integer program = mPrograms.get(key);
+
+		if (program != null)
+			return program.intValue();
+
+		String[] sorted = key.length() == 0 ? new String[0] : key.split(" ");
+		String vertSrc = preprocess(mVertShaderSrc, sorted, true);
+		String fragSrc = preprocess(mFragShaderSrc, sorted, true);
+		int vertexShader = getShader(GLES20.GL_VERTEX_SHADER, vertSrc);
+		int fragmentShader = getShader(GLES20.GL_FRAGMENT_SHADER, fragSrc);
+		int programObject = 0;
+
+		if (vertexShader != 0 && fragmentShader != 0) {
+			String pair = vertexShader + "," + fragmentShader;
+			Integer linked = mLinked.get(pair);
+
+			if (linked != null) {
+				programObject = linked.intValue();
+			} else {
+				programObject = link(vertexShader, fragmentShader);
+				mLinked.put(pair, Integer.valueOf(programObject));
+			}
+		}
+
+		if (programObject == 0)
+			Log.e(TAG, "Variant \"" + key + "\" failed to build");
+
+		mPrograms.put(key, Integer.valueOf(programObject));
+		return programObject;
+	}
+
+	//
+	///
+	/// \brief Number of distinct flag sets requested so far
+	//
+	public int getVariantCount() {
+		return mPrograms.size();
+	}
+
+	//
+	///
+	/// \brief Number of program objects actually linked
+	//
+	public int getProgramCount() {
+		return mLinked.size();
+	}
+
+	//
+	///
+	/// \brief Number of shader objects actually compiled
+	//
+	public int getShaderCount() {
+		return mShaders.size();
+	}
+
+	//
+	///
+	/// \brief Delete all programs and shaders.  Must be called on the GL
+	/// thread while its context is current.
+	//
+	public void release() {
+		Iterator<Integer> it = mLinked.values().iterator();
+
+		while (it.hasNext()) {
+			int program = it.next().intValue();
+			if (program != 0)
+				GLES20.glDeleteProgram(program);
+		}
+
+		it = mShaders.values().iterator();
+
+		while (it.hasNext()) {
+			int shader = it.next().intValue();
+			if (shader != 0)
+				GLES20.glDeleteShader(shader);
+		}
+
+		mPrograms.clear();
+		mLinked.clear();
+		mShaders.clear();
+	}
+
+	//
+	///
+	/// \brief Forget every program and shader without deleting them, after
+	/// the context that owned them has been lost.  Call from
+	/// onSurfaceCreated(); variants are rebuilt in the new context when
+	/// next requested, including ones that failed to build before.
+	//
+	public void invalidate() {
+		mPrograms.clear();
+		mLinked.clear();
+		mShaders.clear();
+	}
+
+	//
+	///
+	/// \brief Put a flag set in canonical form: duplicates removed, sorted by
+	/// name, space separated.  The same flags in any order give the same key.
+	/// \throws IllegalArgumentException if a flag is malformed or one name
+	/// is given two different values
+	//
+	public static String canonicalKey(String... defines) {
+		if (defines == null || defines.length == 0)
+			return "";
+
+		String[] sorted = new String[defines.length];
+		int count = 0;
+
+		for (int i = 0; i < defines.length; i++) {
+			String define = defines[i] == null ? "" : defines[i].trim();
+
+			if (!isValidDefine(define))
+				throw new IllegalArgumentException("Invalid define \""
+						+ defines[i] + "\"");
+
+			sorted[count++] = define;
+		}
+
+		Arrays.sort(sorted, 0, count, BY_NAME);
+
+		StringBuilder key = new StringBuilder();
+		String previous = null;
+
+		for (int i = 0; i < count; i++) {
+			if (sorted[i].equals(previous))
+				continue;
+
+			if (previous != null
+					&& defineName(sorted[i]).equals(defineName(previous)))
+				throw new IllegalArgumentException("Conflicting defines \""
+						+ previous + "\" and \"" + sorted[i] + "\"");
+
+			if (key.length() > 0)
+				key.append(' ');
+			key.append(sorted[i]);
+			previous = sorted[i];
+		}
+
+		return key.toString();
+	}
+
+	//
+	///
+	/// \brief Insert #define lines into a shader source.  They go after the
+	/// #version directive if there is one, since it must come first.
+	/// \param src Shader source
+	/// \param defines Flags of the form "NAME" or "NAME=VALUE"
+	/// \param onlyReferenced Skip flags whose name does not appear in src
+	/// \return The preprocessed source
+	//
+	public static String preprocess(String src, String[] defines,
+			boolean onlyReferenced) {
+		StringBuilder header = new StringBuilder();
+
+		for (int i = 0; i < defines.length; i++) {
+			String name = defineName(defines[i]);
+
+			if (onlyReferenced && !containsIdentifier(src, name))
+				continue;
+
+			header.append("#define ").append(name);
+
+			if (name.length() < defines[i].length())
+				header.append(' ').append(
+						defines[i].substring(name.length() + 1));
+
+			header.append('\n');
+		}
+
+		if (header.length() == 0)
+			return src;
+
+		int insertAt = versionLineEnd(src);
+
+		return src.substring(0, insertAt) + header + src.substring(insertAt);
+	}
+
+	//
+	// Look up or compile a shader for one stage.  Failures are remembered
+	// so that a broken variant is not recompiled every frame.
+	//
+	private int getShader(int type, String src) {
+		String key = type + "\u0000" + src;
+		Integer shader = mShaders.get(key);
+
+		if (shader == null) {
+			shader = Integer.valueOf(ESShader.loadShader(type, src));
+			mShaders.put(key, shader);
+		}
+
+		return shader.intValue();
+	}
+
+	//
+	// Link a program from shaders that stay owned by the variant set
+	//
+	private static int link(int vertexShader, int fragmentShader) {
+		int[] linked = new int[1];
+		int programObject = GLES20.glCreateProgram();
+
+		if (programObject == 0)
+			return 0;
+
+		GLES20.glAttachShader(programObject, vertexShader);
+		GLES20.glAttachShader(programObject, fragmentShader);
+		GLES20.glLinkProgram(programObject);
+		GLES20.glGetProgramiv(programObject, GLES20.GL_LINK_STATUS, linked, 0);
+
+		if (linked[0] == 0) {
+			Log.e(TAG, "Error linking program:");
+			Log.e(TAG, GLES20.glGetProgramInfoLog(programObject));
+			GLES20.glDeleteProgram(programObject);
+			return 0;
+		}
+
+		return programObject;
+	}
+
+	private static String defineName(String define) {
+		int equals = define.indexOf('=');
+		return equals < 0 ? define : define.substring(0, equals);
+	}
+
+	private static boolean isValidDefine(String define) {
+		String name = defineName(define);
+
+		if (name.length() == 0 || !isIdentifierStart(name.charAt(0)))
+			return false;
+
+		for (int i = 1; i < name.length(); i++) {
+			if (!isIdentifierPart(name.charAt(i)))
+				return false;
+		}
+
+		// The value may not span lines or contain the key separator
+		for (int i = name.length(); i < define.length(); i++) {
+			char c = define.charAt(i);
+			if (c == '\n' || c == '\r' || c == ' ' || c == '\t')
+				return false;
+		}
+
+		return true;
+	}
+
+	//
+	// Whether name occurs in src as a whole identifier
+	//
+	private static boolean containsIdentifier(String src, String name) {
+		int from = 0;
+
+		while (true) {
+			int at = src.indexOf(name, from);
+
+			if (at < 0)
+				return false;
+
+			int end = at + name.length();
+
+			if ((at == 0 || !isIdentifierPart(src.charAt(at - 1)))
+					&& (end == src.length() || !isIdentifierPart(src
+							.charAt(end))))
+				return true;
+
+			from = at + 1;
+		}
+	}
+
+	//
+	// Offset just past the #version line, or 0 if there is none
+	//
+	private static int versionLineEnd(String src) {
+		int i = 0;
+		int length = src.length();
+
+		while (i < length && Character.isWhitespace(src.charAt(i)))
+			i++;
+
+		if (!src.startsWith("#version", i))
+			return 0;
+
+		int newline = src.indexOf('\n', i);
+
+		return newline < 0 ? length : newline + 1;
+	}
+
+	private static boolean isIdentifierStart(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return isIdentifierStart(c) || (c >= '0' && c <= '9');
+	}
+
+	private static final String TAG = "ESShaderVariants";
+
+	// Orders flags by name, then by value, so that two values given for one
+	// name end up next to each other
+	private static final Comparator<String> BY_NAME = new Comparator<String>() {
+		public int compare(String a, String b) {
+			int order = defineName(a).compareTo(defineName(b));
+			return order != 0 ? order : a.compareTo(b);
+		}
+	};
+
+	// Member variables
+	private final String mVertShaderSrc;
+	private final String mFragShaderSrc;
+
+	// Canonical flag key to program
+	private final HashMap<String, Integer> mPrograms = new HashMap<String, Integer>();
+
+	// "vertexShader,fragmentShader" to program
+	private final HashMap<String, Integer> mLinked = new HashMap<String, Integer>();
+
+	// Stage type and preprocessed source to shader
+	private final HashMap<String, Integer> mShaders = new HashMap<String, Integer>();
+}
@@ -16,21 +16,50 @@
 package com.openglesbook.common;
 
 import java.lang.Math;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 
 public class ESShapes {
 
+	// Index types, same values as GL_UNSIGNED_SHORT and GL_UNSIGNED_INT.
+	// 32-bit indices need the OES_element_index_uint extension on
+	// OpenGL ES 2.0.
+	public static final int INDEX_TYPE_UNSIGNED_SHORT = 0x1403;
+	public static final int INDEX_TYPE_UNSIGNED_INT = 0x1405;
+
+	// Largest vertex count that can be addressed with 16-bit indices
+	public static final int MAX_SHORT_INDEX_VERTICES = 65536;
+
+	// Approximate number of sphere vertices generated per worker task
+	private static final int SPHERE_VERTICES_PER_TASK = 16 * 1024;
+
+	// Vertices copied per block when interleaving
+	private static final int INTERLEAVE_BLOCK_VERTICES = 1024;
+
 	public int genSphere(int numSlices, float radius) {
 		int i;
-		int j;
 		int numParallels = numSlices;
-		int numVertices = (numParallels + 1) * (numSlices + 1);
-		int numIndices = numParallels * numSlices * 6;
+		long numVerticesL = (long) (numParallels + 1) * (numSlices + 1);
+		long numIndicesL = (long) numParallels * numSlices * 6;
+		boolean useIntIndices = numVerticesL > MAX_SHORT_INDEX_VERTICES;
 		float angleStep = ((2.0f * (float) Math.PI) / numSlices);
 
+		if (numSlices <= 0)
+			throw new IllegalArgumentException("numSlices must be positive");
+
+		// Direct buffers are addressed with an int byte count
+		if (numVerticesL * 3 * 4 > Integer.MAX_VALUE
+				|| numIndicesL * (useIntIndices ? 4 : 2) > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Sphere with " + numSlices
+					+ " slices is too large");
+
+		int numVertices = (int) numVerticesL;
+		int numIndices = (int) numIndicesL;
+
 		// Allocate memory for buffers
 		mVertices = ByteBuffer.allocateDirect(numVertices * 3 * 4)
 				.order(ByteOrder.nativeOrder()).asFloatBuffer();
@@ -38,58 +67,137 @@ public class ESShapes {
 				.order(ByteOrder.nativeOrder()).asFloatBuffer();
 		mTexCoords = ByteBuffer.allocateDirect(numVertices * 2 * 4)
 				.order(ByteOrder.nativeOrder()).asFloatBuffer();
-		mIndices = ByteBuffer.allocateDirect(numIndices * 2)
-				.order(ByteOrder.nativeOrder()).asShortBuffer();
-
-		for (i = 0; i < numParallels + 1; i++) {
-			for (j = 0; j < numSlices + 1; j++) {
-				int vertex = (i * (numSlices + 1) + j) * 3;
-
-				mVertices
-						.put(vertex + 0,
-								(float) (radius
-										* Math.sin(angleStep * (float) i) * Math
-										.sin(angleStep * (float) j)));
-
-				mVertices.put(vertex + 1,
-						(float) (radius * Math.cos(angleStep * (float) i)));
-				mVertices
-						.put(vertex + 2,
-								(float) (radius
-										* Math.sin(angleStep * (float) i) * Math
-										.cos(angleStep * (float) j)));
-
-				mNormals.put(vertex + 0, mVertices.get(vertex + 0) / radius);
-				mNormals.put(vertex + 1, mVertices.get(vertex + 1) / radius);
-				mNormals.put(vertex + 2, mVertices.get(vertex + 2) / radius);
-
-				int texIndex = (i * (numSlices + 1) + j) * 2;
-				mTexCoords.put(texIndex + 0, (float) j / (float) numSlices);
-				mTexCoords.put(texIndex + 1, (1.0f - (float) i)
-						/ (float) (numParallels - 1));
-			}
+		allocateIndices(numIndices, useIntIndices);
+
+		// Rings and slices use the same angle step, so one table of
+		// sin/cos values serves both.  The angles are computed exactly as
+		// Math.sin(angleStep * (float) i) so the output does not change.
+		final double[] sinTable = new double[numSlices + 1];
+		final double[] cosTable = new double[numSlices + 1];
+		for (i = 0; i < numSlices + 1; i++) {
+			sinTable[i] = Math.sin(angleStep * (float) i);
+			cosTable[i] = Math.cos(angleStep * (float) i);
 		}
 
-		int index = 0;
-		for (i = 0; i < numParallels; i++) {
-			for (j = 0; j < numSlices; j++) {
-				mIndices.put(index++, (short) (i * (numSlices + 1) + j));
-				mIndices.put(index++, (short) ((i + 1) * (numSlices + 1) + j));
-				mIndices.put(index++,
-						(short) ((i + 1) * (numSlices + 1) + (j + 1)));
+		// Fill the buffers a band of rings at a time
+		final int slices = numSlices;
+		final float r = radius;
+		final boolean intIndices = useIntIndices;
+		int grain = Math.max(1, SPHERE_VERTICES_PER_TASK / (numSlices + 1));
 
-				mIndices.put(index++, (short) (i * (numSlices + 1) + j));
-				mIndices.put(index++,
-						(short) ((i + 1) * (numSlices + 1) + (j + 1)));
-				mIndices.put(index++, (short) (i * (numSlices + 1) + (j + 1)));
+		ESParallel.forRange(0, numParallels + 1, grain,
+				new ESParallel.RangeTask() {
+					public void run(int start, int end) {
+						genSphereRings(start, end, slices, r, sinTable,
+								cosTable);
+					}
+				});
+
+		ESParallel.forRange(0, numParallels, grain,
+				new ESParallel.RangeTask() {
+					public void run(int start, int end) {
+						genSphereIndices(start, end, slices, intIndices);
+					}
+				});
 
-			}
-		}
 		mNumIndices = numIndices;
 
+		finishVertices(numVertices);
 		return numIndices;
 	}
 
+	//
+	// Generate position, normal and texture coordinate data for rings
+	// [startRing, endRing) of a sphere
+	//
+	private void genSphereRings(int startRing, int endRing, int numSlices,
+			float radius, double[] sinTable, double[] cosTable) {
+		int numParallels = numSlices;
+		int rowVertices = numSlices + 1;
+		float[] vertices = new float[rowVertices * 3];
+		float[] normals = new float[rowVertices * 3];
+		float[] texCoords = new float[rowVertices * 2];
+		FloatBuffer vertexBuffer = mVertices.duplicate();
+		FloatBuffer normalBuffer = mNormals.duplicate();
+		FloatBuffer texCoordBuffer = mTexCoords.duplicate();
+
+		for (int i = startRing; i < endRing; i++) {
+			double sinRing = sinTable[i];
+			float y = (float) (radius * cosTable[i]);
+			float t = (1.0f - (float) i) / (float) (numParallels - 1);
+
+			for (int j = 0; j < rowVertices; j++) {
+				float x = (float) (radius * sinRing * sinTable[j]);
+				float z = (float) (radius * sinRing * cosTable[j]);
+
+				vertices[j * 3 + 0] = x;
+				vertices[j * 3 + 1] = y;
+				vertices[j * 3 + 2] = z;
+
+				normals[j * 3 + 0] = x / radius;
+				normals[j * 3 + 1] = y / radius;
+				normals[j * 3 + 2] = z / radius;
+
+				texCoords[j * 2 + 0] = (float) j / (float) numSlices;
+				texCoords[j * 2 + 1] = t;
+			}
+
+			vertexBuffer.position(i * rowVertices * 3);
+			vertexBuffer.put(vertices);
+			normalBuffer.position(i * rowVertices * 3);
+			normalBuffer.put(normals);
+			texCoordBuffer.position(i * rowVertices * 2);
+			texCoordBuffer.put(texCoords);
+		}
+	}
+
+	//
+	// Generate the indices for the quads between rings [startRing,
+	// endRing) and the ring after each of them
+	//
+	private void genSphereIndices(int startRing, int endRing, int numSlices,
+			boolean useIntIndices) {
+		int rowVertices = numSlices + 1;
+
+		if (useIntIndices) {
+			int[] row = new int[numSlices * 6];
+			IntBuffer indexBuffer = mIntIndices.duplicate();
+
+			for (int i = startRing; i < endRing; i++) {
+				int index = 0;
+				for (int j = 0; j < numSlices; j++) {
+					row[index++] = i * rowVertices + j;
+					row[index++] = (i + 1) * rowVertices + j;
+					row[index++] = (i + 1) * rowVertices + (j + 1);
+
+					row[index++] = i * rowVertices + j;
+					row[index++] = (i + 1) * rowVertices + (j + 1);
+					row[index++] = i * rowVertices + (j + 1);
+				}
+				indexBuffer.position(i * numSlices * 6);
+				indexBuffer.put(row);
+			}
+		} else {
+			short[] row = new short[numSlices * 6];
+			ShortBuffer indexBuffer = mIndices.duplicate();
+
+			for (int i = startRing; i < endRing; i++) {
+				int index = 0;
+				for (int j = 0; j < numSlices; j++) {
+					row[index++] = (short) (i * rowVertices + j);
+					row[index++] = (short) ((i + 1) * rowVertices + j);
+					row[index++] = (short) ((i + 1) * rowVertices + (j + 1));
+
+					row[index++] = (short) (i * rowVertices + j);
+					row[index++] = (short) ((i + 1) * rowVertices + (j + 1));
+					row[index++] = (short) (i * rowVertices + (j + 1));
+				}
+				indexBuffer.position(i * numSlices * 6);
+				indexBuffer.put(row);
+			}
+		}
+	}
+
 	public int genCube(float scale) {
 		int i;
 		int numVertices = 24;
@@ -126,8 +234,7 @@ public class ESShapes {
 				.order(ByteOrder.nativeOrder()).asFloatBuffer();
 		mTexCoords = ByteBuffer.allocateDirect(numVertices * 2 * 4)
 				.order(ByteOrder.nativeOrder()).asFloatBuffer();
-		mIndices = ByteBuffer.allocateDirect(numIndices * 2)
-				.order(ByteOrder.nativeOrder()).asShortBuffer();
+		allocateIndices(numIndices, false);
 
 		mVertices.put(cubeVerts).position(0);
 		for (i = 0; i < numVertices * 3; i++) {
@@ -143,9 +250,45 @@ public class ESShapes {
 
 		mIndices.put(cubeIndices).position(0);
 		mNumIndices = numIndices;
+
+		finishVertices(numVertices);
 		return numIndices;
 	}
 
+	//
+	///
+	/// \brief Select whether the generators emit a single interleaved vertex
+	/// buffer (see getInterleavedVertices()) instead of separate position,
+	/// normal and texture coordinate buffers.  Applies to the next call of
+	/// a gen function.
+	//
+	public void setInterleaved(boolean interleaved) {
+		mInterleaved = interleaved;
+	}
+
+	public boolean isInterleaved() {
+		return mInterleaved;
+	}
+
+	//
+	///
+	/// \brief Select whether the generators emit quantized attributes (see
+	/// ESVertexQuantizer).  Quantized output is always interleaved, with the
+	/// decode parameters stored on getVertexFormat().  Applies to the next
+	/// call of a gen function.
+	//
+	public void setQuantized(boolean quantized) {
+		mQuantized = quantized;
+	}
+
+	public boolean isQuantized() {
+		return mQuantized;
+	}
+
+	//
+	// Separate attribute buffers, null when the shape was generated
+	// interleaved
+	//
 	public FloatBuffer getVertices() {
 		return mVertices;
 	}
@@ -158,18 +301,184 @@ public class ESShapes {
 		return mTexCoords;
 	}
 
+	//
+	// 16-bit indices, null when getIndexType() is INDEX_TYPE_UNSIGNED_INT
+	//
 	public ShortBuffer getIndices() {
 		return mIndices;
 	}
 
+	//
+	// 32-bit indices, null when getIndexType() is INDEX_TYPE_UNSIGNED_SHORT
+	//
+	public IntBuffer getIntIndices() {
+		return mIntIndices;
+	}
+
+	//
+	// The index buffer in use, to be drawn with getIndexType()
+	//
+	public Buffer getIndexBuffer() {
+		if (mIndexType == INDEX_TYPE_UNSIGNED_INT)
+			return mIntIndices;
+		return mIndices;
+	}
+
+	public int getIndexType() {
+		return mIndexType;
+	}
+
 	public int getNumIndices() {
 		return mNumIndices;
 	}
 
+	//
+	// Interleaved vertex data described by getVertexFormat(), null unless
+	// the shape was generated with setInterleaved(true)
+	//
+	public ByteBuffer getInterleavedVertices() {
+		return mInterleavedVertices;
+	}
+
+	public ESVertexFormat getVertexFormat() {
+		return mVertexFormat;
+	}
+
+	//
+	// Round trip error and memory use of the quantized attributes, null
+	// unless the shape was generated with setQuantized(true)
+	//
+	public ESVertexQuantizer.Report getQuantizationReport() {
+		return mQuantizationReport;
+	}
+
+	//
+	// Called by each generator once the separate attribute buffers are
+	// filled.  Packs them into one interleaved buffer when requested.
+	//
+	private void finishVertices(int numVertices) {
+		mQuantizationReport = null;
+
+		if (mQuantized) {
+			ESVertexQuantizer quantizer = new ESVertexQuantizer();
+			ESVertexQuantizer.Report report = new ESVertexQuantizer.Report();
+
+			mInterleavedVertices = quantizer.quantize(mVertices, mNormals,
+					mTexCoords, numVertices, report);
+			mVertexFormat = quantizer.getFormat();
+			mQuantizationReport = report;
+
+			mVertices = null;
+			mNormals = null;
+			mTexCoords = null;
+			return;
+		}
+
+		if (!mInterleaved) {
+			mInterleavedVertices = null;
+			mVertexFormat = null;
+			return;
+		}
+
+		final ESVertexFormat format = new ESVertexFormat();
+		format.addAttribute(ESVertexFormat.POSITION, 3,
+				ESVertexFormat.TYPE_FLOAT, false);
+		format.addAttribute(ESVertexFormat.NORMAL, 3,
+				ESVertexFormat.TYPE_FLOAT, false);
+		format.addAttribute(ESVertexFormat.TEXCOORD, 2,
+				ESVertexFormat.TYPE_FLOAT, false);
+
+		if ((long) numVertices * format.getStride() > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many vertices to interleave");
+
+		final ByteBuffer interleaved = ByteBuffer.allocateDirect(
+				numVertices * format.getStride()).order(ByteOrder.nativeOrder());
+
+		ESParallel.forRange(0, numVertices, SPHERE_VERTICES_PER_TASK,
+				new ESParallel.RangeTask() {
+					public void run(int start, int end) {
+						interleave(start, end, format, interleaved);
+					}
+				});
+
+		mInterleavedVertices = interleaved;
+		mVertexFormat = format;
+
+		// Only the interleaved copy is kept
+		mVertices = null;
+		mNormals = null;
+		mTexCoords = null;
+	}
+
+	private void interleave(int start, int end, ESVertexFormat format,
+			ByteBuffer interleaved) {
+		int strideFloats = format.getStride() / 4;
+		int positionOffset = format.getOffset(ESVertexFormat.POSITION) / 4;
+		int normalOffset = format.getOffset(ESVertexFormat.NORMAL) / 4;
+		int texCoordOffset = format.getOffset(ESVertexFormat.TEXCOORD) / 4;
+		FloatBuffer dst = interleaved.asFloatBuffer();
+		int count = Math.min(end - start, INTERLEAVE_BLOCK_VERTICES);
+		float[] positions = new float[count * 3];
+		float[] normals = new float[count * 3];
+		float[] texCoords = new float[count * 2];
+		float[] block = new float[count * strideFloats];
+		FloatBuffer vertexBuffer = mVertices.duplicate();
+		FloatBuffer normalBuffer = mNormals.duplicate();
+		FloatBuffer texCoordBuffer = mTexCoords.duplicate();
+
+		for (int v = start; v < end; v += count) {
+			int n = Math.min(count, end - v);
+
+			vertexBuffer.position(v * 3);
+			vertexBuffer.get(positions, 0, n * 3);
+			normalBuffer.position(v * 3);
+			normalBuffer.get(normals, 0, n * 3);
+			texCoordBuffer.position(v * 2);
+			texCoordBuffer.get(texCoords, 0, n * 2);
+
+			for (int k = 0; k < n; k++) {
+				int base = k * strideFloats;
+
+				block[base + positionOffset + 0] = positions[k * 3 + 0];
+				block[base + positionOffset + 1] = positions[k * 3 + 1];
+				block[base + positionOffset + 2] = positions[k * 3 + 2];
+				block[base + normalOffset + 0] = normals[k * 3 + 0];
+				block[base + normalOffset + 1] = normals[k * 3 + 1];
+				block[base + normalOffset + 2] = normals[k * 3 + 2];
+				block[base + texCoordOffset + 0] = texCoords[k * 2 + 0];
+				block[base + texCoordOffset + 1] = texCoords[k * 2 + 1];
+			}
+
+			dst.position(v * strideFloats);
+			dst.put(block, 0, n * strideFloats);
+		}
+	}
+
+	private void allocateIndices(int numIndices, boolean useIntIndices) {
+		if (useIntIndices) {
+			mIntIndices = ByteBuffer.allocateDirect(numIndices * 4)
+					.order(ByteOrder.nativeOrder()).asIntBuffer();
+			mIndices = null;
+			mIndexType = INDEX_TYPE_UNSIGNED_INT;
+		} else {
+			mIndices = ByteBuffer.allocateDirect(numIndices * 2)
+					.order(ByteOrder.nativeOrder()).asShortBuffer();
+			mIntIndices = null;
+			mIndexType = INDEX_TYPE_UNSIGNED_SHORT;
+		}
+	}
+
 	// Member variables
 	private FloatBuffer mVertices;
 	private FloatBuffer mNormals;
 	private FloatBuffer mTexCoords;
 	private ShortBuffer mIndices;
+	private IntBuffer mIntIndices;
+	private int mIndexType = INDEX_TYPE_UNSIGNED_SHORT;
 	private int mNumIndices;
+	private boolean mInterleaved;
+	private boolean mQuantized;
+	private ESVertexQuantizer.Report mQuantizationReport;
+	private ByteBuffer mInterleavedVertices;
+	private ESVertexFormat mVertexFormat;
 }
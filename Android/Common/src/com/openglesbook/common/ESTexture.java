@@ -0,0 +1,268 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESTexture
+//
+//    Utility functions for loading 2D textures from images.  Pixels are
+//    read from the bitmap a band of rows at a time with getPixels() and
+//    converted straight into a staging buffer from ESBufferPool, so a load
+//    costs a handful of bulk copies instead of one call per texel.
+//
+
+package com.openglesbook.common;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.util.Log;
+
+public class ESTexture {
+	// Texel formats, same values as the GL enums
+	public static final int FORMAT_RGBA = GLES20.GL_RGBA;
+	public static final int FORMAT_RGB = GLES20.GL_RGB;
+	public static final int FORMAT_LUMINANCE = GLES20.GL_LUMINANCE;
+
+	//
+	///
+	/// \brief Decode an image and load it into a new 2D texture
+	/// \param is Stream holding an image BitmapFactory can decode
+	/// \param format FORMAT_RGBA, FORMAT_RGB or FORMAT_LUMINANCE
+	/// \param mipmaps Whether to generate the mipmap chain
+	/// \return A new texture object, 0 on failure
+	//
+	public static int loadTexture(InputStream is, int format, boolean mipmaps) {
+		Bitmap bitmap = BitmapFactory.decodeStream(is);
+
+		if (bitmap == null) {
+			Log.e(TAG, "Unable to decode texture image");
+			return 0;
+		}
+
+		int textureId = loadTexture(bitmap, format, mipmaps);
+		bitmap.recycle();
+		return textureId;
+	}
+
+	//
+	///
+	/// \brief Load a bitmap into a new 2D texture.  The texture uses linear
+	/// filtering and clamps to edge, like the textures in the samples.
+	/// \param bitmap Source image, not recycled
+	/// \param format FORMAT_RGBA, FORMAT_RGB or FORMAT_LUMINANCE
+	/// \param mipmaps Whether to generate the mipmap chain.  Ignored with a
+	/// warning for non power of two images, which OpenGL ES 2.0 cannot
+	/// mipmap.
+	/// \return A new texture object
+	//
+	public static int loadTexture(Bitmap bitmap, int format, boolean mipmaps) {
+		int width = bitmap.getWidth();
+		int height = bitmap.getHeight();
+		int[] textureId = new int[1];
+
+		if (mipmaps && (!isPowerOfTwo(width) || !isPowerOfTwo(height))) {
+			Log.w(TAG, "No mipmaps for non power of two texture " + width
+					+ "x" + height);
+			mipmaps = false;
+		}
+
+		GLES20.glGenTextures(1, textureId, 0);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId[0]);
+
+		// Rows are tightly packed in the staging buffer
+		GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+
+		ESBufferPool pool = ESBufferPool.getShared();
+		ByteBuffer pixels = pool.acquire(width * height
+				* getBytesPerPixel(format));
+
+		try {
+			decode(bitmap, format, pixels);
+			GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width,
+					height, 0, format, GLES20.GL_UNSIGNED_BYTE, pixels);
+		} finally {
+			pool.release(pixels);
+		}
+
+		GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+
+		if (mipmaps)
+			GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MIN_FILTER,
+				mipmaps ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+		return textureId[0];
+	}
+
+	//
+	///
+	/// \brief Load ETC1 compressed levels into a new 2D texture
+	/// \param levels Levels from ESETC1Encoder, largest first.  One level
+	/// gives a texture without mipmaps; otherwise the chain must be
+	/// complete.
+	/// \param width Width of the first level
+	/// \param height Height of the first level
+	/// \return A new texture object, 0 if ETC1 is not supported
+	//
+	public static int loadCompressedTexture(ByteBuffer[] levels, int width,
+			int height) {
+		if (!isETC1Supported()) {
+			Log.e(TAG, "ETC1 textures are not supported");
+			return 0;
+		}
+
+		int[] textureId = new int[1];
+		boolean mipmaps = levels.length > 1;
+
+		GLES20.glGenTextures(1, textureId, 0);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId[0]);
+
+		for (int level = 0; level < levels.length; level++) {
+			int levelWidth = Math.max(1, width >> level);
+			int levelHeight = Math.max(1, height >> level);
+
+			GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level,
+					ESETC1Encoder.GL_ETC1_RGB8_OES, levelWidth, levelHeight, 0,
+					ESETC1Encoder.getEncodedSize(levelWidth, levelHeight),
+					levels[level]);
+		}
+
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MIN_FILTER,
+				mipmaps ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+		return textureId[0];
+	}
+
+	//
+	///
+	/// \brief Whether the current context accepts ETC1 compressed textures
+	//
+	public static boolean isETC1Supported() {
+		String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+		return extensions != null
+				&& extensions.indexOf("GL_OES_compressed_ETC1_RGB8_texture") >= 0;
+	}
+
+	//
+	///
+	/// \brief Convert a bitmap into tightly packed texels
+	/// \param bitmap Source image
+	/// \param format FORMAT_RGBA, FORMAT_RGB or FORMAT_LUMINANCE
+	/// \param dst Destination with at least width * height * bytes per
+	/// pixel remaining, or null to allocate one
+	/// \return dst (or the new buffer), positioned at the first texel
+	//
+	public static ByteBuffer decode(Bitmap bitmap, int format, ByteBuffer dst) {
+		int width = bitmap.getWidth();
+		int height = bitmap.getHeight();
+		int bytesPerPixel = getBytesPerPixel(format);
+		int size = width * height * bytesPerPixel;
+
+		if (dst == null)
+			dst = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+		else if (dst.remaining() < size)
+			throw new IllegalArgumentException("Buffer too small for "
+					+ width + "x" + height + " image");
+
+		int start = dst.position();
+		int bandRows = Math.max(1, Math.min(height, BAND_PIXELS
+				/ Math.max(width, 1)));
+		int[] argb = new int[bandRows * width];
+		byte[] texels = new byte[bandRows * width * bytesPerPixel];
+
+		for (int y = 0; y < height; y += bandRows) {
+			int rows = Math.min(bandRows, height - y);
+			int count = rows * width;
+
+			bitmap.getPixels(argb, 0, width, 0, y, width, rows);
+			convert(argb, count, format, texels);
+			dst.put(texels, 0, count * bytesPerPixel);
+		}
+
+		dst.position(start);
+		return dst;
+	}
+
+	public static int getBytesPerPixel(int format) {
+		switch (format) {
+		case FORMAT_RGBA:
+			return 4;
+		case FORMAT_RGB:
+			return 3;
+		case FORMAT_LUMINANCE:
+			return 1;
+		default:
+			throw new IllegalArgumentException("Invalid format " + format);
+		}
+	}
+
+	//
+	// Convert packed ARGB pixels to texels of the requested format
+	//
+	private static void convert(int[] argb, int count, int format,
+			byte[] texels) {
+		switch (format) {
+		case FORMAT_RGBA:
+			for (int i = 0, j = 0; i < count; i++, j += 4) {
+				int pixel = argb[i];
+				texels[j + 0] = (byte) (pixel >> 16);
+				texels[j + 1] = (byte) (pixel >> 8);
+				texels[j + 2] = (byte) pixel;
+				texels[j + 3] = (byte) (pixel >>> 24);
+			}
+			break;
+
+		case FORMAT_RGB:
+			for (int i = 0, j = 0; i < count; i++, j += 3) {
+				int pixel = argb[i];
+				texels[j + 0] = (byte) (pixel >> 16);
+				texels[j + 1] = (byte) (pixel >> 8);
+				texels[j + 2] = (byte) pixel;
+			}
+			break;
+
+		case FORMAT_LUMINANCE:
+			// Rec. 601 weights in 8 bit fixed point
+			for (int i = 0; i < count; i++) {
+				int pixel = argb[i];
+				texels[i] = (byte) ((((pixel >> 16) & 0xFF) * 77
+						+ ((pixel >> 8) & 0xFF) * 150 + (pixel & 0xFF) * 29) >> 8);
+			}
+			break;
+		}
+	}
+
+	private static boolean isPowerOfTwo(int value) {
+		return value > 0 && (value & (value - 1)) == 0;
+	}
+
+	private static final String TAG = "ESTexture";
+
+	// Pixels fetched from the bitmap per getPixels() call
+	private static final int BAND_PIXELS = 64 * 1024;
+}
@@ -0,0 +1,512 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESTextureAtlas
+//
+//    Packs many small images into a few large pages so that meshes and
+//    sprites using different images can share one texture and be drawn
+//    together.  Images are placed tallest first with a skyline packer:
+//    each page keeps the height of the packed area across its width, and
+//    every image goes where its top ends lowest.
+//
+//    Each image is surrounded by a gutter of padding texels repeating its
+//    edge, so bilinear filtering never reads a neighbour.  Rectangles are
+//    also aligned to a power of two; with an alignment of 2^n and a
+//    padding of at least 2^n texels, images stay apart in the first n mip
+//    levels of a box filtered chain.
+//
+//    After build(), getUVTransform() gives the scale and offset mapping an
+//    image's 0..1 texture coordinates into its page, and remapTexCoords()
+//    applies it to vertex data.
+//
+
+package com.openglesbook.common;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import android.opengl.GLES20;
+
+public class ESTextureAtlas {
+	//
+	///
+	/// \brief Create an empty atlas
+	/// \param pageWidth Width of each page
+	/// \param pageHeight Height of each page
+	/// \param format ESTexture.FORMAT_RGBA, FORMAT_RGB or FORMAT_LUMINANCE
+	/// \param padding Gutter texels on each side of an image
+	/// \param alignment Power of two that image rectangles, gutters
+	/// included, start on and are rounded up to
+	//
+	public ESTextureAtlas(int pageWidth, int pageHeight, int format,
+			int padding, int alignment) {
+		if (pageWidth <= 0 || pageHeight <= 0)
+			throw new IllegalArgumentException("Invalid page size "
+					+ pageWidth + "x" + pageHeight);
+		if (padding < 0)
+			throw new IllegalArgumentException("Invalid padding " + padding);
+		if (alignment <= 0 || (alignment & (alignment - 1)) != 0)
+			throw new IllegalArgumentException("Invalid alignment "
+					+ alignment);
+
+		mPageWidth = pageWidth;
+		mPageHeight = pageHeight;
+		mFormat = format;
+		mTexelSize = ESTexture.getBytesPerPixel(format);
+		mPadding = padding;
+		mAlignment = alignment;
+	}
+
+	//
+	///
+	/// \brief Add an image to be packed by the next build()
+	/// \param pixels Tightly packed texels in the atlas format, starting at
+	/// its position.  Kept so the atlas can be rebuilt after more images
+	/// are added.
+	/// \return Index of the image, used with the UV accessors
+	//
+	public int add(ByteBuffer pixels, int width, int height) {
+		if (width <= 0 || height <= 0 || paddedSize(width) > mPageWidth
+				|| paddedSize(height) > mPageHeight)
+			throw new IllegalArgumentException("Image " + width + "x"
+					+ height + " does not fit a " + mPageWidth + "x"
+					+ mPageHeight + " page");
+		if (pixels.remaining() < width * height * mTexelSize)
+			throw new IllegalArgumentException("Buffer too small for "
+					+ width + "x" + height + " image");
+
+		mImages.add(new Image(pixels.slice(), width, height));
+		mBuilt = false;
+		return mImages.size() - 1;
+	}
+
+	//
+	///
+	/// \brief Pack every added image into pages and copy their texels in,
+	/// replacing the pages of any earlier build
+	//
+	public void build() {
+		long start = System.nanoTime();
+		int count = mImages.size();
+
+		// Tallest first, then widest; the index rides in the low bits
+		long[] order = new long[count];
+		for (int i = 0; i < count; i++) {
+			Image image = mImages.get(i);
+			order[i] = ((long) paddedSize(image.mHeight) << 42)
+					| ((long) paddedSize(image.mWidth) << 21) | i;
+		}
+		Arrays.sort(order);
+
+		mPageCount = 0;
+		newPage();
+
+		for (int i = count - 1; i >= 0; i--) {
+			Image image = mImages.get((int) (order[i] & 0x1FFFFF));
+			int width = paddedSize(image.mWidth);
+			int height = paddedSize(image.mHeight);
+
+			if (!place(image, width, height)) {
+				newPage();
+				place(image, width, height);
+			}
+		}
+
+		mPages = new ByteBuffer[mPageCount];
+		for (int page = 0; page < mPageCount; page++)
+			mPages[page] = ByteBuffer.allocateDirect(
+					mPageWidth * mPageHeight * mTexelSize).order(
+					ByteOrder.nativeOrder());
+
+		// Images cover disjoint rectangles, so they can be copied in
+		// parallel
+		ESParallel.forRange(0, count, 64, new ESParallel.RangeTask() {
+			public void run(int start, int end) {
+				for (int i = start; i < end; i++)
+					copyImage(mImages.get(i));
+			}
+		});
+
+		mBuilt = true;
+		mBuildNanos = System.nanoTime() - start;
+	}
+
+	public int getPageCount() {
+		checkBuilt();
+		return mPageCount;
+	}
+
+	//
+	///
+	/// \brief Texels of a page, tightly packed
+	//
+	public ByteBuffer getPage(int page) {
+		checkBuilt();
+		return mPages[page].duplicate();
+	}
+
+	public int getImageCount() {
+		return mImages.size();
+	}
+
+	//
+	///
+	/// \brief Page an image was packed into
+	//
+	public int getImagePage(int image) {
+		checkBuilt();
+		return getImage(image).mPage;
+	}
+
+	//
+	///
+	/// \brief Mapping of an image's texture coordinates into its page:
+	/// u' = u * scaleU + offsetU and v' = v * scaleV + offsetV
+	/// \param uv Receives scaleU, scaleV, offsetU, offsetV
+	//
+	public void getUVTransform(int image, float[] uv, int offset) {
+		checkBuilt();
+		Image entry = getImage(image);
+
+		uv[offset] = (float) entry.mWidth / mPageWidth;
+		uv[offset + 1] = (float) entry.mHeight / mPageHeight;
+		uv[offset + 2] = (float) entry.mX / mPageWidth;
+		uv[offset + 3] = (float) entry.mY / mPageHeight;
+	}
+
+	//
+	///
+	/// \brief The UV transform of every image, four floats each, in index
+	/// order.  Suitable for a uniform array indexed per sprite.
+	//
+	public float[] getUVTable() {
+		float[] table = new float[mImages.size() * 4];
+
+		for (int i = 0; i < mImages.size(); i++)
+			getUVTransform(i, table, i * 4);
+
+		return table;
+	}
+
+	//
+	///
+	/// \brief Move texture coordinates of vertices using an image into its
+	/// page, so they can be drawn with the page bound
+	/// \param texCoords Array holding u, v pairs
+	/// \param offset Index of the first u
+	/// \param count Number of vertices
+	/// \param stride Floats from one vertex's u to the next
+	//
+	public void remapTexCoords(int image, float[] texCoords, int offset,
+			int count, int stride) {
+		float[] uv = new float[4];
+		getUVTransform(image, uv, 0);
+
+		for (int i = 0, j = offset; i < count; i++, j += stride) {
+			texCoords[j] = texCoords[j] * uv[0] + uv[2];
+			texCoords[j + 1] = texCoords[j + 1] * uv[1] + uv[3];
+		}
+	}
+
+	//
+	///
+	/// \brief Fraction of the page area covered by images, gutters not
+	/// included
+	//
+	public float getEfficiency() {
+		checkBuilt();
+		long used = 0;
+
+		for (int i = 0; i < mImages.size(); i++) {
+			Image image = mImages.get(i);
+			used += (long) image.mWidth * image.mHeight;
+		}
+
+		return mPageCount == 0 ? 0.0f : (float) used
+				/ ((float) mPageCount * mPageWidth * mPageHeight);
+	}
+
+	//
+	///
+	/// \brief Time the last build() took, packing and copying included
+	//
+	public long getBuildNanos() {
+		return mBuildNanos;
+	}
+
+	//
+	///
+	/// \brief Load a page into a new 2D texture, with linear filtering and
+	/// clamped to edge
+	/// \param mipmaps Whether to build the mip chain with ESMipmapBuilder.
+	/// Ignored for pages that are not a power of two.
+	/// \return A new texture object
+	//
+	public int loadPage(int page, boolean mipmaps) {
+		checkBuilt();
+		int[] textureId = new int[1];
+
+		mipmaps = mipmaps && (mPageWidth & (mPageWidth - 1)) == 0
+				&& (mPageHeight & (mPageHeight - 1)) == 0;
+
+		GLES20.glGenTextures(1, textureId, 0);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId[0]);
+
+		if (mipmaps) {
+			ESMipmapBuilder.uploadMipmaps(getPage(page), mPageWidth,
+					mPageHeight, mFormat);
+		} else {
+			GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+			GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, mFormat, mPageWidth,
+					mPageHeight, 0, mFormat, GLES20.GL_UNSIGNED_BYTE,
+					getPage(page));
+			GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+		}
+
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MIN_FILTER,
+				mipmaps ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+		return textureId[0];
+	}
+
+	//
+	// Size of an image with its gutters, rounded up to the alignment
+	//
+	private int paddedSize(int size) {
+		return (size + 2 * mPadding + mAlignment - 1) & ~(mAlignment - 1);
+	}
+
+	private void newPage() {
+		mPageCount++;
+		mSkyX[0] = 0;
+		mSkyY[0] = 0;
+		mSkyWidth[0] = mPageWidth;
+		mSkyCount = 1;
+	}
+
+	//
+	// Find the skyline position where a rectangle's top ends lowest,
+	// preferring the least wasted width on ties, and claim it
+	// \return false if it does not fit in the current page
+	//
+	private boolean place(Image image, int width, int height) {
+		int bestIndex = -1;
+		int bestTop = Integer.MAX_VALUE;
+		int bestWidth = Integer.MAX_VALUE;
+		int bestY = 0;
+
+		for (int i = 0; i < mSkyCount; i++) {
+			int x = mSkyX[i];
+
+			if (x + width > mPageWidth)
+				break;
+
+			// Rest on the highest segment under the rectangle
+			int y = 0;
+			int covered = 0;
+			for (int j = i; covered < width; j++) {
+				y = Math.max(y, mSkyY[j]);
+				covered += mSkyWidth[j];
+			}
+
+			int top = y + height;
+			if (top > mPageHeight)
+				continue;
+
+			if (top < bestTop || (top == bestTop && mSkyWidth[i] < bestWidth)) {
+				bestIndex = i;
+				bestTop = top;
+				bestWidth = mSkyWidth[i];
+				bestY = y;
+			}
+		}
+
+		if (bestIndex < 0)
+			return false;
+
+		int x = mSkyX[bestIndex];
+		image.mPage = mPageCount - 1;
+		image.mX = x + mPadding;
+		image.mY = bestY + mPadding;
+
+		addSkylineSegment(bestIndex, x, bestTop, width);
+		return true;
+	}
+
+	//
+	// Insert a segment at index, trimming or removing the segments it now
+	// covers, then merge neighbours of equal height
+	//
+	private void addSkylineSegment(int index, int x, int y, int width) {
+		if (mSkyCount == mSkyX.length) {
+			mSkyX = grow(mSkyX);
+			mSkyY = grow(mSkyY);
+			mSkyWidth = grow(mSkyWidth);
+		}
+
+		shiftSkyline(index, 1);
+		mSkyX[index] = x;
+		mSkyY[index] = y;
+		mSkyWidth[index] = width;
+
+		int end = x + width;
+		int next = index + 1;
+
+		while (next < mSkyCount && mSkyX[next] < end) {
+			int segmentEnd = mSkyX[next] + mSkyWidth[next];
+
+			if (segmentEnd <= end) {
+				shiftSkyline(next + 1, -1);
+			} else {
+				mSkyWidth[next] = segmentEnd - end;
+				mSkyX[next] = end;
+				break;
+			}
+		}
+
+		for (int i = Math.max(0, index - 1); i < mSkyCount - 1;) {
+			if (mSkyY[i] == mSkyY[i + 1]) {
+				mSkyWidth[i] += mSkyWidth[i + 1];
+				shiftSkyline(i + 2, -1);
+			} else if (i > index) {
+				break;
+			} else {
+				i++;
+			}
+		}
+	}
+
+	private static int[] grow(int[] array) {
+		int[] grown = new int[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	//
+	// Move the segments from index onwards by delta places
+	//
+	private void shiftSkyline(int index, int delta) {
+		int length = mSkyCount - index;
+
+		System.arraycopy(mSkyX, index, mSkyX, index + delta, length);
+		System.arraycopy(mSkyY, index, mSkyY, index + delta, length);
+		System.arraycopy(mSkyWidth, index, mSkyWidth, index + delta, length);
+		mSkyCount += delta;
+	}
+
+	//
+	// Copy an image into its page and fill its gutters with copies of its
+	// edge texels
+	//
+	private void copyImage(Image image) {
+		ByteBuffer page = mPages[image.mPage].duplicate();
+		ByteBuffer src = image.mPixels.duplicate();
+		int rowBytes = image.mWidth * mTexelSize;
+		int pageRowBytes = mPageWidth * mTexelSize;
+		int left = (image.mX - mPadding) * mTexelSize;
+		int right = (image.mX + image.mWidth) * mTexelSize;
+		int padBytes = mPadding * mTexelSize;
+		int paddedBytes = rowBytes + 2 * padBytes;
+
+		for (int y = 0; y < image.mHeight; y++) {
+			int row = (image.mY + y) * pageRowBytes;
+
+			src.limit((y + 1) * rowBytes);
+			src.position(y * rowBytes);
+			page.position(row + image.mX * mTexelSize);
+			page.put(src);
+
+			for (int i = 0; i < padBytes; i++) {
+				page.put(row + left + i, page.get(row + image.mX * mTexelSize
+						+ i % mTexelSize));
+				page.put(row + right + i, page.get(row + right - mTexelSize
+						+ i % mTexelSize));
+			}
+		}
+
+		// Repeat the first and last rows, gutters included, above and below
+		ByteBuffer edge = page.duplicate();
+		int first = image.mY * pageRowBytes + left;
+		int last = (image.mY + image.mHeight - 1) * pageRowBytes + left;
+
+		for (int y = 1; y <= mPadding; y++) {
+			copyRow(page, edge, first, first - y * pageRowBytes, paddedBytes);
+			copyRow(page, edge, last, last + y * pageRowBytes, paddedBytes);
+		}
+	}
+
+	private static void copyRow(ByteBuffer dst, ByteBuffer src, int from,
+			int to, int length) {
+		src.limit(from + length);
+		src.position(from);
+		dst.limit(to + length);
+		dst.position(to);
+		dst.put(src);
+		dst.limit(dst.capacity());
+	}
+
+	private Image getImage(int image) {
+		if (image < 0 || image >= mImages.size())
+			throw new IllegalArgumentException("Invalid image " + image);
+
+		return mImages.get(image);
+	}
+
+	private void checkBuilt() {
+		if (!mBuilt)
+			throw new IllegalStateException("Atlas has not been built");
+	}
+
+	private static class Image {
+		Image(ByteBuffer pixels, int width, int height) {
+			mPixels = pixels;
+			mWidth = width;
+			mHeight = height;
+		}
+
+		final ByteBuffer mPixels;
+		final int mWidth;
+		final int mHeight;
+
+		// Top left texel of the image in its page, gutters excluded
+		int mPage;
+		int mX;
+		int mY;
+	}
+
+	// Member variables
+	private final int mPageWidth;
+	private final int mPageHeight;
+	private final int mFormat;
+	private final int mTexelSize;
+	private final int mPadding;
+	private final int mAlignment;
+	private final ArrayList<Image> mImages = new ArrayList<Image>();
+
+	private ByteBuffer[] mPages;
+	private int mPageCount;
+	private boolean mBuilt;
+	private long mBuildNanos;
+
+	// Skyline of the page being filled: segments from left to right
+	private int[] mSkyX = new int[64];
+	private int[] mSkyY = new int[64];
+	private int[] mSkyWidth = new int[64];
+	private int mSkyCount;
+}
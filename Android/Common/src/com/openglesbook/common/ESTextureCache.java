@@ -0,0 +1,413 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESTextureCache
+//
+//    Keeps 2D textures resident within a memory budget.  Textures are
+//    registered with the source they are loaded from and referred to by
+//    handle.  Binding a handle loads the texture if needed; when the
+//    resident textures exceed the budget the least recently bound ones are
+//    deleted, and reloaded from their source the next time they are bound.
+//    Textures bound during the current frame are never evicted, so the
+//    budget may be exceeded for the length of a frame.
+//
+
+package com.openglesbook.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.util.Log;
+
+public class ESTextureCache {
+	//
+	///
+	/// \brief Creates a texture on demand
+	//
+	public interface Source {
+		//
+		///
+		/// \brief Create the texture object and upload its data
+		/// \return The texture object, 0 on failure
+		//
+		public int load();
+
+		//
+		///
+		/// \brief GPU memory used by the texture, including its mip chain.
+		/// Called after load().
+		//
+		public long getSizeBytes();
+	}
+
+	//
+	///
+	/// \brief A source decoding an image stream with ESTexture
+	//
+	public static abstract class StreamSource implements Source {
+		public StreamSource(int format, boolean mipmaps) {
+			mFormat = format;
+			mMipmaps = mipmaps;
+		}
+
+		//
+		///
+		/// \brief Open the image, for example with
+		/// getResources().openRawResource().  Called on every load.
+		//
+		protected abstract InputStream open() throws IOException;
+
+		public int load() {
+			Bitmap bitmap;
+
+			try {
+				InputStream is = open();
+				try {
+					bitmap = BitmapFactory.decodeStream(is);
+				} finally {
+					is.close();
+				}
+			} catch (IOException e) {
+				Log.e(TAG, "Unable to open texture image", e);
+				return 0;
+			}
+
+			if (bitmap == null) {
+				Log.e(TAG, "Unable to decode texture image");
+				return 0;
+			}
+
+			int width = bitmap.getWidth();
+			int height = bitmap.getHeight();
+			int textureId = ESTexture.loadTexture(bitmap, mFormat, mMipmaps);
+			bitmap.recycle();
+
+			// ESTexture skips mipmaps for non power of two images
+			boolean mipmaps = mMipmaps && (width & (width - 1)) == 0
+					&& (height & (height - 1)) == 0;
+			mSizeBytes = computeSizeBytes(width, height,
+					ESTexture.getBytesPerPixel(mFormat), mipmaps);
+			return textureId;
+		}
+
+		public long getSizeBytes() {
+			return mSizeBytes;
+		}
+
+		private final int mFormat;
+		private final boolean mMipmaps;
+		private long mSizeBytes;
+	}
+
+	//
+	///
+	/// \brief A source loading a 2D texture from a KTX or PKM file with
+	/// ESTextureFile
+	//
+	public static abstract class FileSource implements Source {
+		//
+		///
+		/// \brief Map the file, for example with
+		/// ESTextureFile.open(getResources().openRawResourceFd()).  Called
+		/// on every load.
+		/// \return The mapped file, null on failure
+		//
+		protected abstract ESTextureFile open();
+
+		public int load() {
+			ESTextureFile file = open();
+
+			if (file == null)
+				return 0;
+
+			if (file.isValid() && file.isCubeMap()) {
+				Log.e(TAG, "Cube map files cannot be cached as 2D textures");
+				return 0;
+			}
+
+			int textureId = file.loadTexture();
+			mSizeBytes = textureId != 0 ? file.getSizeBytes() : 0;
+			return textureId;
+		}
+
+		public long getSizeBytes() {
+			return mSizeBytes;
+		}
+
+		private long mSizeBytes;
+	}
+
+	//
+	///
+	/// \brief Create a cache
+	/// \param budgetBytes GPU memory the resident textures may use
+	//
+	public ESTextureCache(long budgetBytes) {
+		mBudgetBytes = budgetBytes;
+	}
+
+	//
+	///
+	/// \brief Register a texture.  Nothing is loaded until it is bound.
+	/// \return Handle used with bind() and remove()
+	//
+	public int add(Source source) {
+		mEntries.add(new Entry(source));
+		return mEntries.size() - 1;
+	}
+
+	//
+	///
+	/// \brief Bind a texture to GL_TEXTURE_2D of the active texture unit,
+	/// loading it first if it is not resident
+	/// \return The texture object, 0 if it failed to load.  A texture that
+	/// failed is not loaded again until invalidate() is called.
+	//
+	public int bind(int handle) {
+		Entry entry = getEntry(handle);
+		Integer key = Integer.valueOf(handle);
+
+		if (entry.mTextureId != 0) {
+			mHits++;
+			// Move to the most recently used end
+			mResident.get(key);
+		} else if (!entry.mFailed) {
+			mMisses++;
+			entry.mTextureId = entry.mSource.load();
+
+			if (entry.mTextureId != 0) {
+				entry.mSizeBytes = entry.mSource.getSizeBytes();
+				mResidentBytes += entry.mSizeBytes;
+				mResident.put(key, entry);
+			} else {
+				// Remember the failure so that the source is not opened
+				// and decoded again on every bind
+				entry.mFailed = true;
+			}
+		}
+
+		entry.mLastFrame = mFrame;
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, entry.mTextureId);
+
+		if (mResidentBytes > mBudgetBytes)
+			evict(mBudgetBytes);
+
+		return entry.mTextureId;
+	}
+
+	//
+	///
+	/// \brief Start a new frame.  Textures bound in earlier frames become
+	/// candidates for eviction again.
+	//
+	public void beginFrame() {
+		mFrame++;
+
+		if (mResidentBytes > mBudgetBytes)
+			evict(mBudgetBytes);
+	}
+
+	//
+	///
+	/// \brief Delete a texture and forget its source
+	//
+	public void remove(int handle) {
+		Entry entry = getEntry(handle);
+
+		unload(handle, entry);
+		entry.mSource = null;
+	}
+
+	//
+	///
+	/// \brief Delete every resident texture.  They are reloaded when bound.
+	//
+	public void evictAll() {
+		mFrame++;
+		evict(0);
+	}
+
+	//
+	///
+	/// \brief Forget every resident texture without deleting it, after the
+	/// context that owned them has been lost.  Textures that failed to
+	/// load are tried again on their next bind.
+	//
+	public void invalidate() {
+		Iterator<Entry> it = mResident.values().iterator();
+
+		while (it.hasNext())
+			it.next().mTextureId = 0;
+
+		for (int i = 0; i < mEntries.size(); i++)
+			mEntries.get(i).mFailed = false;
+
+		mResident.clear();
+		mResidentBytes = 0;
+	}
+
+	//
+	///
+	/// \brief Change the budget, evicting textures not bound in the current
+	/// frame until the resident textures fit
+	//
+	public void setBudget(long budgetBytes) {
+		mBudgetBytes = budgetBytes;
+
+		if (mResidentBytes > mBudgetBytes)
+			evict(mBudgetBytes);
+	}
+
+	public long getBudget() {
+		return mBudgetBytes;
+	}
+
+	public long getResidentBytes() {
+		return mResidentBytes;
+	}
+
+	public int getResidentCount() {
+		return mResident.size();
+	}
+
+	public long getHitCount() {
+		return mHits;
+	}
+
+	public long getMissCount() {
+		return mMisses;
+	}
+
+	public long getEvictionCount() {
+		return mEvictions;
+	}
+
+	//
+	///
+	/// \brief Fraction of binds that found the texture resident
+	//
+	public float getHitRate() {
+		long total = mHits + mMisses;
+		return total == 0 ? 0.0f : (float) mHits / (float) total;
+	}
+
+	public void resetCounters() {
+		mHits = 0;
+		mMisses = 0;
+		mEvictions = 0;
+	}
+
+	//
+	///
+	/// \brief GPU memory of a 2D texture
+	/// \param bytesPerPixel Bytes per texel of the base level
+	/// \param mipmaps Whether the full mip chain is included
+	//
+	public static long computeSizeBytes(int width, int height,
+			int bytesPerPixel, boolean mipmaps) {
+		long size = (long) width * height * bytesPerPixel;
+
+		while (mipmaps && (width > 1 || height > 1)) {
+			width = Math.max(1, width >> 1);
+			height = Math.max(1, height >> 1);
+			size += (long) width * height * bytesPerPixel;
+		}
+
+		return size;
+	}
+
+	//
+	// Delete least recently bound textures until the resident size is at
+	// most target.  Textures bound in the current frame are kept.
+	//
+	private void evict(long target) {
+		ArrayList<Integer> victims = new ArrayList<Integer>();
+		long residentBytes = mResidentBytes;
+		Iterator<Map.Entry<Integer, Entry>> it = mResident.entrySet()
+				.iterator();
+
+		// Iterate over the entries, get() would reorder the map
+		while (residentBytes > target && it.hasNext()) {
+			Map.Entry<Integer, Entry> resident = it.next();
+			Entry entry = resident.getValue();
+
+			if (entry.mLastFrame == mFrame)
+				continue;
+
+			victims.add(resident.getKey());
+			residentBytes -= entry.mSizeBytes;
+		}
+
+		for (int i = 0; i < victims.size(); i++) {
+			int handle = victims.get(i).intValue();
+			unload(handle, mEntries.get(handle));
+			mEvictions++;
+		}
+	}
+
+	private void unload(int handle, Entry entry) {
+		if (entry.mTextureId == 0)
+			return;
+
+		int[] textureId = { entry.mTextureId };
+		GLES20.glDeleteTextures(1, textureId, 0);
+
+		mResident.remove(Integer.valueOf(handle));
+		mResidentBytes -= entry.mSizeBytes;
+		entry.mTextureId = 0;
+		entry.mSizeBytes = 0;
+	}
+
+	private Entry getEntry(int handle) {
+		Entry entry = handle >= 0 && handle < mEntries.size() ? mEntries
+				.get(handle) : null;
+
+		if (entry == null || entry.mSource == null)
+			throw new IllegalArgumentException("Invalid texture handle "
+					+ handle);
+
+		return entry;
+	}
+
+	private static class Entry {
+		Entry(Source source) {
+			mSource = source;
+		}
+
+		Source mSource;
+		int mTextureId;
+		long mSizeBytes;
+		long mLastFrame = -1;
+		boolean mFailed;
+	}
+
+	private static final String TAG = "ESTextureCache";
+
+	// Member variables
+	private final ArrayList<Entry> mEntries = new ArrayList<Entry>();
+
+	// Resident textures, least recently bound first
+	private final LinkedHashMap<Integer, Entry> mResident = new LinkedHashMap<Integer, Entry>(
+			16, 0.75f, true);
+
+	private long mBudgetBytes;
+	private long mResidentBytes;
+	private long mFrame;
+	private long mHits;
+	private long mMisses;
+	private long mEvictions;
+}
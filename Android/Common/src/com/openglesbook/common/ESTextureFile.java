@@ -0,0 +1,443 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESTextureFile
+//
+//    Loads textures stored in KTX or PKM files.  Both hold texels ready for
+//    OpenGL ES, so the file is memory mapped and each level is handed to
+//    glTexImage2D() or glCompressedTexImage2D() as a slice of the mapping,
+//    with no decoding and no copy on the Java heap.
+//
+//    Opening a file only maps it.  The header is checked the first time a
+//    property is asked for, and the level offsets are found the first time
+//    a level is needed, so files that are opened but never loaded cost
+//    nothing beyond the mapping.
+//
+//    KTX files may hold 2D textures or cube maps with any number of levels.
+//    PKM files hold a single ETC1 level.
+//
+
+package com.openglesbook.common;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import android.content.res.AssetFileDescriptor;
+import android.opengl.GLES20;
+import android.util.Log;
+
+public class ESTextureFile {
+	//
+	///
+	/// \brief Map a texture file
+	/// \return The texture file, null if it could not be mapped
+	//
+	public static ESTextureFile open(File file) {
+		try {
+			FileInputStream is = new FileInputStream(file);
+			try {
+				FileChannel channel = is.getChannel();
+				return new ESTextureFile(channel.map(
+						FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			} finally {
+				// The mapping stays valid after the channel is closed
+				is.close();
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to map " + file, e);
+			return null;
+		}
+	}
+
+	//
+	///
+	/// \brief Map a texture file stored in the application package, for
+	/// example from getResources().openRawResourceFd().  The file must be
+	/// stored uncompressed in the package, which aapt does not do for
+	/// unknown extensions unless told to with -0.
+	/// \return The texture file, null if it could not be mapped
+	//
+	public static ESTextureFile open(AssetFileDescriptor afd) {
+		if (afd == null) {
+			Log.e(TAG, "Texture file is compressed in the package");
+			return null;
+		}
+
+		try {
+			FileInputStream is = afd.createInputStream();
+			try {
+				return new ESTextureFile(is.getChannel().map(
+						FileChannel.MapMode.READ_ONLY, afd.getStartOffset(),
+						afd.getLength()));
+			} finally {
+				is.close();
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to map texture file", e);
+			return null;
+		}
+	}
+
+	//
+	///
+	/// \brief Wrap texture file contents already in memory
+	//
+	public ESTextureFile(ByteBuffer data) {
+		mData = data.slice();
+	}
+
+	//
+	///
+	/// \brief Whether the header and level index are well formed.  Logs
+	/// the problem if not.
+	//
+	public boolean isValid() {
+		try {
+			parseLevels();
+			return true;
+		} catch (IllegalArgumentException e) {
+			Log.e(TAG, e.getMessage());
+			return false;
+		}
+	}
+
+	public boolean isCompressed() {
+		parseHeader();
+		return mType == 0;
+	}
+
+	public boolean isCubeMap() {
+		parseHeader();
+		return mFaceCount == 6;
+	}
+
+	public int getWidth() {
+		parseHeader();
+		return mWidth;
+	}
+
+	public int getHeight() {
+		parseHeader();
+		return mHeight;
+	}
+
+	//
+	///
+	/// \brief The internal format: a compressed format such as
+	/// GL_ETC1_RGB8_OES, or the texel format of uncompressed files
+	//
+	public int getInternalFormat() {
+		parseHeader();
+		return mInternalFormat;
+	}
+
+	//
+	///
+	/// \brief Levels stored in the file.  KTX files may store only the
+	/// first level and ask for the rest to be generated.
+	//
+	public int getLevelCount() {
+		parseHeader();
+		return mLevelCount;
+	}
+
+	public int getFaceCount() {
+		parseHeader();
+		return mFaceCount;
+	}
+
+	//
+	///
+	/// \brief Texels of one level and face, as a slice of the mapping
+	/// \param face 0 for 2D textures, or the offset from
+	/// GL_TEXTURE_CUBE_MAP_POSITIVE_X for cube maps
+	//
+	public ByteBuffer getLevel(int level, int face) {
+		parseLevels();
+
+		if (level < 0 || level >= mLevelCount || face < 0
+				|| face >= mFaceCount)
+			throw new IllegalArgumentException("Invalid level " + level
+					+ " face " + face);
+
+		int offset = mLevelOffsets[level * mFaceCount + face];
+		ByteBuffer slice = mData.duplicate();
+		slice.limit(offset + mLevelSizes[level]);
+		slice.position(offset);
+		return slice.slice().order(ByteOrder.nativeOrder());
+	}
+
+	//
+	///
+	/// \brief GPU memory used by the texture once loaded
+	//
+	public long getSizeBytes() {
+		parseLevels();
+
+		long size = 0;
+		for (int level = 0; level < mLevelCount; level++)
+			size += (long) mLevelSizes[level] * mFaceCount;
+
+		if (mGenerateMipmaps)
+			size += size / 3;
+
+		return size;
+	}
+
+	//
+	///
+	/// \brief Load the file into a new texture.  The texture uses linear
+	/// filtering and clamps to edge, like ESTexture.
+	/// \return A new GL_TEXTURE_2D or GL_TEXTURE_CUBE_MAP texture object,
+	/// 0 on failure
+	//
+	public int loadTexture() {
+		if (!isValid())
+			return 0;
+
+		if (mInternalFormat == ESETC1Encoder.GL_ETC1_RGB8_OES
+				&& !ESTexture.isETC1Supported()) {
+			Log.e(TAG, "ETC1 textures are not supported");
+			return 0;
+		}
+
+		int target = mFaceCount == 6 ? GLES20.GL_TEXTURE_CUBE_MAP
+				: GLES20.GL_TEXTURE_2D;
+		int[] textureId = new int[1];
+
+		GLES20.glGenTextures(1, textureId, 0);
+		GLES20.glBindTexture(target, textureId[0]);
+
+		// KTX pads rows to 4 bytes
+		GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+
+		for (int level = 0; level < mLevelCount; level++) {
+			int width = Math.max(1, mWidth >> level);
+			int height = Math.max(1, mHeight >> level);
+
+			for (int face = 0; face < mFaceCount; face++) {
+				int faceTarget = mFaceCount == 6 ? GLES20.GL_TEXTURE_CUBE_MAP_POSITIVE_X
+						+ face
+						: GLES20.GL_TEXTURE_2D;
+				ByteBuffer texels = getLevel(level, face);
+
+				if (mType == 0)
+					GLES20.glCompressedTexImage2D(faceTarget, level,
+							mInternalFormat, width, height, 0, texels
+									.remaining(), texels);
+				else
+					GLES20.glTexImage2D(faceTarget, level, mFormat, width,
+							height, 0, mFormat, mType, texels);
+			}
+		}
+
+		boolean mipmaps = mLevelCount > 1 || mGenerateMipmaps;
+
+		if (mGenerateMipmaps)
+			GLES20.glGenerateMipmap(target);
+
+		GLES20.glTexParameteri(target, GLES20.GL_TEXTURE_MIN_FILTER,
+				mipmaps ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(target, GLES20.GL_TEXTURE_MAG_FILTER,
+				GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(target, GLES20.GL_TEXTURE_WRAP_S,
+				GLES20.GL_CLAMP_TO_EDGE);
+		GLES20.glTexParameteri(target, GLES20.GL_TEXTURE_WRAP_T,
+				GLES20.GL_CLAMP_TO_EDGE);
+
+		return textureId[0];
+	}
+
+	//
+	// Read and check the header, once
+	//
+	private void parseHeader() {
+		if (mHeaderParsed)
+			return;
+
+		if (matches(KTX_IDENTIFIER))
+			parseKTXHeader();
+		else if (matches(PKM_IDENTIFIER))
+			parsePKMHeader();
+		else
+			throw new IllegalArgumentException("Unknown texture file format");
+
+		if (mWidth <= 0 || mHeight <= 0)
+			throw new IllegalArgumentException("Invalid texture size "
+					+ mWidth + "x" + mHeight);
+
+		mHeaderParsed = true;
+	}
+
+	private void parseKTXHeader() {
+		if (mData.capacity() < KTX_HEADER_SIZE)
+			throw new IllegalArgumentException("Truncated KTX header");
+
+		// The endianness field reads 0x04030201 in the writer's byte order
+		mData.order(ByteOrder.LITTLE_ENDIAN);
+		if (mData.getInt(12) != 0x04030201)
+			mData.order(ByteOrder.BIG_ENDIAN);
+		if (mData.getInt(12) != 0x04030201)
+			throw new IllegalArgumentException("Invalid KTX endianness");
+
+		mType = mData.getInt(16);
+		int typeSize = mData.getInt(20);
+		mFormat = mData.getInt(24);
+		mInternalFormat = mData.getInt(28);
+		mWidth = mData.getInt(36);
+		mHeight = mData.getInt(40);
+		int depth = mData.getInt(44);
+		int arrayElements = mData.getInt(48);
+		mFaceCount = mData.getInt(52);
+		mLevelCount = mData.getInt(56);
+		int keyValueBytes = mData.getInt(60);
+
+		if (typeSize > 1 && mData.order() != ByteOrder.nativeOrder())
+			throw new IllegalArgumentException(
+					"KTX texels are not in native byte order");
+		if (depth > 1 || arrayElements > 0)
+			throw new IllegalArgumentException(
+					"3D and array KTX textures are not supported");
+		if (mFaceCount != 1 && mFaceCount != 6)
+			throw new IllegalArgumentException("Invalid KTX face count "
+					+ mFaceCount);
+		if (mLevelCount < 0 || mLevelCount > MAX_LEVELS)
+			throw new IllegalArgumentException("Invalid KTX level count "
+					+ mLevelCount);
+		if (keyValueBytes < 0
+				|| keyValueBytes > mData.capacity() - KTX_HEADER_SIZE)
+			throw new IllegalArgumentException("Invalid KTX key/value size "
+					+ keyValueBytes);
+
+		// No levels means only the first is stored and the rest are
+		// generated.  OpenGL ES 2.0 cannot generate levels of compressed
+		// textures, those are loaded with the stored level only.
+		if (mLevelCount == 0) {
+			mGenerateMipmaps = mType != 0;
+			mLevelCount = 1;
+		}
+
+		mDataOffset = (long) KTX_HEADER_SIZE + keyValueBytes;
+		mLevelSizesStored = true;
+	}
+
+	private void parsePKMHeader() {
+		if (mData.capacity() < PKM_HEADER_SIZE)
+			throw new IllegalArgumentException("Truncated PKM header");
+
+		mData.order(ByteOrder.BIG_ENDIAN);
+
+		if (mData.getShort(6) != 0)
+			throw new IllegalArgumentException("Unsupported PKM format "
+					+ mData.getShort(6));
+
+		mType = 0;
+		mInternalFormat = ESETC1Encoder.GL_ETC1_RGB8_OES;
+		mWidth = mData.getShort(12) & 0xFFFF;
+		mHeight = mData.getShort(14) & 0xFFFF;
+		mFaceCount = 1;
+		mLevelCount = 1;
+		mDataOffset = PKM_HEADER_SIZE;
+		mLevelSizesStored = false;
+	}
+
+	//
+	// Find where each level and face starts, once, checking they all lie
+	// within the file
+	//
+	private void parseLevels() {
+		if (mLevelOffsets != null)
+			return;
+
+		parseHeader();
+
+		int[] offsets = new int[mLevelCount * mFaceCount];
+		int[] sizes = new int[mLevelCount];
+		long offset = mDataOffset;
+
+		for (int level = 0; level < mLevelCount; level++) {
+			if (mLevelSizesStored) {
+				if (offset + 4 > mData.capacity())
+					throw new IllegalArgumentException("Truncated level "
+							+ level);
+
+				// Size of one face.  Faces are padded to 4 bytes.
+				sizes[level] = mData.getInt((int) offset);
+				offset += 4;
+			} else {
+				sizes[level] = ESETC1Encoder.getEncodedSize(mWidth, mHeight);
+			}
+
+			if (sizes[level] < 0)
+				throw new IllegalArgumentException("Invalid size of level "
+						+ level);
+
+			for (int face = 0; face < mFaceCount; face++) {
+				if (offset + sizes[level] > mData.capacity())
+					throw new IllegalArgumentException("Truncated level "
+							+ level);
+
+				offsets[level * mFaceCount + face] = (int) offset;
+				offset += ((long) sizes[level] + 3) & ~3L;
+			}
+		}
+
+		mLevelSizes = sizes;
+		mLevelOffsets = offsets;
+	}
+
+	private boolean matches(byte[] identifier) {
+		if (mData.capacity() < identifier.length)
+			return false;
+
+		for (int i = 0; i < identifier.length; i++)
+			if (mData.get(i) != identifier[i])
+				return false;
+
+		return true;
+	}
+
+	private static final String TAG = "ESTextureFile";
+
+	private static final byte[] KTX_IDENTIFIER = { (byte) 0xAB, 'K', 'T',
+			'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n' };
+	private static final byte[] PKM_IDENTIFIER = { 'P', 'K', 'M', ' ', '1',
+			'0' };
+
+	private static final int KTX_HEADER_SIZE = 64;
+
+	// More levels than a texture of the largest int size can have
+	private static final int MAX_LEVELS = 32;
+	private static final int PKM_HEADER_SIZE = 16;
+
+	// Member variables
+	private final ByteBuffer mData;
+
+	// Header, valid once mHeaderParsed is set
+	private boolean mHeaderParsed;
+	private int mType;
+	private int mFormat;
+	private int mInternalFormat;
+	private int mWidth;
+	private int mHeight;
+	private int mFaceCount;
+	private int mLevelCount;
+	private boolean mGenerateMipmaps;
+	private long mDataOffset;
+	private boolean mLevelSizesStored;
+
+	// Level index, null until needed
+	private int[] mLevelOffsets;
+	private int[] mLevelSizes;
+}
@@ -0,0 +1,399 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESTextureStreamer
+//
+//    Uploads large 2D textures over several frames instead of in one
+//    glTexImage2D() call.  Storage for every level is allocated when a
+//    texture is added; runFrame() then feeds tiles to glTexSubImage2D()
+//    until its time budget is spent.  Levels are uploaded smallest first,
+//    so a blurry version of the texture is available after a few tiles
+//    and sharpens as the larger levels land.  OpenGL ES 2.0 has no way to
+//    limit the levels a texture samples from, so shaders should pass
+//    Upload.getLodBias() as the bias argument of texture2D() until the
+//    upload is complete.
+//
+//    Tiles narrower than their level are copied into a staging buffer
+//    leased from ESBufferPool; tiles spanning whole rows are passed to GL
+//    straight from the source.  Tile upload times and add-to-complete
+//    latencies are recorded for percentile reporting.  The times are
+//    measured on the CPU, so they include the driver's copy but not any
+//    work it defers.
+//
+
+package com.openglesbook.common;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+public class ESTextureStreamer {
+	//
+	///
+	/// \brief A texture being streamed
+	//
+	public class Upload {
+		public int getTextureId() {
+			return mTextureId;
+		}
+
+		//
+		///
+		/// \brief Whether the smallest level has landed, so the texture
+		/// can be drawn with getLodBias()
+		//
+		public boolean isReady() {
+			return mLoadedLevel < mLevels.length;
+		}
+
+		public boolean isComplete() {
+			return mLoadedLevel == 0;
+		}
+
+		//
+		///
+		/// \brief Fraction of the texels uploaded, 0 to 1
+		//
+		public float getProgress() {
+			return mTotalBytes == 0 ? 1.0f : (float) mUploadedBytes
+					/ (float) mTotalBytes;
+		}
+
+		//
+		///
+		/// \brief Largest level whose texels have all been uploaded, or the
+		/// level count if none has
+		//
+		public int getLoadedLevel() {
+			return mLoadedLevel;
+		}
+
+		//
+		///
+		/// \brief Bias for texture2D() that keeps sampling on loaded levels
+		/// when the texture is minified, 0 once complete
+		//
+		public float getLodBias() {
+			return (float) mLoadedLevel;
+		}
+
+		private Upload(ByteBuffer[] levels, int width, int height,
+				int format) {
+			mLevels = levels;
+			mWidth = width;
+			mHeight = height;
+			mFormat = format;
+			mTexelSize = ESTexture.getBytesPerPixel(format);
+			mLevel = levels.length - 1;
+			mLoadedLevel = levels.length;
+			mStartNanos = System.nanoTime();
+
+			for (int level = 0; level < levels.length; level++)
+				mTotalBytes += (long) levelWidth(level) * levelHeight(level)
+						* mTexelSize;
+		}
+
+		private int levelWidth(int level) {
+			return ESMipmapBuilder.getLevelSize(mWidth, level);
+		}
+
+		private int levelHeight(int level) {
+			return ESMipmapBuilder.getLevelSize(mHeight, level);
+		}
+
+		private final ByteBuffer[] mLevels;
+		private final int mWidth;
+		private final int mHeight;
+		private final int mFormat;
+		private final int mTexelSize;
+		private final long mStartNanos;
+		private int mTextureId;
+		private long mTotalBytes;
+		private long mUploadedBytes;
+
+		// Next tile to upload
+		private int mLevel;
+		private int mTileX;
+		private int mTileY;
+
+		private int mLoadedLevel;
+	}
+
+	public ESTextureStreamer() {
+	}
+
+	//
+	///
+	/// \brief Decode a bitmap and queue it for upload
+	/// \see add(ByteBuffer, int, int, int, boolean)
+	//
+	public Upload add(Bitmap bitmap, int format, boolean mipmaps) {
+		return add(ESTexture.decode(bitmap, format, null), bitmap.getWidth(),
+				bitmap.getHeight(), format, mipmaps);
+	}
+
+	//
+	///
+	/// \brief Create a texture and queue its texels for upload.  Must be
+	/// called on the GL thread; leaves the new texture bound.
+	/// \param pixels Tightly packed texels, starting at its position.  Kept
+	/// until the upload completes.
+	/// \param format ESTexture.FORMAT_RGBA, FORMAT_RGB or FORMAT_LUMINANCE
+	/// \param mipmaps Whether to build and stream the mip chain.  The chain
+	/// is built here with ESMipmapBuilder; use add(ByteBuffer[], ...) to
+	/// build it off the GL thread instead.  Ignored for non power of two
+	/// images.
+	//
+	public Upload add(ByteBuffer pixels, int width, int height, int format,
+			boolean mipmaps) {
+		boolean powerOfTwo = (width & (width - 1)) == 0
+				&& (height & (height - 1)) == 0;
+		ByteBuffer[] levels;
+
+		if (mipmaps && powerOfTwo)
+			levels = ESMipmapBuilder.buildChain(pixels, width, height, format);
+		else
+			levels = new ByteBuffer[] { pixels };
+
+		return add(levels, width, height, format);
+	}
+
+	//
+	///
+	/// \brief Create a texture and queue the given levels for upload
+	/// \param levels Level 0 and optionally the complete chain below it,
+	/// each tightly packed and starting at its position
+	//
+	public Upload add(ByteBuffer[] levels, int width, int height, int format) {
+		Upload upload = new Upload(levels, width, height, format);
+		int[] textureId = new int[1];
+
+		GLES20.glGenTextures(1, textureId, 0);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId[0]);
+		upload.mTextureId = textureId[0];
+
+		// Allocate every level now, tiles only update them
+		for (int level = 0; level < levels.length; level++)
+			GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, level, format, upload
+					.levelWidth(level), upload.levelHeight(level), 0, format,
+					GLES20.GL_UNSIGNED_BYTE, null);
+
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MIN_FILTER,
+				levels.length > 1 ? GLES20.GL_LINEAR_MIPMAP_LINEAR
+						: GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+		mQueue.add(upload);
+		return upload;
+	}
+
+	//
+	///
+	/// \brief Limit the time runFrame() spends uploading
+	/// \param maxNanos Stop once this much time has been spent, at least
+	/// one tile is always uploaded
+	//
+	public void setFrameBudget(long maxNanos) {
+		mFrameMaxNanos = maxNanos;
+	}
+
+	//
+	///
+	/// \brief Set the width and height of a tile in texels
+	//
+	public void setTileSize(int tileSize) {
+		if (tileSize <= 0)
+			throw new IllegalArgumentException("Invalid tile size "
+					+ tileSize);
+
+		mTileSize = tileSize;
+	}
+
+	//
+	///
+	/// \brief Upload tiles within the frame budget, oldest texture first.
+	/// Call on the GL thread once per frame, for example at the start of
+	/// onDrawFrame().  Leaves the last texture uploaded to bound.
+	/// \return Number of tiles uploaded
+	//
+	public int runFrame() {
+		long start = System.nanoTime();
+		int tiles = 0;
+		Upload bound = null;
+
+		GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+
+		while (!mQueue.isEmpty()) {
+			Upload upload = mQueue.getFirst();
+
+			if (upload != bound) {
+				GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, upload.mTextureId);
+				bound = upload;
+			}
+
+			long tileStart = System.nanoTime();
+			uploadTile(upload);
+			long now = System.nanoTime();
+
+			mTileNanos[mTileSamples++ % mTileNanos.length] = now - tileStart;
+			tiles++;
+
+			if (upload.isComplete()) {
+				mQueue.removeFirst();
+				mLatencyNanos[mLatencySamples++ % mLatencyNanos.length] = now
+						- upload.mStartNanos;
+			}
+
+			if (now - start >= mFrameMaxNanos)
+				break;
+		}
+
+		GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+		return tiles;
+	}
+
+	public int getPendingCount() {
+		return mQueue.size();
+	}
+
+	//
+	///
+	/// \brief Time taken by glTexSubImage2D() calls, over the most recent
+	/// tiles
+	/// \param percentile 0 to 1, for example 0.5f for the median
+	/// \return Nanoseconds, 0 if no tile has been uploaded
+	//
+	public long getTileTimePercentile(float percentile) {
+		return percentile(mTileNanos, mTileSamples, percentile);
+	}
+
+	//
+	///
+	/// \brief Time from add() to the last tile, over the most recently
+	/// completed textures
+	/// \param percentile 0 to 1, for example 0.95f
+	/// \return Nanoseconds, 0 if no texture has completed
+	//
+	public long getLatencyPercentile(float percentile) {
+		return percentile(mLatencyNanos, mLatencySamples, percentile);
+	}
+
+	public void resetStatistics() {
+		mTileSamples = 0;
+		mLatencySamples = 0;
+	}
+
+	//
+	// Upload the next tile of an upload and advance to the one after
+	//
+	private void uploadTile(Upload upload) {
+		int level = upload.mLevel;
+		int width = upload.levelWidth(level);
+		int height = upload.levelHeight(level);
+		int x = upload.mTileX;
+		int y = upload.mTileY;
+		int tileWidth = Math.min(mTileSize, width - x);
+		int rowBytes = tileWidth * upload.mTexelSize;
+		int tileHeight;
+		ByteBuffer texels;
+		ByteBuffer staging = null;
+
+		ByteBuffer src = upload.mLevels[level].duplicate();
+		int base = src.position();
+
+		if (tileWidth == width) {
+			// Whole rows are contiguous in the source, take as many as fit
+			// in a tile's worth of texels
+			tileHeight = Math.min(height - y, Math.max(1, mTileSize
+					* mTileSize / width));
+			src.position(base + y * rowBytes);
+			src.limit(src.position() + tileHeight * rowBytes);
+			texels = src;
+		} else {
+			tileHeight = Math.min(mTileSize, height - y);
+			staging = ESBufferPool.getShared().acquire(
+					tileWidth * tileHeight * upload.mTexelSize);
+			texels = staging;
+
+			for (int row = 0; row < tileHeight; row++) {
+				int offset = base + ((y + row) * width + x) * upload.mTexelSize;
+				src.limit(offset + rowBytes);
+				src.position(offset);
+				texels.put(src);
+			}
+
+			texels.flip();
+		}
+
+		try {
+			GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, level, x, y,
+					tileWidth, tileHeight, upload.mFormat,
+					GLES20.GL_UNSIGNED_BYTE, texels);
+		} finally {
+			if (staging != null)
+				ESBufferPool.getShared().release(staging);
+		}
+		upload.mUploadedBytes += (long) rowBytes * tileHeight;
+
+		// Next tile along the row, then the next row of tiles, then the
+		// next larger level
+		x += tileWidth;
+		if (x >= width) {
+			x = 0;
+			y += tileHeight;
+		}
+		if (y >= height) {
+			y = 0;
+			upload.mLoadedLevel = level;
+			upload.mLevel--;
+		}
+
+		upload.mTileX = x;
+		upload.mTileY = y;
+	}
+
+	private static long percentile(long[] samples, int count,
+			float percentile) {
+		int n = Math.min(count, samples.length);
+
+		if (n == 0)
+			return 0;
+
+		long[] sorted = new long[n];
+		System.arraycopy(samples, 0, sorted, 0, n);
+		Arrays.sort(sorted);
+
+		int index = (int) Math.ceil(percentile * n) - 1;
+		return sorted[Math.max(0, Math.min(n - 1, index))];
+	}
+
+	// Recent samples kept for percentiles
+	private static final int TILE_SAMPLES = 256;
+	private static final int LATENCY_SAMPLES = 64;
+
+	// Member variables
+	private final LinkedList<Upload> mQueue = new LinkedList<Upload>();
+	private int mTileSize = 256;
+	private long mFrameMaxNanos = 2000000;
+
+	private final long[] mTileNanos = new long[TILE_SAMPLES];
+	private int mTileSamples;
+	private final long[] mLatencyNanos = new long[LATENCY_SAMPLES];
+	private int mLatencySamples;
+}
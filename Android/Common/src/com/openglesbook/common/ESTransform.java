@@ -48,7 +48,7 @@ public class ESTransform {
 		if (mag > 0.0f) {
 			float xx, yy, zz, xy, yz, zx, xs, ys, zs;
 			float oneMinusCos;
-			float[] rotMat = new float[16];
+			float r00, r01, r02, r10, r11, r12, r20, r21, r22;
 
 			x /= mag;
 			y /= mag;
@@ -65,27 +65,31 @@ public class ESTransform {
 			zs = z * sinAngle;
 			oneMinusCos = 1.0f - cosAngle;
 
-			rotMat[0 * 4 + 0] = (oneMinusCos * xx) + cosAngle;
-			rotMat[0 * 4 + 1] = (oneMinusCos * xy) - zs;
-			rotMat[0 * 4 + 2] = (oneMinusCos * zx) + ys;
-			rotMat[0 * 4 + 3] = 0.0F;
-
-			rotMat[1 * 4 + 0] = (oneMinusCos * xy) + zs;
-			rotMat[1 * 4 + 1] = (oneMinusCos * yy) + cosAngle;
-			rotMat[1 * 4 + 2] = (oneMinusCos * yz) - xs;
-			rotMat[1 * 4 + 3] = 0.0F;
-
-			rotMat[2 * 4 + 0] = (oneMinusCos * zx) - ys;
-			rotMat[2 * 4 + 1] = (oneMinusCos * yz) + xs;
-			rotMat[2 * 4 + 2] = (oneMinusCos * zz) + cosAngle;
-			rotMat[2 * 4 + 3] = 0.0F;
-
-			rotMat[3 * 4 + 0] = 0.0F;
-			rotMat[3 * 4 + 1] = 0.0F;
-			rotMat[3 * 4 + 2] = 0.0F;
-			rotMat[3 * 4 + 3] = 1.0F;
-
-			matrixMultiply(rotMat, mMatrix);
+			r00 = (oneMinusCos * xx) + cosAngle;
+			r01 = (oneMinusCos * xy) - zs;
+			r02 = (oneMinusCos * zx) + ys;
+
+			r10 = (oneMinusCos * xy) + zs;
+			r11 = (oneMinusCos * yy) + cosAngle;
+			r12 = (oneMinusCos * yz) - xs;
+
+			r20 = (oneMinusCos * zx) - ys;
+			r21 = (oneMinusCos * yz) + xs;
+			r22 = (oneMinusCos * zz) + cosAngle;
+
+			// The last row and column of the rotation are identity, so
+			// only the upper three rows of the matrix change. Multiply
+			// them in place instead of building a temporary rotation
+			// matrix.
+			for (int c = 0; c < 4; c++) {
+				float m0 = mMatrix[0 * 4 + c];
+				float m1 = mMatrix[1 * 4 + c];
+				float m2 = mMatrix[2 * 4 + c];
+
+				mMatrix[0 * 4 + c] = r00 * m0 + r01 * m1 + r02 * m2;
+				mMatrix[1 * 4 + c] = r10 * m0 + r11 * m1 + r12 * m2;
+				mMatrix[2 * 4 + c] = r20 * m0 + r21 * m1 + r22 * m2;
+			}
 		}
 	}
 
@@ -94,7 +98,7 @@ public class ESTransform {
 		float deltaX = right - left;
 		float deltaY = top - bottom;
 		float deltaZ = farZ - nearZ;
-		float[] frust = new float[16];
+		float[] frust = mScratch;
 
 		if ((nearZ <= 0.0f) || (farZ <= 0.0f) || (deltaX <= 0.0f)
 				|| (deltaY <= 0.0f) || (deltaZ <= 0.0f))
@@ -131,11 +135,13 @@ public class ESTransform {
 		float deltaX = right - left;
 		float deltaY = top - bottom;
 		float deltaZ = farZ - nearZ;
-		float[] orthoMat = makeIdentityMatrix();
+		float[] orthoMat = mScratch;
 
 		if ((deltaX == 0.0f) || (deltaY == 0.0f) || (deltaZ == 0.0f))
 			return;
 
+		loadIdentity(orthoMat);
+
 		orthoMat[0 * 4 + 0] = 2.0f / deltaX;
 		orthoMat[3 * 4 + 0] = -(right + left) / deltaX;
 		orthoMat[1 * 4 + 1] = 2.0f / deltaY;
@@ -146,8 +152,13 @@ public class ESTransform {
 		matrixMultiply(orthoMat, mMatrix);
 	}
 
+	//
+	// Multiply srcA by srcB and store the result in this transform. The
+	// product is built in preallocated scratch storage and copied back, so
+	// either source may be the array returned from get().
+	//
 	public void matrixMultiply(float[] srcA, float[] srcB) {
-		float[] tmp = new float[16];
+		float[] tmp = mProduct;
 		int i;
 
 		for (i = 0; i < 4; i++) {
@@ -172,22 +183,18 @@ public class ESTransform {
 					+ (srcA[i * 4 + 3] * srcB[3 * 4 + 3]);
 		}
 
-		mMatrix = tmp;
+		System.arraycopy(tmp, 0, mMatrix, 0, 16);
 	}
 
 	public void matrixLoadIdentity() {
-		for (int i = 0; i < 16; i++)
-			mMatrix[i] = 0.0f;
-
-		mMatrix[0 * 4 + 0] = 1.0f;
-		mMatrix[1 * 4 + 1] = 1.0f;
-		mMatrix[2 * 4 + 2] = 1.0f;
-		mMatrix[3 * 4 + 3] = 1.0f;
+		loadIdentity(mMatrix);
 	}
 
-	private float[] makeIdentityMatrix() {
-		float[] result = new float[16];
+	public void matrixLoad(float[] src) {
+		System.arraycopy(src, 0, mMatrix, 0, 16);
+	}
 
+	private static void loadIdentity(float[] result) {
 		for (int i = 0; i < 16; i++)
 			result[i] = 0.0f;
 
@@ -195,8 +202,6 @@ public class ESTransform {
 		result[1 * 4 + 1] = 1.0f;
 		result[2 * 4 + 2] = 1.0f;
 		result[3 * 4 + 3] = 1.0f;
-
-		return result;
 	}
 
 	public FloatBuffer getAsFloatBuffer() {
@@ -204,11 +209,20 @@ public class ESTransform {
 		return mMatrixFloatBuffer;
 	}
 
+	//
+	// Returns the backing array of this transform. The same array is kept
+	// for the lifetime of the object and is updated in place by every
+	// operation.
+	//
 	public float[] get() {
 		return mMatrix;
 	}
 
-	private float[] mMatrix = new float[16];
+	private final float[] mMatrix = new float[16];
 	private FloatBuffer mMatrixFloatBuffer;
 
+	// Scratch storage so that no operation allocates
+	private final float[] mScratch = new float[16];
+	private final float[] mProduct = new float[16];
+
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESVertexFormat
+//
+//    Describes the layout of an interleaved vertex buffer: the stride of a
+//    vertex and the size, type and offset of each attribute in it.
+//
+
+package com.openglesbook.common;
+
+import java.nio.ByteBuffer;
+
+import android.opengl.GLES20;
+
+public class ESVertexFormat {
+	// Attribute semantics
+	public static final int POSITION = 0;
+	public static final int NORMAL = 1;
+	public static final int TEXCOORD = 2;
+	public static final int NUM_SEMANTICS = 3;
+
+	// Component types, same values as the GL enums
+	public static final int TYPE_BYTE = 0x1400;
+	public static final int TYPE_UNSIGNED_BYTE = 0x1401;
+	public static final int TYPE_SHORT = 0x1402;
+	public static final int TYPE_UNSIGNED_SHORT = 0x1403;
+	public static final int TYPE_FLOAT = 0x1406;
+
+	// How a shader reconstructs an attribute from the fetched value v
+	//   ENCODING_NONE        - v is used as is
+	//   ENCODING_SCALE_BIAS  - v * scale + bias
+	//   ENCODING_OCTAHEDRAL  - v.xy is an octahedral encoded unit vector
+	public static final int ENCODING_NONE = 0;
+	public static final int ENCODING_SCALE_BIAS = 1;
+	public static final int ENCODING_OCTAHEDRAL = 2;
+
+	//
+	///
+	/// \brief Append an attribute to the vertex.  Attributes are packed in
+	/// the order they are added, each starting on a 4 byte boundary.
+	/// \param semantic POSITION, NORMAL or TEXCOORD
+	/// \param size Number of components (1 to 4)
+	/// \param type Component type, one of the TYPE_ constants
+	/// \param normalized Whether integer components are normalized to
+	/// [0, 1] or [-1, 1] when fetched
+	//
+	public void addAttribute(int semantic, int size, int type,
+			boolean normalized) {
+		if (semantic < 0 || semantic >= NUM_SEMANTICS)
+			throw new IllegalArgumentException("Invalid semantic " + semantic);
+		if (mSize[semantic] != 0)
+			throw new IllegalArgumentException("Semantic " + semantic
+					+ " already present");
+		if (size < 1 || size > 4)
+			throw new IllegalArgumentException("Invalid size " + size);
+
+		int bytes = size * getTypeSize(type);
+
+		mSize[semantic] = size;
+		mType[semantic] = type;
+		mNormalized[semantic] = normalized;
+		mOffset[semantic] = mStride;
+
+		mStride += (bytes + 3) & ~3;
+	}
+
+	public boolean hasAttribute(int semantic) {
+		return mSize[semantic] != 0;
+	}
+
+	public int getStride() {
+		return mStride;
+	}
+
+	public int getSize(int semantic) {
+		return mSize[semantic];
+	}
+
+	public int getType(int semantic) {
+		return mType[semantic];
+	}
+
+	public boolean isNormalized(int semantic) {
+		return mNormalized[semantic];
+	}
+
+	public int getOffset(int semantic) {
+		return mOffset[semantic];
+	}
+
+	//
+	///
+	/// \brief Record how a quantized attribute is decoded
+	/// \param semantic Attribute the parameters apply to
+	/// \param encoding One of the ENCODING_ constants
+	/// \param scale Per component scale for ENCODING_SCALE_BIAS, may be null
+	/// \param bias Per component bias for ENCODING_SCALE_BIAS, may be null
+	//
+	public void setDecode(int semantic, int encoding, float[] scale,
+			float[] bias) {
+		mEncoding[semantic] = encoding;
+		mDecodeScale[semantic] = scale;
+		mDecodeBias[semantic] = bias;
+	}
+
+	public int getEncoding(int semantic) {
+		return mEncoding[semantic];
+	}
+
+	public float[] getDecodeScale(int semantic) {
+		return mDecodeScale[semantic];
+	}
+
+	public float[] getDecodeBias(int semantic) {
+		return mDecodeBias[semantic];
+	}
+
+	//
+	///
+	/// \brief Set the vertex attribute pointer for one attribute
+	/// \param semantic Attribute to bind
+	/// \param location Attribute location in the program
+	/// \param data Interleaved vertex data in this format
+	//
+	public void bindAttribute(int semantic, int location, ByteBuffer data) {
+		data.position(mOffset[semantic]);
+		GLES20.glVertexAttribPointer(location, mSize[semantic],
+				mType[semantic], mNormalized[semantic], mStride, data);
+		data.position(0);
+	}
+
+	//
+	///
+	/// \brief Set and enable the vertex attribute pointers for a whole mesh
+	/// \param data Interleaved vertex data in this format
+	/// \param locations Attribute location per semantic, indexed by
+	/// POSITION/NORMAL/TEXCOORD.  Entries of -1 and semantics missing from
+	/// the format are skipped.
+	//
+	public void bind(ByteBuffer data, int[] locations) {
+		for (int semantic = 0; semantic < NUM_SEMANTICS; semantic++) {
+			if (semantic >= locations.length || locations[semantic] < 0
+					|| !hasAttribute(semantic))
+				continue;
+
+			bindAttribute(semantic, locations[semantic], data);
+			GLES20.glEnableVertexAttribArray(locations[semantic]);
+		}
+	}
+
+	public static int getTypeSize(int type) {
+		switch (type) {
+		case TYPE_BYTE:
+		case TYPE_UNSIGNED_BYTE:
+			return 1;
+		case TYPE_SHORT:
+		case TYPE_UNSIGNED_SHORT:
+			return 2;
+		case TYPE_FLOAT:
+			return 4;
+		default:
+			throw new IllegalArgumentException("Invalid type " + type);
+		}
+	}
+
+	// Member variables
+	private final int[] mSize = new int[NUM_SEMANTICS];
+	private final int[] mType = new int[NUM_SEMANTICS];
+	private final boolean[] mNormalized = new boolean[NUM_SEMANTICS];
+	private final int[] mOffset = new int[NUM_SEMANTICS];
+	private final int[] mEncoding = new int[NUM_SEMANTICS];
+	private final float[][] mDecodeScale = new float[NUM_SEMANTICS][];
+	private final float[][] mDecodeBias = new float[NUM_SEMANTICS][];
+	private int mStride;
+}
@@ -0,0 +1,389 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESVertexQuantizer
+//
+//    Packs float position, normal and texture coordinate buffers into a
+//    compact interleaved vertex buffer:
+//
+//      position - 3 normalized shorts within the mesh bounding box
+//      normal   - 2 normalized bytes, octahedral encoded
+//      texcoord - 2 normalized unsigned shorts within the texcoord range
+//
+//    Signed values are encoded for the OpenGL ES 2.0 conversion, which
+//    fetches a b bit integer q as (2q + 1) / (2^b - 1).  Both -1 and 1 are
+//    exact but 0 is not, so normals are rounded to whichever neighbouring
+//    byte pair decodes closest in angle.
+//
+//    The decode parameters are stored on the returned ESVertexFormat.  In
+//    a vertex shader the attributes are reconstructed with
+//
+//      vec3 position = a_position * u_positionScale + u_positionBias;
+//      vec2 texCoord = a_texCoord * u_texCoordScale + u_texCoordBias;
+//      vec3 normal = vec3(a_normal.xy, 1.0 - abs(a_normal.x) - abs(a_normal.y));
+//      if (normal.z < 0.0)
+//         normal.xy = (1.0 - abs(normal.yx))
+//               * (step(0.0, normal.xy) * 2.0 - 1.0);
+//      normal = normalize(normal);
+//
+
+package com.openglesbook.common;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+public class ESVertexQuantizer {
+	//
+	///
+	/// \brief Round trip error and memory use of a quantized mesh
+	//
+	public static class Report {
+		// Largest position error, in object space units
+		public float maxPositionError;
+
+		// Largest angle between a normal and its decoded value, in degrees
+		public float maxNormalErrorDegrees;
+
+		// Largest texture coordinate error
+		public float maxTexCoordError;
+
+		// Bytes per vertex and in total for the float and quantized layouts
+		public int floatStride;
+		public int quantizedStride;
+		public long floatBytes;
+		public long quantizedBytes;
+
+		public String toString() {
+			return "position error " + maxPositionError + ", normal error "
+					+ maxNormalErrorDegrees + " deg, texcoord error "
+					+ maxTexCoordError + ", " + floatBytes + " -> "
+					+ quantizedBytes + " bytes (" + floatStride + " -> "
+					+ quantizedStride + " per vertex)";
+		}
+
+		private synchronized void merge(float positionError,
+				float normalError, float texCoordError) {
+			maxPositionError = Math.max(maxPositionError, positionError);
+			maxNormalErrorDegrees = Math.max(maxNormalErrorDegrees,
+					normalError);
+			maxTexCoordError = Math.max(maxTexCoordError, texCoordError);
+		}
+	}
+
+	//
+	///
+	/// \brief Quantize separate float attribute buffers
+	/// \param vertices Positions, 3 floats per vertex
+	/// \param normals Unit normals, 3 floats per vertex
+	/// \param texCoords Texture coordinates, 2 floats per vertex
+	/// \param numVertices Number of vertices
+	/// \param report If not null, filled with the round trip error and
+	/// memory use
+	/// \return The quantized vertex data.  Its layout and decode parameters
+	/// are available from getFormat().
+	//
+	public ByteBuffer quantize(FloatBuffer vertices, FloatBuffer normals,
+			FloatBuffer texCoords, int numVertices, Report report) {
+		final ESVertexFormat format = new ESVertexFormat();
+		format.addAttribute(ESVertexFormat.POSITION, 3,
+				ESVertexFormat.TYPE_SHORT, true);
+		format.addAttribute(ESVertexFormat.NORMAL, 2,
+				ESVertexFormat.TYPE_BYTE, true);
+		format.addAttribute(ESVertexFormat.TEXCOORD, 2,
+				ESVertexFormat.TYPE_UNSIGNED_SHORT, true);
+
+		// Positions map the bounding box onto [-1, 1], texture coordinates
+		// map their range onto [0, 1]
+		float[] positionBias = new float[3];
+		float[] positionScale = new float[3];
+		float[] texCoordBias = new float[2];
+		float[] texCoordScale = new float[2];
+		computeRange(vertices, 3, numVertices, positionBias, positionScale);
+		computeRange(texCoords, 2, numVertices, texCoordBias, texCoordScale);
+
+		for (int c = 0; c < 3; c++) {
+			positionBias[c] += positionScale[c] * 0.5f;
+			positionScale[c] *= 0.5f;
+		}
+
+		format.setDecode(ESVertexFormat.POSITION,
+				ESVertexFormat.ENCODING_SCALE_BIAS, positionScale,
+				positionBias);
+		format.setDecode(ESVertexFormat.NORMAL,
+				ESVertexFormat.ENCODING_OCTAHEDRAL, null, null);
+		format.setDecode(ESVertexFormat.TEXCOORD,
+				ESVertexFormat.ENCODING_SCALE_BIAS, texCoordScale,
+				texCoordBias);
+
+		final ByteBuffer result = ByteBuffer.allocateDirect(
+				numVertices * format.getStride())
+				.order(ByteOrder.nativeOrder());
+
+		if (report != null) {
+			report.maxPositionError = 0.0f;
+			report.maxNormalErrorDegrees = 0.0f;
+			report.maxTexCoordError = 0.0f;
+			report.floatStride = (3 + 3 + 2) * 4;
+			report.quantizedStride = format.getStride();
+			report.floatBytes = (long) numVertices * report.floatStride;
+			report.quantizedBytes = (long) numVertices * format.getStride();
+		}
+
+		final FloatBuffer v = vertices;
+		final FloatBuffer n = normals;
+		final FloatBuffer t = texCoords;
+		final Report r = report;
+
+		ESParallel.forRange(0, numVertices, VERTICES_PER_TASK,
+				new ESParallel.RangeTask() {
+					public void run(int start, int end) {
+						encode(v, n, t, start, end, format, result, r);
+					}
+				});
+
+		mFormat = format;
+		return result;
+	}
+
+	//
+	// Layout and decode parameters of the last quantized buffer
+	//
+	public ESVertexFormat getFormat() {
+		return mFormat;
+	}
+
+	private static void encode(FloatBuffer vertices, FloatBuffer normals,
+			FloatBuffer texCoords, int start, int end, ESVertexFormat format,
+			ByteBuffer result, Report report) {
+		ByteBuffer dst = result.duplicate().order(ByteOrder.nativeOrder());
+		int stride = format.getStride();
+		int positionOffset = format.getOffset(ESVertexFormat.POSITION);
+		int normalOffset = format.getOffset(ESVertexFormat.NORMAL);
+		int texCoordOffset = format.getOffset(ESVertexFormat.TEXCOORD);
+		float[] positionScale = format.getDecodeScale(ESVertexFormat.POSITION);
+		float[] positionBias = format.getDecodeBias(ESVertexFormat.POSITION);
+		float[] texCoordScale = format.getDecodeScale(ESVertexFormat.TEXCOORD);
+		float[] texCoordBias = format.getDecodeBias(ESVertexFormat.TEXCOORD);
+		float[] oct = new float[2];
+		float positionError = 0.0f;
+		// The angle grows as the cosine shrinks, so only the smallest
+		// cosine is turned into degrees
+		float minNormalCosine = 1.0f;
+		float texCoordError = 0.0f;
+
+		for (int i = start; i < end; i++) {
+			int base = i * stride;
+
+			for (int c = 0; c < 3; c++) {
+				float p = vertices.get(i * 3 + c);
+				int q = encodeSigned((p - positionBias[c]) / positionScale[c],
+						SHORT_RANGE);
+
+				dst.putShort(base + positionOffset + c * 2, (short) q);
+
+				float decoded = decodeSigned(q, SHORT_RANGE) * positionScale[c]
+						+ positionBias[c];
+				positionError = Math.max(positionError,
+						Math.abs(decoded - p));
+			}
+
+			float nx = normals.get(i * 3 + 0);
+			float ny = normals.get(i * 3 + 1);
+			float nz = normals.get(i * 3 + 2);
+			encodeOctahedral(nx, ny, nz, oct);
+			float normalCosine = quantizeOctahedral(nx, ny, nz, oct);
+			int ox = (int) oct[0];
+			int oy = (int) oct[1];
+
+			dst.put(base + normalOffset + 0, (byte) ox);
+			dst.put(base + normalOffset + 1, (byte) oy);
+
+			minNormalCosine = Math.min(minNormalCosine, normalCosine);
+
+			for (int c = 0; c < 2; c++) {
+				float uv = texCoords.get(i * 2 + c);
+				int q = Math.round(clamp((uv - texCoordBias[c])
+						/ texCoordScale[c], 0.0f, 1.0f) * 65535.0f);
+
+				dst.putShort(base + texCoordOffset + c * 2, (short) q);
+
+				float decoded = (q / 65535.0f) * texCoordScale[c]
+						+ texCoordBias[c];
+				texCoordError = Math.max(texCoordError,
+						Math.abs(decoded - uv));
+			}
+		}
+
+		if (report != null)
+			report.merge(positionError, (float) Math.toDegrees(Math
+					.acos(clamp(minNormalCosine, -1.0f, 1.0f))),
+					texCoordError);
+	}
+
+	//
+	// Project a unit vector onto the octahedron and unfold the lower half
+	// so that it covers the [-1, 1] square
+	//
+	private static void encodeOctahedral(float x, float y, float z,
+			float[] result) {
+		float l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+
+		if (l1 == 0.0f) {
+			result[0] = 0.0f;
+			result[1] = 0.0f;
+			return;
+		}
+
+		float px = x / l1;
+		float py = y / l1;
+
+		if (z < 0.0f) {
+			float fx = (1.0f - Math.abs(py)) * sign(px);
+			float fy = (1.0f - Math.abs(px)) * sign(py);
+			px = fx;
+			py = fy;
+		}
+
+		result[0] = px;
+		result[1] = py;
+	}
+
+	//
+	// Round an octahedral position in [-1, 1] to bytes.  Rounding each
+	// component on its own can tilt the normal noticeably since 0 has no
+	// exact encoding, so the four byte pairs around the position are
+	// decoded and the one closest in angle to the normal is kept.  The
+	// result replaces oct.
+	// \return Cosine of the angle between the normal and its decoded value
+	//
+	private static float quantizeOctahedral(float nx, float ny, float nz,
+			float[] oct) {
+		int x0 = floorSigned(oct[0], BYTE_RANGE);
+		int y0 = floorSigned(oct[1], BYTE_RANGE);
+		int bestX = x0;
+		int bestY = y0;
+		float bestCosine = -2.0f;
+
+		for (int y = y0; y <= y0 + 1 && y <= BYTE_RANGE / 2; y++) {
+			for (int x = x0; x <= x0 + 1 && x <= BYTE_RANGE / 2; x++) {
+				float cosine = octahedralCosine(nx, ny, nz, x, y);
+
+				if (cosine > bestCosine) {
+					bestCosine = cosine;
+					bestX = x;
+					bestY = y;
+				}
+			}
+		}
+
+		oct[0] = bestX;
+		oct[1] = bestY;
+		return bestCosine;
+	}
+
+	//
+	// Decode the stored normal the same way the shader does and return
+	// the cosine of the angle to the original
+	//
+	private static float octahedralCosine(float nx, float ny, float nz,
+			int ox, int oy) {
+		float px = decodeSigned(ox, BYTE_RANGE);
+		float py = decodeSigned(oy, BYTE_RANGE);
+		float pz = 1.0f - Math.abs(px) - Math.abs(py);
+
+		if (pz < 0.0f) {
+			float fx = (1.0f - Math.abs(py)) * sign(px);
+			float fy = (1.0f - Math.abs(px)) * sign(py);
+			px = fx;
+			py = fy;
+		}
+
+		float len = (float) Math.sqrt(px * px + py * py + pz * pz);
+		float srcLen = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+		if (len == 0.0f || srcLen == 0.0f)
+			return 1.0f;
+
+		return (px * nx + py * ny + pz * nz) / (len * srcLen);
+	}
+
+	//
+	// Nearest signed integer for a value in [-1, 1] under the ES 2.0
+	// conversion f = (2q + 1) / range, where range is 2^b - 1
+	//
+	private static int encodeSigned(float value, int range) {
+		return Math.round((clamp(value, -1.0f, 1.0f) * range - 1.0f) * 0.5f);
+	}
+
+	//
+	// Largest signed integer that decodes to at most value
+	//
+	private static int floorSigned(float value, int range) {
+		return (int) Math.floor((clamp(value, -1.0f, 1.0f) * range - 1.0f)
+				* 0.5f);
+	}
+
+	private static float decodeSigned(int q, int range) {
+		return (2 * q + 1) / (float) range;
+	}
+
+	//
+	// Compute the minimum (bias) and extent (scale) of each component.
+	// Zero extents are replaced by 1 so that decoding stays finite.
+	//
+	private static void computeRange(FloatBuffer data, int components,
+			int numVertices, float[] min, float[] extent) {
+		float[] max = new float[components];
+
+		for (int c = 0; c < components; c++) {
+			min[c] = Float.MAX_VALUE;
+			max[c] = -Float.MAX_VALUE;
+		}
+
+		for (int i = 0; i < numVertices; i++) {
+			for (int c = 0; c < components; c++) {
+				float value = data.get(i * components + c);
+				if (value < min[c])
+					min[c] = value;
+				if (value > max[c])
+					max[c] = value;
+			}
+		}
+
+		for (int c = 0; c < components; c++) {
+			if (numVertices == 0) {
+				min[c] = 0.0f;
+				max[c] = 0.0f;
+			}
+			extent[c] = max[c] - min[c];
+			if (extent[c] == 0.0f)
+				extent[c] = 1.0f;
+		}
+	}
+
+	private static float clamp(float value, float min, float max) {
+		return value < min ? min : (value > max ? max : value);
+	}
+
+	private static float sign(float value) {
+		return value >= 0.0f ? 1.0f : -1.0f;
+	}
+
+	// 2^b - 1 for the signed component types
+	private static final int SHORT_RANGE = 65535;
+	private static final int BYTE_RANGE = 255;
+
+	// Vertices encoded per worker task
+	private static final int VERTICES_PER_TASK = 16 * 1024;
+
+	// Member variables
+	private ESVertexFormat mFormat;
+}
@@ -0,0 +1,193 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESVertexTransform
+//
+//    Bulk transformation of position and normal arrays stored in
+//    FloatBuffers (such as those returned by ESShapes) by a 4x4 matrix
+//    in the layout used by ESTransform.
+//
+
+package com.openglesbook.common;
+
+import java.nio.FloatBuffer;
+
+public class ESVertexTransform {
+	// One vertex at a time using absolute buffer access
+	public static final int KERNEL_SIMPLE = 0;
+
+	// Blocks of vertices copied to a local array, four vertices per
+	// loop iteration
+	public static final int KERNEL_UNROLLED = 1;
+
+	// Vertex count above which transformPositions/transformNormals split
+	// the work across ESParallel
+	public static final int PARALLEL_THRESHOLD = 64 * 1024;
+
+	//
+	///
+	/// \brief Transform xyz positions by matrix, treating w as 1.0
+	/// \param matrix 4x4 matrix in ESTransform layout
+	/// \param src Source positions, 3 floats per vertex
+	/// \param dst Destination positions, 3 floats per vertex. May be src.
+	/// \param first Index of the first vertex to transform
+	/// \param count Number of vertices to transform
+	//
+	public static void transformPositions(float[] matrix, FloatBuffer src,
+			FloatBuffer dst, int first, int count) {
+		transform(matrix, src, dst, first, count, true, KERNEL_UNROLLED);
+	}
+
+	//
+	///
+	/// \brief Transform xyz normals by the upper 3x3 of matrix.  Pass the
+	/// inverse transpose of the modelview if it contains non-uniform scale.
+	/// \param matrix 4x4 matrix in ESTransform layout
+	/// \param src Source normals, 3 floats per vertex
+	/// \param dst Destination normals, 3 floats per vertex. May be src.
+	/// \param first Index of the first vertex to transform
+	/// \param count Number of vertices to transform
+	//
+	public static void transformNormals(float[] matrix, FloatBuffer src,
+			FloatBuffer dst, int first, int count) {
+		transform(matrix, src, dst, first, count, false, KERNEL_UNROLLED);
+	}
+
+	//
+	///
+	/// \brief Transform vertices with an explicit kernel choice.  Large
+	/// ranges are split across worker threads.
+	/// \param isPosition true to apply the translation (w = 1.0), false for
+	/// direction vectors (w = 0.0)
+	/// \param kernel KERNEL_SIMPLE or KERNEL_UNROLLED
+	//
+	public static void transform(float[] matrix, FloatBuffer src,
+			FloatBuffer dst, int first, int count, boolean isPosition,
+			int kernel) {
+		checkRange(src, dst, first, count);
+
+		if (count < PARALLEL_THRESHOLD) {
+			transformRange(matrix, src, dst, first, first + count,
+					isPosition, kernel);
+			return;
+		}
+
+		final float[] m = matrix;
+		final FloatBuffer s = src;
+		final FloatBuffer d = dst;
+		final boolean pos = isPosition;
+		final int k = kernel;
+
+		ESParallel.forRange(first, first + count, PARALLEL_THRESHOLD / 4,
+				new ESParallel.RangeTask() {
+					public void run(int start, int end) {
+						transformRange(m, s, d, start, end, pos, k);
+					}
+				});
+	}
+
+	private static void transformRange(float[] m, FloatBuffer src,
+			FloatBuffer dst, int start, int end, boolean isPosition,
+			int kernel) {
+		float tw = isPosition ? 1.0f : 0.0f;
+
+		if (kernel == KERNEL_SIMPLE) {
+			transformSimple(m, src, dst, start, end, tw);
+		} else {
+			// Bulk copies move the buffer position, so work on private
+			// views of the shared storage
+			transformUnrolled(m, src.duplicate(), dst.duplicate(), start,
+					end, tw);
+		}
+	}
+
+	private static void transformSimple(float[] m, FloatBuffer src,
+			FloatBuffer dst, int start, int end, float w) {
+		float m0 = m[0], m1 = m[1], m2 = m[2];
+		float m4 = m[4], m5 = m[5], m6 = m[6];
+		float m8 = m[8], m9 = m[9], m10 = m[10];
+		float tx = m[12] * w, ty = m[13] * w, tz = m[14] * w;
+
+		for (int v = start; v < end; v++) {
+			int i = v * 3;
+			float x = src.get(i + 0);
+			float y = src.get(i + 1);
+			float z = src.get(i + 2);
+
+			dst.put(i + 0, m0 * x + m4 * y + m8 * z + tx);
+			dst.put(i + 1, m1 * x + m5 * y + m9 * z + ty);
+			dst.put(i + 2, m2 * x + m6 * y + m10 * z + tz);
+		}
+	}
+
+	private static void transformUnrolled(float[] m, FloatBuffer src,
+			FloatBuffer dst, int start, int end, float w) {
+		float m0 = m[0], m1 = m[1], m2 = m[2];
+		float m4 = m[4], m5 = m[5], m6 = m[6];
+		float m8 = m[8], m9 = m[9], m10 = m[10];
+		float tx = m[12] * w, ty = m[13] * w, tz = m[14] * w;
+		float[] block = new float[Math.min(BLOCK_VERTICES, end - start) * 3];
+
+		for (int v = start; v < end; v += BLOCK_VERTICES) {
+			int n = Math.min(BLOCK_VERTICES, end - v);
+			int floats = n * 3;
+			int i = 0;
+
+			src.position(v * 3);
+			src.get(block, 0, floats);
+
+			// Four vertices (12 floats) per iteration
+			for (; i + 12 <= floats; i += 12) {
+				float x0 = block[i + 0], y0 = block[i + 1], z0 = block[i + 2];
+				float x1 = block[i + 3], y1 = block[i + 4], z1 = block[i + 5];
+				float x2 = block[i + 6], y2 = block[i + 7], z2 = block[i + 8];
+				float x3 = block[i + 9], y3 = block[i + 10], z3 = block[i + 11];
+
+				block[i + 0] = m0 * x0 + m4 * y0 + m8 * z0 + tx;
+				block[i + 1] = m1 * x0 + m5 * y0 + m9 * z0 + ty;
+				block[i + 2] = m2 * x0 + m6 * y0 + m10 * z0 + tz;
+				block[i + 3] = m0 * x1 + m4 * y1 + m8 * z1 + tx;
+				block[i + 4] = m1 * x1 + m5 * y1 + m9 * z1 + ty;
+				block[i + 5] = m2 * x1 + m6 * y1 + m10 * z1 + tz;
+				block[i + 6] = m0 * x2 + m4 * y2 + m8 * z2 + tx;
+				block[i + 7] = m1 * x2 + m5 * y2 + m9 * z2 + ty;
+				block[i + 8] = m2 * x2 + m6 * y2 + m10 * z2 + tz;
+				block[i + 9] = m0 * x3 + m4 * y3 + m8 * z3 + tx;
+				block[i + 10] = m1 * x3 + m5 * y3 + m9 * z3 + ty;
+				block[i + 11] = m2 * x3 + m6 * y3 + m10 * z3 + tz;
+			}
+
+			// Remaining vertices
+			for (; i < floats; i += 3) {
+				float x = block[i + 0], y = block[i + 1], z = block[i + 2];
+
+				block[i + 0] = m0 * x + m4 * y + m8 * z + tx;
+				block[i + 1] = m1 * x + m5 * y + m9 * z + ty;
+				block[i + 2] = m2 * x + m6 * y + m10 * z + tz;
+			}
+
+			dst.position(v * 3);
+			dst.put(block, 0, floats);
+		}
+	}
+
+	private static void checkRange(FloatBuffer src, FloatBuffer dst,
+			int first, int count) {
+		long last = ((long) first + count) * 3;
+
+		if (first < 0 || count < 0 || last > src.limit()
+				|| last > dst.limit())
+			throw new IndexOutOfBoundsException("Vertex range [" + first
+					+ ", " + (first + count) + ") out of bounds");
+	}
+
+	// Vertices copied out of the buffer per block
+	private static final int BLOCK_VERTICES = 1024;
+}
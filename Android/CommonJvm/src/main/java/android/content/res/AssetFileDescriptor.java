@@ -0,0 +1,31 @@
+// AssetFileDescriptor
+//
+//    JVM stand-in for android.content.res.AssetFileDescriptor covering a
+//    whole file
+//
+
+package android.content.res;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+public class AssetFileDescriptor {
+	public AssetFileDescriptor(File file) {
+		mFile = file;
+	}
+
+	public FileInputStream createInputStream() throws IOException {
+		return new FileInputStream(mFile);
+	}
+
+	public long getStartOffset() {
+		return 0;
+	}
+
+	public long getLength() {
+		return mFile.length();
+	}
+
+	private final File mFile;
+}
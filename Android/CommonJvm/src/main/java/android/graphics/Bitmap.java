@@ -0,0 +1,41 @@
+// Bitmap
+//
+//    JVM stand-in for android.graphics.Bitmap holding ARGB pixels in an
+//    int array
+//
+
+package android.graphics;
+
+public final class Bitmap {
+	public Bitmap(int width, int height, int[] argb) {
+		mWidth = width;
+		mHeight = height;
+		mPixels = argb;
+	}
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+	public int getPixel(int x, int y) {
+		return mPixels[y * mWidth + x];
+	}
+
+	public void getPixels(int[] pixels, int offset, int stride, int x,
+			int y, int width, int height) {
+		for (int row = 0; row < height; row++)
+			System.arraycopy(mPixels, (y + row) * mWidth + x, pixels, offset
+					+ row * stride, width);
+	}
+
+	public void recycle() {
+	}
+
+	private final int mWidth;
+	private final int mHeight;
+	private final int[] mPixels;
+}
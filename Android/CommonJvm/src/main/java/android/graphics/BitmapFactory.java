@@ -0,0 +1,18 @@
+// BitmapFactory
+//
+//    JVM stand-in for android.graphics.BitmapFactory.  No image formats
+//    are decoded; decodeStream() fails like it does for unknown data.
+//
+
+package android.graphics;
+
+import java.io.InputStream;
+
+public final class BitmapFactory {
+	public static Bitmap decodeStream(InputStream is) {
+		return null;
+	}
+
+	private BitmapFactory() {
+	}
+}
@@ -0,0 +1,193 @@
+// GLES20
+//
+//    JVM stand-in for android.opengl.GLES20, just large enough to compile
+//    the Common library.  The constants have their real values; the entry
+//    points do nothing and report success, so code that only issues GL
+//    commands can be benchmarked and tested without a context.
+//
+
+package android.opengl;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+
+public class GLES20 {
+	public static final int GL_NO_ERROR = 0;
+	public static final int GL_UNSIGNED_BYTE = 0x1401;
+	public static final int GL_VENDOR = 0x1F00;
+	public static final int GL_RENDERER = 0x1F01;
+	public static final int GL_VERSION = 0x1F02;
+	public static final int GL_EXTENSIONS = 0x1F03;
+	public static final int GL_UNPACK_ALIGNMENT = 0x0CF5;
+	public static final int GL_TEXTURE_2D = 0x0DE1;
+	public static final int GL_RGB = 0x1907;
+	public static final int GL_RGBA = 0x1908;
+	public static final int GL_LUMINANCE = 0x1909;
+	public static final int GL_LINEAR = 0x2601;
+	public static final int GL_LINEAR_MIPMAP_LINEAR = 0x2703;
+	public static final int GL_TEXTURE_MAG_FILTER = 0x2800;
+	public static final int GL_TEXTURE_MIN_FILTER = 0x2801;
+	public static final int GL_TEXTURE_WRAP_S = 0x2802;
+	public static final int GL_TEXTURE_WRAP_T = 0x2803;
+	public static final int GL_CLAMP_TO_EDGE = 0x812F;
+	public static final int GL_TEXTURE_CUBE_MAP = 0x8513;
+	public static final int GL_TEXTURE_CUBE_MAP_POSITIVE_X = 0x8515;
+	public static final int GL_FRAGMENT_SHADER = 0x8B30;
+	public static final int GL_VERTEX_SHADER = 0x8B31;
+	public static final int GL_COMPILE_STATUS = 0x8B81;
+	public static final int GL_LINK_STATUS = 0x8B82;
+	public static final int GL_ACTIVE_UNIFORMS = 0x8B86;
+	public static final int GL_ACTIVE_UNIFORM_MAX_LENGTH = 0x8B87;
+	public static final int GL_ACTIVE_ATTRIBUTES = 0x8B89;
+	public static final int GL_ACTIVE_ATTRIBUTE_MAX_LENGTH = 0x8B8A;
+
+	// Shaders and programs
+
+	public static int glCreateShader(int type) {
+		return 0;
+	}
+
+	public static void glShaderSource(int shader, String string) {
+	}
+
+	public static void glCompileShader(int shader) {
+	}
+
+	public static void glGetShaderiv(int shader, int pname, int[] params,
+			int offset) {
+	}
+
+	public static String glGetShaderInfoLog(int shader) {
+		return "";
+	}
+
+	public static void glDeleteShader(int shader) {
+	}
+
+	public static int glCreateProgram() {
+		return 0;
+	}
+
+	public static void glAttachShader(int program, int shader) {
+	}
+
+	public static void glLinkProgram(int program) {
+	}
+
+	public static void glGetProgramiv(int program, int pname, int[] params,
+			int offset) {
+	}
+
+	public static String glGetProgramInfoLog(int program) {
+		return "";
+	}
+
+	public static void glDeleteProgram(int program) {
+	}
+
+	public static void glUseProgram(int program) {
+	}
+
+	public static int glGetAttribLocation(int program, String name) {
+		return -1;
+	}
+
+	public static int glGetUniformLocation(int program, String name) {
+		return -1;
+	}
+
+	public static void glGetActiveAttrib(int program, int index, int bufsize,
+			int[] length, int lengthOffset, int[] size, int sizeOffset,
+			int[] type, int typeOffset, byte[] name, int nameOffset) {
+	}
+
+	public static void glGetActiveUniform(int program, int index,
+			int bufsize, int[] length, int lengthOffset, int[] size,
+			int sizeOffset, int[] type, int typeOffset, byte[] name,
+			int nameOffset) {
+	}
+
+	// Uniforms and attributes
+
+	public static void glUniform1i(int location, int x) {
+	}
+
+	public static void glUniform1f(int location, float x) {
+	}
+
+	public static void glUniform2f(int location, float x, float y) {
+	}
+
+	public static void glUniform3f(int location, float x, float y, float z) {
+	}
+
+	public static void glUniform4f(int location, float x, float y, float z,
+			float w) {
+	}
+
+	public static void glUniformMatrix4fv(int location, int count,
+			boolean transpose, float[] value, int offset) {
+	}
+
+	public static void glUniformMatrix4fv(int location, int count,
+			boolean transpose, FloatBuffer value) {
+	}
+
+	public static void glVertexAttribPointer(int indx, int size, int type,
+			boolean normalized, int stride, Buffer ptr) {
+	}
+
+	public static void glEnableVertexAttribArray(int index) {
+	}
+
+	// Textures
+
+	public static void glGenTextures(int n, int[] textures, int offset) {
+	}
+
+	public static void glDeleteTextures(int n, int[] textures, int offset) {
+	}
+
+	public static void glBindTexture(int target, int texture) {
+	}
+
+	public static void glTexImage2D(int target, int level,
+			int internalformat, int width, int height, int border,
+			int format, int type, Buffer pixels) {
+	}
+
+	public static void glTexSubImage2D(int target, int level, int xoffset,
+			int yoffset, int width, int height, int format, int type,
+			Buffer pixels) {
+	}
+
+	public static void glCompressedTexImage2D(int target, int level,
+			int internalformat, int width, int height, int border,
+			int imageSize, Buffer data) {
+	}
+
+	public static void glTexParameteri(int target, int pname, int param) {
+	}
+
+	public static void glPixelStorei(int pname, int param) {
+	}
+
+	public static void glGenerateMipmap(int target) {
+	}
+
+	// State
+
+	public static String glGetString(int name) {
+		return "";
+	}
+
+	public static void glGetIntegerv(int pname, int[] params, int offset) {
+	}
+
+	public static int glGetError() {
+		return GL_NO_ERROR;
+	}
+
+	public static void glFinish() {
+	}
+}
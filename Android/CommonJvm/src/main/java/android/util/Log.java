@@ -0,0 +1,37 @@
+// Log
+//
+//    JVM stand-in for android.util.Log that writes to standard error
+//
+
+package android.util;
+
+public final class Log {
+	public static int w(String tag, String msg) {
+		return println("W", tag, msg, null);
+	}
+
+	public static int w(String tag, String msg, Throwable tr) {
+		return println("W", tag, msg, tr);
+	}
+
+	public static int e(String tag, String msg) {
+		return println("E", tag, msg, null);
+	}
+
+	public static int e(String tag, String msg, Throwable tr) {
+		return println("E", tag, msg, tr);
+	}
+
+	private static int println(String priority, String tag, String msg,
+			Throwable tr) {
+		System.err.println(priority + "/" + tag + ": " + msg);
+
+		if (tr != null)
+			tr.printStackTrace();
+
+		return 0;
+	}
+
+	private Log() {
+	}
+}
@@ -0,0 +1,87 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESCubemapBenchmark
+//
+//    Seam-aware mip chain and GGX prefiltering of a cube map with RGB
+//    noise faces.  The prefilter runs start from a cube map whose mip
+//    chain is already built, so they time the convolution only.
+//
+
+package com.openglesbook.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.openglesbook.common.ESCubemap;
+import com.openglesbook.common.ESProceduralTexture;
+import com.openglesbook.common.ESTexture;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx3g" })
+@State(Scope.Thread)
+public class ESCubemapBenchmark {
+	// Face size of the source cube map
+	@Param({ "512", "2048" })
+	public int size;
+
+	// GGX samples per texel
+	private static final int SAMPLE_COUNT = 64;
+
+	@Setup
+	public void setup() {
+		ESProceduralTexture.setCacheBudget(0);
+
+		ByteBuffer[] faces = new ByteBuffer[6];
+		for (int face = 0; face < 6; face++)
+			faces[face] = ESProceduralTexture.noise(size, size, 32, 4, face);
+
+		mCubemap = new ESCubemap(faces, size, ESTexture.FORMAT_RGB);
+		mMipmapped = new ESCubemap(faces, size, ESTexture.FORMAT_RGB);
+		mMipmapped.buildMipmaps();
+	}
+
+	//
+	// Box filtered chain with the face edges matched at every level
+	//
+	@Benchmark
+	public ESCubemap buildMipmaps() {
+		mCubemap.buildMipmaps();
+		return mCubemap;
+	}
+
+	@Benchmark
+	public ESCubemap prefilter128() {
+		return mMipmapped.prefilter(128, SAMPLE_COUNT);
+	}
+
+	@Benchmark
+	public ESCubemap prefilter256() {
+		return mMipmapped.prefilter(256, SAMPLE_COUNT);
+	}
+
+	private ESCubemap mCubemap;
+	private ESCubemap mMipmapped;
+}
@@ -0,0 +1,185 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESMipmapBuilderBenchmark
+//
+//    Builds the RGB8 mip chain of a checkerboard the way MipMap2D used to,
+//    with genMipMap2D() and a new direct buffer per level, and with
+//    ESMipmapBuilder.  GL calls go to the stand-in, so the times cover
+//    generating and staging the levels only.  buildChainFiltered() runs
+//    each ESMipmapBuilder filter, to compare the windowed sinc kernels
+//    with the box filter.
+//
+
+package com.openglesbook.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.openglesbook.common.ESMipmapBuilder;
+import com.openglesbook.common.ESProceduralTexture;
+import com.openglesbook.common.ESTexture;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx3g" })
+@State(Scope.Thread)
+public class ESMipmapBuilderBenchmark {
+	@Param({ "256", "2048", "8192" })
+	public int size;
+
+	//
+	// Filter choice, kept apart so that the other benchmarks run once
+	// rather than once per filter
+	//
+	@State(Scope.Thread)
+	public static class Filtered {
+		@Param({ "box", "kaiser", "lanczos", "kaiserHQ", "lanczosHQ" })
+		public String filter;
+
+		int getFilter() {
+			if (filter.equals("kaiser"))
+				return ESMipmapBuilder.FILTER_KAISER;
+			if (filter.equals("lanczos"))
+				return ESMipmapBuilder.FILTER_LANCZOS;
+			if (filter.equals("kaiserHQ"))
+				return ESMipmapBuilder.FILTER_KAISER_HQ;
+			if (filter.equals("lanczosHQ"))
+				return ESMipmapBuilder.FILTER_LANCZOS_HQ;
+			return ESMipmapBuilder.FILTER_BOX;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		ESProceduralTexture.setCacheBudget(0);
+		mLevel0 = ESProceduralTexture.checkerboard(size, size, 8, 0x00007F,
+				0x7F0000);
+		mLevel0Bytes = new byte[mLevel0.remaining()];
+		mLevel0.duplicate().get(mLevel0Bytes);
+	}
+
+	//
+	// The chain built by the old MipMap2DRenderer.createMipMappedTexture2D()
+	//
+	@Benchmark
+	public ByteBuffer legacyGenMipMap2D() {
+		int width = size;
+		int height = size;
+		byte[] prevImage = mLevel0Bytes;
+		ByteBuffer pixelBuffer = null;
+
+		while (width > 1 && height > 1) {
+			int newWidth = width / 2;
+			int newHeight = height / 2;
+
+			if (newWidth <= 0)
+				newWidth = 1;
+			if (newHeight <= 0)
+				newHeight = 1;
+
+			byte[] newImage = genMipMap2D(prevImage, width, height, newWidth,
+					newHeight);
+
+			pixelBuffer = ByteBuffer.allocateDirect(newWidth * newHeight * 3);
+			pixelBuffer.put(newImage).position(0);
+
+			prevImage = newImage;
+			width = newWidth;
+			height = newHeight;
+		}
+
+		return pixelBuffer;
+	}
+
+	//
+	// What MipMap2D does now: levels built in two pooled scratch buffers
+	//
+	@Benchmark
+	public void uploadMipmaps() {
+		ESMipmapBuilder.uploadMipmaps(mLevel0, size, size,
+				ESTexture.FORMAT_RGB);
+	}
+
+	//
+	// Every level kept in its own buffer
+	//
+	@Benchmark
+	public ByteBuffer[] buildChain() {
+		return ESMipmapBuilder.buildChain(mLevel0, size, size,
+				ESTexture.FORMAT_RGB);
+	}
+
+	@Benchmark
+	public ByteBuffer[] buildChainFiltered(Filtered filtered) {
+		return ESMipmapBuilder.buildChain(mLevel0, size, size,
+				ESTexture.FORMAT_RGB, filtered.getFilter(), false);
+	}
+
+	//
+	// genMipMap2D() as it was in MipMap2DRenderer, signed byte averaging
+	// and all
+	//
+	private static byte[] genMipMap2D(byte[] src, int srcWidth,
+			int srcHeight, int dstWidth, int dstHeight) {
+		int x, y;
+		int texelSize = 3;
+
+		byte[] dst = new byte[texelSize * (dstWidth) * (dstHeight)];
+
+		for (y = 0; y < dstHeight; y++) {
+			for (x = 0; x < dstWidth; x++) {
+				int[] srcIndex = new int[4];
+				float r = 0.0f, g = 0.0f, b = 0.0f;
+				int sample;
+
+				srcIndex[0] = (((y * 2) * srcWidth) + (x * 2)) * texelSize;
+				srcIndex[1] = (((y * 2) * srcWidth) + (x * 2 + 1))
+						* texelSize;
+				srcIndex[2] = ((((y * 2) + 1) * srcWidth) + (x * 2))
+						* texelSize;
+				srcIndex[3] = ((((y * 2) + 1) * srcWidth) + (x * 2 + 1))
+						* texelSize;
+
+				for (sample = 0; sample < 4; sample++) {
+					r += src[srcIndex[sample]];
+					g += src[srcIndex[sample] + 1];
+					b += src[srcIndex[sample] + 2];
+				}
+
+				r /= 4.0;
+				g /= 4.0;
+				b /= 4.0;
+
+				dst[(y * (dstWidth) + x) * texelSize] = (byte) (r);
+				dst[(y * (dstWidth) + x) * texelSize + 1] = (byte) (g);
+				dst[(y * (dstWidth) + x) * texelSize + 2] = (byte) (b);
+			}
+		}
+		return dst;
+	}
+
+	private ByteBuffer mLevel0;
+	private byte[] mLevel0Bytes;
+}
@@ -0,0 +1,68 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESShapesBenchmark
+//
+//    Mesh generation.  Every call allocates the vertex and index buffers
+//    it returns, so -prof gc reports their size as well as any garbage.
+//
+
+package com.openglesbook.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.openglesbook.common.ESShapes;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ESShapesBenchmark {
+	//
+	// Sphere tessellation, kept apart so that genCube() runs once rather
+	// than once per slice count
+	//
+	@State(Scope.Thread)
+	public static class Sphere {
+		@Param({ "20", "100", "250" })
+		public int slices;
+	}
+
+	@Setup
+	public void setup() {
+		mShapes = new ESShapes();
+	}
+
+	@Benchmark
+	public int genSphere(Sphere sphere) {
+		return mShapes.genSphere(sphere.slices, 1.0f);
+	}
+
+	@Benchmark
+	public int genCube() {
+		return mShapes.genCube(1.0f);
+	}
+
+	private ESShapes mShapes;
+}
@@ -0,0 +1,133 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESTextureBenchmark
+//
+//    Loads an RGB texture from a bitmap the way MultiTexture and
+//    ParticleSystem used to, one getPixel() per texel into a heap array
+//    copied to a new direct buffer, and with ESTexture.  GL calls go to
+//    the stand-in, so the times cover reading and staging the texels.
+//    Run with -prof gc: the heap bytes per load are the transient memory
+//    on top of the bitmap.  Direct buffers are not counted there; the
+//    legacy loop allocates one of width * height * 3 bytes per load,
+//    ESTexture reuses one from ESBufferPool.
+//
+//    The stand-in getPixel() is a plain array read.  On Android it is a
+//    JNI call, so the legacy times here are a lower bound.
+//
+
+package com.openglesbook.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import com.openglesbook.common.ESTexture;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+@State(Scope.Thread)
+public class ESTextureBenchmark {
+	@Param({ "512", "2048" })
+	public int size;
+
+	@Setup
+	public void setup() {
+		int[] argb = new int[size * size];
+
+		// Opaque pixels of scrambled color
+		for (int i = 0; i < argb.length; i++)
+			argb[i] = 0xFF000000 | ((i * 0x9E3779B1) >>> 8);
+
+		mBitmap = new Bitmap(size, size, argb);
+		mTexels = ByteBuffer.allocateDirect(size * size * 3);
+	}
+
+	//
+	// The loadTexture() MultiTexture and ParticleSystem had before ESTexture
+	//
+	@Benchmark
+	public int legacyLoadTexture() {
+		return legacyLoadTexture(mBitmap);
+	}
+
+	@Benchmark
+	public int loadTexture() {
+		return ESTexture.loadTexture(mBitmap, ESTexture.FORMAT_RGB, false);
+	}
+
+	//
+	// Conversion only, into a buffer the caller keeps
+	//
+	@Benchmark
+	public ByteBuffer decode() {
+		mTexels.clear();
+		return ESTexture.decode(mBitmap, ESTexture.FORMAT_RGB, mTexels);
+	}
+
+	//
+	// MultiTextureRenderer.loadTexture() as it was, with the bitmap passed
+	// in instead of decoded from a stream
+	//
+	private static int legacyLoadTexture(Bitmap bitmap) {
+		int[] textureId = new int[1];
+		byte[] buffer = new byte[bitmap.getWidth() * bitmap.getHeight() * 3];
+
+		for (int y = 0; y < bitmap.getHeight(); y++)
+			for (int x = 0; x < bitmap.getWidth(); x++) {
+				int pixel = bitmap.getPixel(x, y);
+				buffer[(y * bitmap.getWidth() + x) * 3 + 0] = (byte) ((pixel >> 16) & 0xFF);
+				buffer[(y * bitmap.getWidth() + x) * 3 + 1] = (byte) ((pixel >> 8) & 0xFF);
+				buffer[(y * bitmap.getWidth() + x) * 3 + 2] = (byte) ((pixel >> 0) & 0xFF);
+			}
+
+		ByteBuffer byteBuffer = ByteBuffer.allocateDirect(bitmap.getWidth()
+				* bitmap.getHeight() * 3);
+		byteBuffer.put(buffer).position(0);
+
+		GLES20.glGenTextures(1, textureId, 0);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId[0]);
+
+		GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGB, bitmap
+				.getWidth(), bitmap.getHeight(), 0, GLES20.GL_RGB,
+				GLES20.GL_UNSIGNED_BYTE, byteBuffer);
+
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+		return textureId[0];
+	}
+
+	private Bitmap mBitmap;
+	private ByteBuffer mTexels;
+}
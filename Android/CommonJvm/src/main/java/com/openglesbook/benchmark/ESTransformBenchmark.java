@@ -0,0 +1,81 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESTransformBenchmark
+//
+//    Per-frame matrix work of the samples.  Run with -prof gc to see the
+//    bytes allocated per operation next to the time.
+//
+
+package com.openglesbook.benchmark;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.openglesbook.common.ESTransform;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ESTransformBenchmark {
+	@Setup
+	public void setup() {
+		mTransform = new ESTransform();
+		mTransform.matrixLoadIdentity();
+
+		ESTransform other = new ESTransform();
+		other.matrixLoadIdentity();
+		other.rotate(30.0f, 1.0f, 1.0f, 0.0f);
+		other.translate(1.0f, 2.0f, 3.0f);
+		mOther = other.get();
+	}
+
+	@Benchmark
+	public float[] matrixMultiply() {
+		mTransform.matrixMultiply(mOther, mTransform.get());
+		return mTransform.get();
+	}
+
+	@Benchmark
+	public float[] rotate() {
+		mTransform.rotate(1.0f, 0.0f, 1.0f, 0.0f);
+		return mTransform.get();
+	}
+
+	@Benchmark
+	public float[] perspective() {
+		// Starts from identity so the matrix stays finite
+		mTransform.matrixLoadIdentity();
+		mTransform.perspective(60.0f, 1.5f, 1.0f, 20.0f);
+		return mTransform.get();
+	}
+
+	@Benchmark
+	public FloatBuffer getAsFloatBuffer() {
+		return mTransform.getAsFloatBuffer();
+	}
+
+	private ESTransform mTransform;
+	private float[] mOther;
+}
@@ -0,0 +1,131 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESVertexLayoutBenchmark
+//
+//    Sphere vertices in the three layouts ESShapes can emit: separate
+//    float buffers, one interleaved float buffer and quantized
+//    (ESVertexQuantizer).  genSphere() times generation; stream() copies
+//    every attribute byte into a direct buffer standing in for a vertex
+//    buffer object, which is the memory traffic of an upload.  The bytes
+//    and vertices counters are rates of the attribute data handled, so
+//    bytes / vertices is the size of a vertex in each layout.  Run with
+//    -prof gc for gc.alloc.rate.norm.
+//
+
+package com.openglesbook.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.openglesbook.common.ESShapes;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ESVertexLayoutBenchmark {
+	@Param({ "float", "interleaved", "quantized" })
+	public String layout;
+
+	@Param({ "100", "250" })
+	public int slices;
+
+	//
+	// Vertex bytes produced or copied, reported as a rate next to the
+	// operation rate
+	//
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Traffic {
+		public long bytes;
+		public long vertices;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0;
+			vertices = 0;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		mShapes = newShapes();
+		mShapes.genSphere(slices, 1.0f);
+		mNumVertices = (slices + 1) * (slices + 1);
+		mVbo = ByteBuffer.allocateDirect(mNumVertices * 32).order(
+				ByteOrder.nativeOrder());
+	}
+
+	@Benchmark
+	public int genSphere(Traffic traffic) {
+		int numIndices = mShapes.genSphere(slices, 1.0f);
+		traffic.bytes += vertexBytes();
+		traffic.vertices += mNumVertices;
+		return numIndices;
+	}
+
+	@Benchmark
+	public ByteBuffer stream(Traffic traffic) {
+		mVbo.clear();
+
+		if (mShapes.getInterleavedVertices() != null) {
+			mVbo.put(mShapes.getInterleavedVertices().duplicate());
+		} else {
+			mVbo.asFloatBuffer().put(mShapes.getVertices().duplicate());
+			mVbo.position(mShapes.getVertices().capacity() * 4);
+			mVbo.asFloatBuffer().put(mShapes.getNormals().duplicate());
+			mVbo.position(mVbo.position()
+					+ mShapes.getNormals().capacity() * 4);
+			mVbo.asFloatBuffer().put(mShapes.getTexCoords().duplicate());
+		}
+
+		traffic.bytes += vertexBytes();
+		traffic.vertices += mNumVertices;
+		return mVbo;
+	}
+
+	private ESShapes newShapes() {
+		ESShapes shapes = new ESShapes();
+		shapes.setInterleaved(layout.equals("interleaved"));
+		shapes.setQuantized(layout.equals("quantized"));
+		return shapes;
+	}
+
+	private int vertexBytes() {
+		if (mShapes.getInterleavedVertices() != null)
+			return mShapes.getInterleavedVertices().capacity();
+
+		return (mShapes.getVertices().capacity()
+				+ mShapes.getNormals().capacity() + mShapes.getTexCoords()
+				.capacity()) * 4;
+	}
+
+	private ESShapes mShapes;
+	private int mNumVertices;
+	private ByteBuffer mVbo;
+}
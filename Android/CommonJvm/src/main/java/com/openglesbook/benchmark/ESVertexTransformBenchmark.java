@@ -0,0 +1,105 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESVertexTransformBenchmark
+//
+//    Transforms positions in a direct FloatBuffer on the calling thread
+//    with each kernel, and through transformPositions(), which splits
+//    ranges of PARALLEL_THRESHOLD vertices or more across ESParallel.
+//    The serial runs pass the range in the same chunks the parallel split
+//    uses, so they stay on the calling thread at every size.
+//
+
+package com.openglesbook.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.openglesbook.common.ESTransform;
+import com.openglesbook.common.ESVertexTransform;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ESVertexTransformBenchmark {
+	// Below and above ESVertexTransform.PARALLEL_THRESHOLD
+	@Param({ "16384", "262144" })
+	public int vertices;
+
+	// Vertices per call in the serial runs, the parallel task size
+	private static final int CHUNK = ESVertexTransform.PARALLEL_THRESHOLD / 4;
+
+	@Setup
+	public void setup() {
+		ESTransform transform = new ESTransform();
+		transform.matrixLoadIdentity();
+		transform.translate(1.0f, 2.0f, 3.0f);
+		transform.rotate(30.0f, 1.0f, 1.0f, 0.0f);
+		transform.scale(2.0f, 2.0f, 2.0f);
+		mMatrix = transform.get();
+
+		mSrc = ByteBuffer.allocateDirect(vertices * 3 * 4)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		mDst = ByteBuffer.allocateDirect(vertices * 3 * 4)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+		for (int i = 0; i < vertices * 3; i++)
+			mSrc.put(i, (i % 97) * 0.01f);
+	}
+
+	@Benchmark
+	public FloatBuffer simple() {
+		serial(ESVertexTransform.KERNEL_SIMPLE);
+		return mDst;
+	}
+
+	@Benchmark
+	public FloatBuffer unrolled() {
+		serial(ESVertexTransform.KERNEL_UNROLLED);
+		return mDst;
+	}
+
+	//
+	// The unrolled kernel, split across ESParallel above the threshold
+	//
+	@Benchmark
+	public FloatBuffer parallel() {
+		ESVertexTransform.transformPositions(mMatrix, mSrc, mDst, 0,
+				vertices);
+		return mDst;
+	}
+
+	private void serial(int kernel) {
+		for (int first = 0; first < vertices; first += CHUNK)
+			ESVertexTransform.transform(mMatrix, mSrc, mDst, first,
+					Math.min(CHUNK, vertices - first), true, kernel);
+	}
+
+	private float[] mMatrix;
+	private FloatBuffer mSrc;
+	private FloatBuffer mDst;
+}
@@ -0,0 +1,9 @@
+// EGL
+//
+//    JVM stand-in for the JSR 239 EGL marker interface
+//
+
+package javax.microedition.khronos.egl;
+
+public interface EGL {
+}
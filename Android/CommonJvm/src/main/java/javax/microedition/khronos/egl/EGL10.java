@@ -0,0 +1,42 @@
+// EGL10
+//
+//    JVM stand-in for the JSR 239 EGL 1.0 bindings used by the Common
+//    library
+//
+
+package javax.microedition.khronos.egl;
+
+public interface EGL10 extends EGL {
+	int EGL_PBUFFER_BIT = 0x0001;
+	int EGL_SURFACE_TYPE = 0x3033;
+	int EGL_NONE = 0x3038;
+	int EGL_RENDERABLE_TYPE = 0x3040;
+	int EGL_HEIGHT = 0x3056;
+	int EGL_WIDTH = 0x3057;
+
+	EGLContext EGL_NO_CONTEXT = null;
+	EGLDisplay EGL_NO_DISPLAY = null;
+	EGLSurface EGL_NO_SURFACE = null;
+
+	boolean eglChooseConfig(EGLDisplay display, int[] attrib_list,
+			EGLConfig[] configs, int config_size, int[] num_config);
+
+	EGLContext eglCreateContext(EGLDisplay display, EGLConfig config,
+			EGLContext share_context, int[] attrib_list);
+
+	EGLSurface eglCreatePbufferSurface(EGLDisplay display, EGLConfig config,
+			int[] attrib_list);
+
+	boolean eglDestroyContext(EGLDisplay display, EGLContext context);
+
+	boolean eglDestroySurface(EGLDisplay display, EGLSurface surface);
+
+	EGLContext eglGetCurrentContext();
+
+	EGLDisplay eglGetCurrentDisplay();
+
+	int eglGetError();
+
+	boolean eglMakeCurrent(EGLDisplay display, EGLSurface draw,
+			EGLSurface read, EGLContext context);
+}
@@ -0,0 +1,9 @@
+// EGLConfig
+//
+//    JVM stand-in for the JSR 239 EGLConfig handle
+//
+
+package javax.microedition.khronos.egl;
+
+public abstract class EGLConfig {
+}
@@ -0,0 +1,56 @@
+// EGLContext
+//
+//    JVM stand-in for the JSR 239 EGLContext.  There is no EGL on the JVM,
+//    so getEGL() returns an implementation with no current display and
+//    every operation failing.
+//
+
+package javax.microedition.khronos.egl;
+
+public abstract class EGLContext {
+	public static EGL getEGL() {
+		return sEgl;
+	}
+
+	private static final EGL10 sEgl = new EGL10() {
+		public boolean eglChooseConfig(EGLDisplay display, int[] attrib_list,
+				EGLConfig[] configs, int config_size, int[] num_config) {
+			return false;
+		}
+
+		public EGLContext eglCreateContext(EGLDisplay display,
+				EGLConfig config, EGLContext share_context, int[] attrib_list) {
+			return EGL_NO_CONTEXT;
+		}
+
+		public EGLSurface eglCreatePbufferSurface(EGLDisplay display,
+				EGLConfig config, int[] attrib_list) {
+			return EGL_NO_SURFACE;
+		}
+
+		public boolean eglDestroyContext(EGLDisplay display, EGLContext context) {
+			return false;
+		}
+
+		public boolean eglDestroySurface(EGLDisplay display, EGLSurface surface) {
+			return false;
+		}
+
+		public EGLContext eglGetCurrentContext() {
+			return EGL_NO_CONTEXT;
+		}
+
+		public EGLDisplay eglGetCurrentDisplay() {
+			return EGL_NO_DISPLAY;
+		}
+
+		public int eglGetError() {
+			return 0x3001; // EGL_NOT_INITIALIZED
+		}
+
+		public boolean eglMakeCurrent(EGLDisplay display, EGLSurface draw,
+				EGLSurface read, EGLContext context) {
+			return false;
+		}
+	};
+}
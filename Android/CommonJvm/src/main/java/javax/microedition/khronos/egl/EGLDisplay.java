@@ -0,0 +1,9 @@
+// EGLDisplay
+//
+//    JVM stand-in for the JSR 239 EGLDisplay handle
+//
+
+package javax.microedition.khronos.egl;
+
+public abstract class EGLDisplay {
+}
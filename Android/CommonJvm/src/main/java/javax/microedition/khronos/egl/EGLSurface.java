@@ -0,0 +1,9 @@
+// EGLSurface
+//
+//    JVM stand-in for the JSR 239 EGLSurface handle
+//
+
+package javax.microedition.khronos.egl;
+
+public abstract class EGLSurface {
+}
@@ -0,0 +1,68 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// AllocationCounter
+//
+//    Measures the heap memory the current thread allocates while running
+//    an operation, using the HotSpot per-thread allocation counter.  The
+//    operation is warmed up first and then run many times, so the result
+//    averaged per call is below one byte exactly when the operation does
+//    not allocate: the smallest object takes 16 bytes.
+//
+
+package com.openglesbook.common;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assume;
+
+final class AllocationCounter {
+	static final int WARMUP_CALLS = 20000;
+	static final int MEASURED_CALLS = 100000;
+
+	//
+	// Bytes allocated by the calling thread per call of op, averaged over
+	// MEASURED_CALLS calls.  Skips the test on JVMs without the counter.
+	//
+	static double bytesPerCall(Runnable op) {
+		com.sun.management.ThreadMXBean threads = getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		for (int i = 0; i < WARMUP_CALLS; i++)
+			op.run();
+
+		// Subtract what reading the counter itself costs
+		long overhead = threads.getThreadAllocatedBytes(thread);
+		overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+
+		long start = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < MEASURED_CALLS; i++)
+			op.run();
+		long allocated = threads.getThreadAllocatedBytes(thread) - start
+				- overhead;
+
+		return (double) Math.max(0, allocated) / MEASURED_CALLS;
+	}
+
+	private static com.sun.management.ThreadMXBean getThreadMXBean() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory
+				.getThreadMXBean();
+
+		Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+
+		Assume.assumeTrue(counter.isThreadAllocatedMemorySupported());
+		counter.setThreadAllocatedMemoryEnabled(true);
+		return counter;
+	}
+
+	private AllocationCounter() {
+	}
+}
@@ -0,0 +1,66 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESBufferPoolTest
+//
+//    Checks that the shared pool keeps the staging buffer of a full size
+//    texture upload for the next one
+//
+
+package com.openglesbook.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import android.graphics.Bitmap;
+
+public class ESBufferPoolTest {
+	@Test
+	public void sharedPoolHoldsLargestClass() {
+		assertTrue(ESBufferPool.getShared().getMaxPooledBytes()
+				>= 1L << ESBufferPool.MAX_CLASS_SHIFT);
+	}
+
+	@Test
+	public void secondLargeAcquireIsHit() {
+		ESBufferPool pool = ESBufferPool.getShared();
+		int size = 2048 * 2048 * 4;
+
+		ByteBuffer first = pool.acquire(size);
+		pool.release(first);
+
+		long hits = pool.getHitCount();
+		ByteBuffer second = pool.acquire(size);
+		pool.release(second);
+
+		assertEquals(hits + 1, pool.getHitCount());
+		assertSame(first, second);
+	}
+
+	@Test
+	public void secondTextureLoadReusesStagingBuffer() {
+		ESBufferPool pool = ESBufferPool.getShared();
+		Bitmap bitmap = new Bitmap(2048, 2048, new int[2048 * 2048]);
+
+		ESTexture.loadTexture(bitmap, ESTexture.FORMAT_RGBA, false);
+
+		long hits = pool.getHitCount();
+		long misses = pool.getMissCount();
+		ESTexture.loadTexture(bitmap, ESTexture.FORMAT_RGBA, false);
+
+		assertEquals(hits + 1, pool.getHitCount());
+		assertEquals(misses, pool.getMissCount());
+	}
+}
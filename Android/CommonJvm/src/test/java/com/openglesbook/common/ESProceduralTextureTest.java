@@ -0,0 +1,69 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESProceduralTextureTest
+//
+//    Checks that an image larger than the cache budget is returned
+//    without displacing the images already cached
+//
+
+package com.openglesbook.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ESProceduralTextureTest {
+	@Before
+	public void setUp() {
+		mBudget = ESProceduralTexture.getCacheBudget();
+		ESProceduralTexture.clearCache();
+		ESProceduralTexture.setCacheBudget(BUDGET);
+	}
+
+	@After
+	public void tearDown() {
+		ESProceduralTexture.clearCache();
+		ESProceduralTexture.setCacheBudget(mBudget);
+	}
+
+	@Test
+	public void oversizedImageKeepsCache() {
+		ESProceduralTexture.solid(64, 64, 0xFF0000);
+		ESProceduralTexture.solid(64, 64, 0x00FF00);
+		long cachedBytes = ESProceduralTexture.getCachedBytes();
+		assertEquals(2 * 64 * 64 * ESProceduralTexture.TEXEL_SIZE, cachedBytes);
+
+		ByteBuffer large = ESProceduralTexture.solid(512, 512, 0x0000FF);
+
+		assertEquals(512 * 512 * ESProceduralTexture.TEXEL_SIZE,
+				large.remaining());
+		assertEquals((byte) 0xFF, large.get(2));
+		assertEquals(cachedBytes, ESProceduralTexture.getCachedBytes());
+	}
+
+	@Test
+	public void imageWithinBudgetIsCached() {
+		ESProceduralTexture.solid(64, 64, 0xFF0000);
+		ESProceduralTexture.solid(128, 128, 0x00FF00);
+
+		assertEquals((64 * 64 + 128 * 128) * ESProceduralTexture.TEXEL_SIZE,
+				ESProceduralTexture.getCachedBytes());
+	}
+
+	// Room for a few small images, less than one 512 x 512 image
+	private static final long BUDGET = 256 * 1024;
+
+	private long mBudget;
+}
@@ -0,0 +1,251 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESProgramCacheTest
+//
+//    Runs ESProgramCache in a temporary directory against a driver double
+//    whose binaries carry their format and driver string, so that a
+//    binary only loads back into the driver that produced it
+//
+
+package com.openglesbook.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ESProgramCacheTest {
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	@Before
+	public void setUp() throws Exception {
+		mDirectory = mFolder.newFolder("programs");
+		mDriver = new FakeDriver("vendor/renderer/1.0");
+	}
+
+	@Test
+	public void missCompilesThenHitLoadsBinary() {
+		ESProgramCache cache = open(1 << 20);
+
+		int first = cache.loadProgram(VERT, FRAG_A);
+		assertTrue(first != 0);
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, mDriver.mCompiles);
+
+		int second = cache.loadProgram(VERT, FRAG_A);
+		assertTrue(second != 0);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, mDriver.mCompiles);
+		assertEquals(1, mDriver.mBinaryLoads);
+		assertEquals(FRAG_A, mDriver.mSources.get(Integer.valueOf(second)));
+	}
+
+	@Test
+	public void rejectedBinaryFallsBackToCompile() {
+		ESProgramCache cache = open(1 << 20);
+		cache.loadProgram(VERT, FRAG_A);
+
+		mDriver.mRejectBinaries = true;
+		int program = cache.loadProgram(VERT, FRAG_A);
+
+		assertTrue(program != 0);
+		assertEquals(1, cache.getRejectCount());
+		assertEquals(0, cache.getHitCount());
+		assertEquals(2, mDriver.mCompiles);
+
+		// The recompiled binary replaced the rejected one
+		mDriver.mRejectBinaries = false;
+		cache.loadProgram(VERT, FRAG_A);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, mDriver.mCompiles);
+	}
+
+	@Test
+	public void noBinarySupportCompilesEveryTime() {
+		mDriver.mSupportsBinary = false;
+		ESProgramCache cache = open(1 << 20);
+
+		assertTrue(cache.loadProgram(VERT, FRAG_A) != 0);
+		assertTrue(cache.loadProgram(VERT, FRAG_A) != 0);
+		assertEquals(2, mDriver.mCompiles);
+		assertEquals(0, mDriver.mBinaryLoads);
+	}
+
+	@Test
+	public void driverChangeDiscardsBinaries() {
+		ESProgramCache cache = open(1 << 20);
+		cache.loadProgram(VERT, FRAG_A);
+		cache.close();
+
+		mDriver = new FakeDriver("vendor/renderer/2.0");
+		cache = open(1 << 20);
+
+		// The old driver's blob is deleted with its index entry
+		assertEquals(0, cache.getCachedBytes());
+		assertEquals(0, countBlobs());
+
+		assertTrue(cache.loadProgram(VERT, FRAG_A) != 0);
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, mDriver.mCompiles);
+		assertEquals(0, mDriver.mBinaryLoads);
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedOverBudget() {
+		ESProgramCache cache = open(3 * BINARY_SIZE);
+
+		cache.loadProgram(VERT, FRAG_A);
+		cache.loadProgram(VERT, FRAG_B);
+		cache.loadProgram(VERT, FRAG_C);
+		assertEquals(3 * BINARY_SIZE, cache.getCachedBytes());
+
+		// A becomes the most recently used, leaving B the oldest
+		cache.loadProgram(VERT, FRAG_A);
+		cache.loadProgram(VERT, FRAG_D);
+
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(3 * BINARY_SIZE, cache.getCachedBytes());
+		assertEquals(3, countBlobs());
+
+		int compiles = mDriver.mCompiles;
+		cache.loadProgram(VERT, FRAG_A);
+		cache.loadProgram(VERT, FRAG_C);
+		cache.loadProgram(VERT, FRAG_D);
+		assertEquals(compiles, mDriver.mCompiles);
+
+		cache.loadProgram(VERT, FRAG_B);
+		assertEquals(compiles + 1, mDriver.mCompiles);
+	}
+
+	@Test
+	public void indexSurvivesReopen() {
+		ESProgramCache cache = open(1 << 20);
+		cache.loadProgram(VERT, FRAG_A);
+		cache.loadProgram(VERT, FRAG_B);
+		long cachedBytes = cache.getCachedBytes();
+		cache.close();
+
+		cache = open(1 << 20);
+		assertEquals(cachedBytes, cache.getCachedBytes());
+
+		assertTrue(cache.loadProgram(VERT, FRAG_A) != 0);
+		assertTrue(cache.loadProgram(VERT, FRAG_B) != 0);
+		assertEquals(2, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+		assertEquals(2, mDriver.mCompiles);
+	}
+
+	private ESProgramCache open(long budgetBytes) {
+		return new ESProgramCache(mDirectory, budgetBytes, mDriver);
+	}
+
+	private int countBlobs() {
+		int count = 0;
+		File[] files = mDirectory.listFiles();
+
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].getName().endsWith(".bin"))
+				count++;
+		}
+		return count;
+	}
+
+	//
+	// Binaries are BINARY_SIZE bytes: the driver string and the fragment
+	// source, zero padded.  They only load with the same format and driver.
+	//
+	private static class FakeDriver implements ESProgramCache.Driver {
+		FakeDriver(String version) {
+			mVersion = version;
+		}
+
+		public String getDriverVersion() {
+			return mVersion;
+		}
+
+		public boolean supportsProgramBinary() {
+			return mSupportsBinary;
+		}
+
+		public ByteBuffer getProgramBinary(int program, int[] format) {
+			String text = mVersion + "\n"
+					+ mSources.get(Integer.valueOf(program));
+			ByteBuffer binary = ByteBuffer.allocate(BINARY_SIZE);
+
+			binary.put(text.getBytes());
+			binary.clear();
+			format[0] = FORMAT;
+			return binary;
+		}
+
+		public int loadProgramBinary(int format, ByteBuffer binary) {
+			mBinaryLoads++;
+
+			if (mRejectBinaries || format != FORMAT
+					|| binary.remaining() != BINARY_SIZE)
+				return 0;
+
+			byte[] bytes = new byte[BINARY_SIZE];
+			binary.get(bytes);
+
+			String text = new String(bytes).trim();
+			int newline = text.indexOf('\n');
+
+			if (newline < 0 || !text.substring(0, newline).equals(mVersion))
+				return 0;
+
+			return newProgram(text.substring(newline + 1));
+		}
+
+		public int compileProgram(String vertShaderSrc, String fragShaderSrc) {
+			mCompiles++;
+			return newProgram(fragShaderSrc);
+		}
+
+		private int newProgram(String fragShaderSrc) {
+			int program = ++mNextProgram;
+			mSources.put(Integer.valueOf(program), fragShaderSrc);
+			return program;
+		}
+
+		private final String mVersion;
+		private int mNextProgram;
+
+		boolean mSupportsBinary = true;
+		boolean mRejectBinaries;
+		int mCompiles;
+		int mBinaryLoads;
+
+		// Fragment source of each program name handed out
+		final HashMap<Integer, String> mSources = new HashMap<Integer, String>();
+	}
+
+	private static final int FORMAT = 0x1234;
+	private static final int BINARY_SIZE = 256;
+
+	private static final String VERT = "attribute vec4 a_position;\n"
+			+ "void main() { gl_Position = a_position; }\n";
+	private static final String FRAG_A = "void main() { gl_FragColor = vec4(1.0); }";
+	private static final String FRAG_B = "void main() { gl_FragColor = vec4(0.5); }";
+	private static final String FRAG_C = "void main() { gl_FragColor = vec4(0.25); }";
+	private static final String FRAG_D = "void main() { gl_FragColor = vec4(0.0); }";
+
+	private File mDirectory;
+	private FakeDriver mDriver;
+}
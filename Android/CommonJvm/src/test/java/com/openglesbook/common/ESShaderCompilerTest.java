@@ -0,0 +1,211 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESShaderCompilerTest
+//
+//    Drives ESShaderCompiler on the test thread with a GL double that
+//    records the calls it receives, to check the order of the compile,
+//    link and status commands and the per-frame budget of runFrame()
+//
+
+package com.openglesbook.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ESShaderCompilerTest {
+	@Before
+	public void setUp() {
+		mGL = new RecordingGL();
+		mCompiler = new ESShaderCompiler(mGL);
+	}
+
+	@Test
+	public void issuesCompileAndLinkBeforeQueryingStatus() {
+		ESShaderCompiler.ProgramHandle handle = mCompiler.compile(VERT, FRAG);
+
+		assertEquals(1, mCompiler.runFrame());
+		assertTrue(handle.isReady());
+		assertEquals(Arrays.asList("createShader", "createShader",
+				"createProgram", "shaderSource", "compileShader",
+				"shaderSource", "compileShader", "attachShader",
+				"attachShader", "linkProgram"), mGL.mCalls);
+
+		mGL.mCalls.clear();
+		assertTrue(handle.get() != 0);
+		assertEquals(Arrays.asList("getLinkStatus", "deleteShader",
+				"deleteShader"), mGL.mCalls);
+
+		// The status is only queried once
+		mGL.mCalls.clear();
+		handle.get();
+		assertTrue(mGL.mCalls.isEmpty());
+	}
+
+	@Test
+	public void failedLinkLogsAndDeletesProgram() {
+		mGL.mLinkStatus = 0;
+		ESShaderCompiler.ProgramHandle handle = mCompiler.compile(VERT, FRAG);
+
+		mCompiler.runFrame();
+		mGL.mCalls.clear();
+
+		assertEquals(0, handle.get());
+		assertEquals(Arrays.asList("getLinkStatus", "getShaderStatus",
+				"getShaderStatus", "getProgramInfoLog", "deleteProgram",
+				"deleteShader", "deleteShader"), mGL.mCalls);
+	}
+
+	@Test
+	public void runFrameStopsAtProgramBudget() {
+		mCompiler.setFrameBudget(2, Long.MAX_VALUE);
+
+		for (int i = 0; i < 5; i++)
+			mCompiler.compile(VERT, FRAG);
+
+		assertEquals(2, mCompiler.runFrame());
+		assertEquals(3, mCompiler.getQueuedCount());
+		assertEquals(2, mCompiler.runFrame());
+		assertEquals(1, mCompiler.runFrame());
+		assertEquals(0, mCompiler.runFrame());
+		assertEquals(5, count("linkProgram"));
+	}
+
+	@Test
+	public void runFrameStopsAtTimeBudget() {
+		mGL.mCompileMillis = 5;
+		mCompiler.setFrameBudget(10, 1000000);
+
+		for (int i = 0; i < 3; i++)
+			mCompiler.compile(VERT, FRAG);
+
+		// The first program already spends the budget, at least one is
+		// always issued
+		assertEquals(1, mCompiler.runFrame());
+		assertEquals(2, mCompiler.getQueuedCount());
+	}
+
+	@Test
+	public void getCompilesQueuedProgramImmediately() {
+		ESShaderCompiler.ProgramHandle first = mCompiler.compile(VERT, FRAG);
+		ESShaderCompiler.ProgramHandle second = mCompiler.compile(VERT, FRAG);
+
+		assertFalse(second.isReady());
+		assertTrue(second.get() != 0);
+
+		assertEquals(1, count("linkProgram"));
+		assertTrue(mGL.mCalls.indexOf("linkProgram") < mGL.mCalls
+				.indexOf("getLinkStatus"));
+		assertFalse(first.isReady());
+		assertEquals(1, mCompiler.getQueuedCount());
+	}
+
+	private int count(String call) {
+		int n = 0;
+
+		for (int i = 0; i < mGL.mCalls.size(); i++)
+			if (mGL.mCalls.get(i).equals(call))
+				n++;
+
+		return n;
+	}
+
+	//
+	// Records the name of every call and hands out increasing object names
+	//
+	private static class RecordingGL implements ESShaderCompiler.GL {
+		public int createShader(int type) {
+			return record("createShader", ++mNextName);
+		}
+
+		public void shaderSource(int shader, String source) {
+			record("shaderSource", 0);
+		}
+
+		public void compileShader(int shader) {
+			record("compileShader", 0);
+
+			if (mCompileMillis > 0) {
+				try {
+					Thread.sleep(mCompileMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		public int getShaderStatus(int shader) {
+			return record("getShaderStatus", mShaderStatus);
+		}
+
+		public String getShaderInfoLog(int shader) {
+			record("getShaderInfoLog", 0);
+			return "";
+		}
+
+		public void deleteShader(int shader) {
+			record("deleteShader", 0);
+		}
+
+		public int createProgram() {
+			return record("createProgram", ++mNextName);
+		}
+
+		public void attachShader(int program, int shader) {
+			record("attachShader", 0);
+		}
+
+		public void linkProgram(int program) {
+			record("linkProgram", 0);
+		}
+
+		public int getLinkStatus(int program) {
+			return record("getLinkStatus", mLinkStatus);
+		}
+
+		public String getProgramInfoLog(int program) {
+			record("getProgramInfoLog", 0);
+			return "";
+		}
+
+		public void deleteProgram(int program) {
+			record("deleteProgram", 0);
+		}
+
+		public void finish() {
+			record("finish", 0);
+		}
+
+		private int record(String call, int result) {
+			mCalls.add(call);
+			return result;
+		}
+
+		final List<String> mCalls = new ArrayList<String>();
+		int mShaderStatus = 1;
+		int mLinkStatus = 1;
+		long mCompileMillis;
+		private int mNextName;
+	}
+
+	private static final String VERT = "void main() { gl_Position = vec4(0.0); }";
+	private static final String FRAG = "void main() { gl_FragColor = vec4(1.0); }";
+
+	private RecordingGL mGL;
+	private ESShaderCompiler mCompiler;
+}
@@ -0,0 +1,153 @@
+//
+// Book:      OpenGL(R) ES 2.0 Programming Guide
+// Authors:   Aaftab Munshi, Dan Ginsburg, Dave Shreiner
+// ISBN-10:   0321502795
+// ISBN-13:   9780321502797
+// Publisher: Addison-Wesley Professional
+// URLs:      http://safari.informit.com/9780321563835
+//            http://www.opengles-book.com
+//
+
+// ESTransformTest
+//
+//    Checks that every ESTransform operation runs without allocating and
+//    keeps updating the array returned from get()
+//
+
+package com.openglesbook.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ESTransformTest {
+	@Before
+	public void setUp() {
+		mTransform = new ESTransform();
+		mTransform.matrixLoadIdentity();
+
+		ESTransform other = new ESTransform();
+		other.matrixLoadIdentity();
+		other.rotate(30.0f, 1.0f, 1.0f, 0.0f);
+		mOther = other.get();
+	}
+
+	@Test
+	public void scaleDoesNotAllocate() {
+		assertNoAllocation(new Runnable() {
+			public void run() {
+				mTransform.scale(1.0f, 1.0f, 1.0f);
+			}
+		});
+	}
+
+	@Test
+	public void translateDoesNotAllocate() {
+		assertNoAllocation(new Runnable() {
+			public void run() {
+				mTransform.translate(0.0f, 0.0f, 0.0f);
+			}
+		});
+	}
+
+	@Test
+	public void rotateDoesNotAllocate() {
+		assertNoAllocation(new Runnable() {
+			public void run() {
+				mTransform.rotate(1.0f, 0.0f, 1.0f, 0.0f);
+			}
+		});
+	}
+
+	@Test
+	public void frustumDoesNotAllocate() {
+		assertNoAllocation(new Runnable() {
+			public void run() {
+				mTransform.matrixLoadIdentity();
+				mTransform.frustum(-1.0f, 1.0f, -1.0f, 1.0f, 1.0f, 10.0f);
+			}
+		});
+	}
+
+	@Test
+	public void perspectiveDoesNotAllocate() {
+		assertNoAllocation(new Runnable() {
+			public void run() {
+				mTransform.matrixLoadIdentity();
+				mTransform.perspective(60.0f, 1.5f, 1.0f, 20.0f);
+			}
+		});
+	}
+
+	@Test
+	public void orthoDoesNotAllocate() {
+		assertNoAllocation(new Runnable() {
+			public void run() {
+				mTransform.matrixLoadIdentity();
+				mTransform.ortho(-1.0f, 1.0f, -1.0f, 1.0f, -1.0f, 1.0f);
+			}
+		});
+	}
+
+	@Test
+	public void matrixMultiplyDoesNotAllocate() {
+		assertNoAllocation(new Runnable() {
+			public void run() {
+				mTransform.matrixMultiply(mOther, mTransform.get());
+			}
+		});
+	}
+
+	@Test
+	public void matrixLoadDoesNotAllocate() {
+		assertNoAllocation(new Runnable() {
+			public void run() {
+				mTransform.matrixLoad(mOther);
+			}
+		});
+	}
+
+	@Test
+	public void getAsFloatBufferDoesNotAllocate() {
+		assertNoAllocation(new Runnable() {
+			public void run() {
+				mTransform.getAsFloatBuffer();
+			}
+		});
+	}
+
+	@Test
+	public void backingArrayStaysCurrent() {
+		float[] matrix = mTransform.get();
+
+		mTransform.rotate(45.0f, 0.0f, 0.0f, 1.0f);
+		mTransform.matrixMultiply(mOther, mTransform.get());
+		mTransform.perspective(60.0f, 1.0f, 1.0f, 10.0f);
+		mTransform.ortho(-1.0f, 1.0f, -1.0f, 1.0f, -1.0f, 1.0f);
+
+		assertSame(matrix, mTransform.get());
+	}
+
+	@Test
+	public void matrixMultiplyMayAliasItsResult() {
+		ESTransform expected = new ESTransform();
+		expected.matrixMultiply(mOther, mOther.clone());
+
+		mTransform.matrixLoad(mOther);
+		mTransform.matrixMultiply(mTransform.get(), mTransform.get());
+
+		assertArrayEquals(expected.get(), mTransform.get(), 0.0f);
+	}
+
+	private static void assertNoAllocation(Runnable op) {
+		double bytes = AllocationCounter.bytesPerCall(op);
+
+		assertTrue("Allocated " + bytes + " bytes per call", bytes < 1.0);
+	}
+
+	private ESTransform mTransform;
+	private float[] mOther;
+}